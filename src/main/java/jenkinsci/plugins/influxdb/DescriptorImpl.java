@@ -1,18 +1,42 @@
 package jenkinsci.plugins.influxdb;
 
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.jenkinsci.Symbol;
+import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
+import jenkinsci.plugins.influxdb.generators.GeneratorFanOut;
+import jenkinsci.plugins.influxdb.generators.RobotDetailLevel;
+import jenkinsci.plugins.influxdb.global.TargetRouter;
+import jenkinsci.plugins.influxdb.logs.ReverseLogScanner;
+import jenkinsci.plugins.influxdb.models.LogMetricRule;
 import jenkinsci.plugins.influxdb.models.Target;
+import jenkinsci.plugins.influxdb.publication.BatchCoalescer;
+import jenkinsci.plugins.influxdb.publication.CardinalityGuard;
+import jenkinsci.plugins.influxdb.publication.InfluxDbClientRegistry;
+import jenkinsci.plugins.influxdb.publication.PublicationQueue;
+import jenkinsci.plugins.influxdb.publication.PublicationSink;
+import jenkinsci.plugins.influxdb.publication.QueueFullPolicy;
+import jenkinsci.plugins.influxdb.publication.RateLimiter;
+import jenkinsci.plugins.influxdb.publication.TargetFanOut;
+import jenkinsci.plugins.influxdb.publication.TargetHealth;
+import jenkinsci.plugins.influxdb.publication.WriteSpool;
 import hudson.model.AbstractProject;
 import hudson.model.ModelObject;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Publisher;
+import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
 @Symbol("influxDbPublisher")
@@ -21,9 +45,162 @@ public final class DescriptorImpl extends BuildStepDescriptor<Publisher> impleme
     private static final String DISPLAY_NAME = "Publish build data to InfluxDB";
     private List<Target> targets = new CopyOnWriteArrayList<>();
 
+    /**
+     * Routing table of the targets, rebuilt whenever they change.
+     */
+    private transient volatile TargetRouter targetRouter;
+
+    /**
+     * Rules deriving metrics from the build log.
+     */
+    private List<LogMetricRule> logMetricRules = new CopyOnWriteArrayList<>();
+
+    /**
+     * Whether points are handed over to the plugin-wide publication queue instead of
+     * being written to InfluxDB on the build thread.
+     */
+    private boolean asyncPublication;
+
+    /**
+     * Maximum number of publications waiting in the asynchronous publication queue.
+     */
+    private int asyncQueueSize = PublicationQueue.DEFAULT_QUEUE_SIZE;
+
+    /**
+     * Number of worker threads draining the asynchronous publication queue.
+     */
+    private int asyncWorkerCount = PublicationQueue.DEFAULT_WORKER_COUNT;
+
+    /**
+     * Name of the {@link QueueFullPolicy} applied when the asynchronous publication queue is full.
+     */
+    private String asyncQueueFullPolicy = QueueFullPolicy.BLOCK.name();
+
+    /**
+     * Deadline in seconds for each point generator of a publication.
+     */
+    private int generatorTimeout = GeneratorFanOut.DEFAULT_TIMEOUT_SECONDS;
+
+    /**
+     * Whether generators send their requests to other servers, like SonarQube, from the agent of the build.
+     */
+    private boolean collectOnAgent;
+
+    /**
+     * Maximum size in megabytes of the end of a build log scanned for output like the SonarQube analysis URL.
+     */
+    private int logScanMaxSize = ReverseLogScanner.DEFAULT_MAX_SCAN_SIZE_MB;
+
+    /**
+     * Name of the {@link RobotDetailLevel} of the Robot Framework points.
+     */
+    private String robotDetailLevel = RobotDetailLevel.ALL_CASES.name();
+
+    /**
+     * Percentage of the passed Robot Framework cases written when all cases are written.
+     */
+    private int robotCaseSampleRate = 100;
+
+    /**
+     * Whether only the summary points of a build carry the descriptive string fields.
+     */
+    private boolean leanSchema;
+
+    /**
+     * Maximum number of distinct values of a tag, not positive to write all tags as they are.
+     */
+    private int tagCardinalityLimit;
+
+    /**
+     * Name of the {@link CardinalityGuard.GuardAction} applied to tags beyond the limit.
+     */
+    private String tagCardinalityAction = CardinalityGuard.GuardAction.FIELD.name();
+
+    /**
+     * Deadline in seconds for writing a publication to each of its targets.
+     */
+    private int targetWriteTimeout = TargetFanOut.DEFAULT_TIMEOUT_SECONDS;
+
+    /**
+     * Number of retries of a write which failed with a transient error.
+     */
+    private int writeRetries = TargetHealth.DEFAULT_RETRIES;
+
+    /**
+     * Backoff in milliseconds before the first retry of a write, doubled for each further retry.
+     */
+    private int writeRetryBackoff = TargetHealth.DEFAULT_BACKOFF_MILLIS;
+
+    /**
+     * Failed writes in a row which open the circuit of a target, not positive to never open it.
+     */
+    private int circuitBreakerThreshold = TargetHealth.DEFAULT_FAILURE_THRESHOLD;
+
+    /**
+     * Time in seconds the circuit of a target stays open before a trial write is let through.
+     */
+    private int circuitBreakerCooldown = TargetHealth.DEFAULT_COOLDOWN_SECONDS;
+
+    /**
+     * Longest time in seconds a write waits for the rate limit of its target before it is spooled instead.
+     */
+    private int rateLimitMaxWait = RateLimiter.DEFAULT_MAX_WAIT_SECONDS;
+
+    /**
+     * Maximum number of points written with a single request.
+     */
+    private int chunkMaxPoints = PublicationSink.DEFAULT_CHUNK_POINTS;
+
+    /**
+     * Maximum size in kilobytes of a single request.
+     */
+    private int chunkMaxSize = PublicationSink.DEFAULT_CHUNK_SIZE_KB;
+
+    /**
+     * Whether failed writes are parked in the on-disk spool and replayed once their target is healthy again.
+     */
+    private boolean spoolFailedWrites;
+
+    /**
+     * Maximum size in megabytes of the spool of each target.
+     */
+    private int spoolMaxSize = WriteSpool.DEFAULT_MAX_SIZE_MB;
+
+    /**
+     * Age in hours after which spooled writes are dropped.
+     */
+    private int spoolMaxAge = WriteSpool.DEFAULT_MAX_AGE_HOURS;
+
+    /**
+     * Whether the points of many builds are merged into fewer, larger writes per target.
+     */
+    private boolean coalesceWrites;
+
+    /**
+     * Number of buffered points which triggers a coalesced write.
+     */
+    private int coalesceMaxPoints = BatchCoalescer.DEFAULT_MAX_POINTS;
+
+    /**
+     * Size in kilobytes of buffered line protocol which triggers a coalesced write.
+     */
+    private int coalesceMaxSize = BatchCoalescer.DEFAULT_MAX_SIZE_KB;
+
+    /**
+     * Time in milliseconds points may wait in the buffer before they are written.
+     */
+    private int coalesceMaxLinger = BatchCoalescer.DEFAULT_MAX_LINGER_MILLIS;
+
     public DescriptorImpl() {
         super(InfluxDbPublisher.class);
         load();
+        rebuildTargetRouter();
+        configurePublicationQueue();
+        configureSpool();
+        configureCoalescer();
+        configureCardinalityGuard();
+        configureTargetHealth();
+        configureRateLimiter();
     }
 
     /**
@@ -33,6 +210,7 @@ public final class DescriptorImpl extends BuildStepDescriptor<Publisher> impleme
      */
     public void addTarget(Target target) {
         targets.add(target);
+        rebuildTargetRouter();
     }
 
     /**
@@ -42,6 +220,8 @@ public final class DescriptorImpl extends BuildStepDescriptor<Publisher> impleme
      */
     public void removeTarget(String targetDescription) {
         targets.removeIf(target -> target.getDescription().equals(targetDescription));
+        rebuildTargetRouter();
+        InfluxDbClientRegistry.get().retainTargets(targets);
     }
 
     public Target[] getTargets() {
@@ -51,6 +231,314 @@ public final class DescriptorImpl extends BuildStepDescriptor<Publisher> impleme
     @DataBoundSetter
     public void setTargets(List<Target> targets) {
         this.targets = targets;
+        rebuildTargetRouter();
+        InfluxDbClientRegistry.get().retainTargets(targets);
+    }
+
+    /**
+     * Returns the routing table of the current targets.
+     */
+    public TargetRouter getTargetRouter() {
+        TargetRouter router = targetRouter;
+        return router != null ? router : rebuildTargetRouter();
+    }
+
+    private TargetRouter rebuildTargetRouter() {
+        TargetRouter router = targets != null ? new TargetRouter(getTargets()) : TargetRouter.empty();
+        targetRouter = router;
+        return router;
+    }
+
+    public LogMetricRule[] getLogMetricRules() {
+        return logMetricRules != null ? logMetricRules.toArray(new LogMetricRule[0]) : new LogMetricRule[0];
+    }
+
+    @DataBoundSetter
+    public void setLogMetricRules(List<LogMetricRule> logMetricRules) {
+        this.logMetricRules = new CopyOnWriteArrayList<>(logMetricRules);
+    }
+
+    public boolean isAsyncPublication() {
+        return asyncPublication;
+    }
+
+    @DataBoundSetter
+    public void setAsyncPublication(boolean asyncPublication) {
+        this.asyncPublication = asyncPublication;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    @DataBoundSetter
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+        configurePublicationQueue();
+    }
+
+    public int getAsyncWorkerCount() {
+        return asyncWorkerCount;
+    }
+
+    @DataBoundSetter
+    public void setAsyncWorkerCount(int asyncWorkerCount) {
+        this.asyncWorkerCount = asyncWorkerCount;
+        configurePublicationQueue();
+    }
+
+    public String getAsyncQueueFullPolicy() {
+        return asyncQueueFullPolicy;
+    }
+
+    @DataBoundSetter
+    public void setAsyncQueueFullPolicy(String asyncQueueFullPolicy) {
+        this.asyncQueueFullPolicy = QueueFullPolicy.fromName(asyncQueueFullPolicy).name();
+        configurePublicationQueue();
+    }
+
+    public int getGeneratorTimeout() {
+        return generatorTimeout;
+    }
+
+    @DataBoundSetter
+    public void setGeneratorTimeout(int generatorTimeout) {
+        this.generatorTimeout = generatorTimeout;
+    }
+
+    public boolean isCollectOnAgent() {
+        return collectOnAgent;
+    }
+
+    @DataBoundSetter
+    public void setCollectOnAgent(boolean collectOnAgent) {
+        this.collectOnAgent = collectOnAgent;
+    }
+
+    public int getLogScanMaxSize() {
+        return logScanMaxSize;
+    }
+
+    @DataBoundSetter
+    public void setLogScanMaxSize(int logScanMaxSize) {
+        this.logScanMaxSize = logScanMaxSize;
+    }
+
+    public String getRobotDetailLevel() {
+        return robotDetailLevel;
+    }
+
+    @DataBoundSetter
+    public void setRobotDetailLevel(String robotDetailLevel) {
+        this.robotDetailLevel = RobotDetailLevel.fromName(robotDetailLevel).name();
+    }
+
+    public int getRobotCaseSampleRate() {
+        return robotCaseSampleRate;
+    }
+
+    @DataBoundSetter
+    public void setRobotCaseSampleRate(int robotCaseSampleRate) {
+        this.robotCaseSampleRate = robotCaseSampleRate;
+    }
+
+    public boolean isLeanSchema() {
+        return leanSchema;
+    }
+
+    @DataBoundSetter
+    public void setLeanSchema(boolean leanSchema) {
+        this.leanSchema = leanSchema;
+    }
+
+    public int getTargetWriteTimeout() {
+        return targetWriteTimeout;
+    }
+
+    @DataBoundSetter
+    public void setTargetWriteTimeout(int targetWriteTimeout) {
+        this.targetWriteTimeout = targetWriteTimeout;
+    }
+
+    public int getWriteRetries() {
+        return writeRetries;
+    }
+
+    @DataBoundSetter
+    public void setWriteRetries(int writeRetries) {
+        this.writeRetries = writeRetries;
+        configureTargetHealth();
+    }
+
+    public int getWriteRetryBackoff() {
+        return writeRetryBackoff;
+    }
+
+    @DataBoundSetter
+    public void setWriteRetryBackoff(int writeRetryBackoff) {
+        this.writeRetryBackoff = writeRetryBackoff;
+        configureTargetHealth();
+    }
+
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+        this.circuitBreakerThreshold = circuitBreakerThreshold;
+        configureTargetHealth();
+    }
+
+    public int getCircuitBreakerCooldown() {
+        return circuitBreakerCooldown;
+    }
+
+    @DataBoundSetter
+    public void setCircuitBreakerCooldown(int circuitBreakerCooldown) {
+        this.circuitBreakerCooldown = circuitBreakerCooldown;
+        configureTargetHealth();
+    }
+
+    public int getRateLimitMaxWait() {
+        return rateLimitMaxWait;
+    }
+
+    @DataBoundSetter
+    public void setRateLimitMaxWait(int rateLimitMaxWait) {
+        this.rateLimitMaxWait = rateLimitMaxWait;
+        configureRateLimiter();
+    }
+
+    public int getChunkMaxPoints() {
+        return chunkMaxPoints;
+    }
+
+    @DataBoundSetter
+    public void setChunkMaxPoints(int chunkMaxPoints) {
+        this.chunkMaxPoints = chunkMaxPoints;
+    }
+
+    public int getChunkMaxSize() {
+        return chunkMaxSize;
+    }
+
+    @DataBoundSetter
+    public void setChunkMaxSize(int chunkMaxSize) {
+        this.chunkMaxSize = chunkMaxSize;
+    }
+
+    public boolean isSpoolFailedWrites() {
+        return spoolFailedWrites;
+    }
+
+    @DataBoundSetter
+    public void setSpoolFailedWrites(boolean spoolFailedWrites) {
+        this.spoolFailedWrites = spoolFailedWrites;
+        configureSpool();
+    }
+
+    public int getSpoolMaxSize() {
+        return spoolMaxSize;
+    }
+
+    @DataBoundSetter
+    public void setSpoolMaxSize(int spoolMaxSize) {
+        this.spoolMaxSize = spoolMaxSize;
+        configureSpool();
+    }
+
+    public int getSpoolMaxAge() {
+        return spoolMaxAge;
+    }
+
+    @DataBoundSetter
+    public void setSpoolMaxAge(int spoolMaxAge) {
+        this.spoolMaxAge = spoolMaxAge;
+        configureSpool();
+    }
+
+    public boolean isCoalesceWrites() {
+        return coalesceWrites;
+    }
+
+    @DataBoundSetter
+    public void setCoalesceWrites(boolean coalesceWrites) {
+        this.coalesceWrites = coalesceWrites;
+    }
+
+    public int getCoalesceMaxPoints() {
+        return coalesceMaxPoints;
+    }
+
+    @DataBoundSetter
+    public void setCoalesceMaxPoints(int coalesceMaxPoints) {
+        this.coalesceMaxPoints = coalesceMaxPoints;
+        configureCoalescer();
+    }
+
+    public int getCoalesceMaxSize() {
+        return coalesceMaxSize;
+    }
+
+    @DataBoundSetter
+    public void setCoalesceMaxSize(int coalesceMaxSize) {
+        this.coalesceMaxSize = coalesceMaxSize;
+        configureCoalescer();
+    }
+
+    public int getCoalesceMaxLinger() {
+        return coalesceMaxLinger;
+    }
+
+    @DataBoundSetter
+    public void setCoalesceMaxLinger(int coalesceMaxLinger) {
+        this.coalesceMaxLinger = coalesceMaxLinger;
+        configureCoalescer();
+    }
+
+    public int getTagCardinalityLimit() {
+        return tagCardinalityLimit;
+    }
+
+    @DataBoundSetter
+    public void setTagCardinalityLimit(int tagCardinalityLimit) {
+        this.tagCardinalityLimit = tagCardinalityLimit;
+        configureCardinalityGuard();
+    }
+
+    public String getTagCardinalityAction() {
+        return tagCardinalityAction;
+    }
+
+    @DataBoundSetter
+    public void setTagCardinalityAction(String tagCardinalityAction) {
+        this.tagCardinalityAction = CardinalityGuard.GuardAction.fromName(tagCardinalityAction).name();
+        configureCardinalityGuard();
+    }
+
+    private void configureCoalescer() {
+        BatchCoalescer.get().configure(coalesceMaxPoints, coalesceMaxSize * 1024L, coalesceMaxLinger);
+    }
+
+    private void configureCardinalityGuard() {
+        CardinalityGuard.get().configure(tagCardinalityLimit, CardinalityGuard.GuardAction.fromName(tagCardinalityAction));
+    }
+
+    private void configureTargetHealth() {
+        TargetHealth.get().configure(writeRetries, writeRetryBackoff, circuitBreakerThreshold, circuitBreakerCooldown);
+    }
+
+    private void configureRateLimiter() {
+        RateLimiter.get().configure(rateLimitMaxWait);
+    }
+
+    private void configureSpool() {
+        WriteSpool.get().configure(spoolFailedWrites, spoolMaxSize * 1024L * 1024L, TimeUnit.HOURS.toMillis(spoolMaxAge));
+    }
+
+    private void configurePublicationQueue() {
+        PublicationQueue.get().configure(asyncQueueSize, asyncWorkerCount, QueueFullPolicy.fromName(asyncQueueFullPolicy));
     }
 
     @Override
@@ -67,6 +555,42 @@ public final class DescriptorImpl extends BuildStepDescriptor<Publisher> impleme
     public boolean configure(StaplerRequest req, JSONObject formData) {
         targets.clear();
         targets.addAll(req.bindJSONToList(Target.class, formData.get("targets")));
+        rebuildTargetRouter();
+        InfluxDbClientRegistry.get().retainTargets(targets);
+        asyncPublication = formData.optBoolean("asyncPublication");
+        asyncQueueSize = formData.optInt("asyncQueueSize", PublicationQueue.DEFAULT_QUEUE_SIZE);
+        asyncWorkerCount = formData.optInt("asyncWorkerCount", PublicationQueue.DEFAULT_WORKER_COUNT);
+        asyncQueueFullPolicy = QueueFullPolicy.fromName(formData.optString("asyncQueueFullPolicy")).name();
+        configurePublicationQueue();
+        generatorTimeout = formData.optInt("generatorTimeout", GeneratorFanOut.DEFAULT_TIMEOUT_SECONDS);
+        logMetricRules = new CopyOnWriteArrayList<>(req.bindJSONToList(LogMetricRule.class, formData.get("logMetricRules")));
+        collectOnAgent = formData.optBoolean("collectOnAgent");
+        logScanMaxSize = formData.optInt("logScanMaxSize", ReverseLogScanner.DEFAULT_MAX_SCAN_SIZE_MB);
+        robotDetailLevel = RobotDetailLevel.fromName(formData.optString("robotDetailLevel")).name();
+        robotCaseSampleRate = formData.optInt("robotCaseSampleRate", 100);
+        leanSchema = formData.optBoolean("leanSchema");
+        targetWriteTimeout = formData.optInt("targetWriteTimeout", TargetFanOut.DEFAULT_TIMEOUT_SECONDS);
+        writeRetries = formData.optInt("writeRetries", TargetHealth.DEFAULT_RETRIES);
+        writeRetryBackoff = formData.optInt("writeRetryBackoff", TargetHealth.DEFAULT_BACKOFF_MILLIS);
+        circuitBreakerThreshold = formData.optInt("circuitBreakerThreshold", TargetHealth.DEFAULT_FAILURE_THRESHOLD);
+        circuitBreakerCooldown = formData.optInt("circuitBreakerCooldown", TargetHealth.DEFAULT_COOLDOWN_SECONDS);
+        configureTargetHealth();
+        rateLimitMaxWait = formData.optInt("rateLimitMaxWait", RateLimiter.DEFAULT_MAX_WAIT_SECONDS);
+        configureRateLimiter();
+        chunkMaxPoints = formData.optInt("chunkMaxPoints", PublicationSink.DEFAULT_CHUNK_POINTS);
+        chunkMaxSize = formData.optInt("chunkMaxSize", PublicationSink.DEFAULT_CHUNK_SIZE_KB);
+        spoolFailedWrites = formData.optBoolean("spoolFailedWrites");
+        spoolMaxSize = formData.optInt("spoolMaxSize", WriteSpool.DEFAULT_MAX_SIZE_MB);
+        spoolMaxAge = formData.optInt("spoolMaxAge", WriteSpool.DEFAULT_MAX_AGE_HOURS);
+        configureSpool();
+        coalesceWrites = formData.optBoolean("coalesceWrites");
+        coalesceMaxPoints = formData.optInt("coalesceMaxPoints", BatchCoalescer.DEFAULT_MAX_POINTS);
+        coalesceMaxSize = formData.optInt("coalesceMaxSize", BatchCoalescer.DEFAULT_MAX_SIZE_KB);
+        coalesceMaxLinger = formData.optInt("coalesceMaxLinger", BatchCoalescer.DEFAULT_MAX_LINGER_MILLIS);
+        configureCoalescer();
+        tagCardinalityLimit = formData.optInt("tagCardinalityLimit", 0);
+        tagCardinalityAction = CardinalityGuard.GuardAction.fromName(formData.optString("tagCardinalityAction")).name();
+        configureCardinalityGuard();
         save();
         return true;
     }
@@ -78,4 +602,66 @@ public final class DescriptorImpl extends BuildStepDescriptor<Publisher> impleme
         }
         return model;
     }
+
+    public FormValidation doCheckPattern(@QueryParameter String value) {
+        try {
+            Pattern.compile(value);
+            return FormValidation.ok();
+        } catch (PatternSyntaxException e) {
+            return FormValidation.error(e.getDescription());
+        }
+    }
+
+    /**
+     * Checks the syntax of the URL of a target. The state of the targets is shown by the {@link TargetStatusLink}.
+     */
+    public FormValidation doCheckUrl(@QueryParameter String value) {
+        if (value == null || value.isEmpty()) {
+            return FormValidation.ok();
+        }
+        try {
+            new URL(value);
+            return FormValidation.ok();
+        } catch (MalformedURLException e) {
+            return FormValidation.error(e.getMessage());
+        }
+    }
+
+    public ListBoxModel doFillAsyncQueueFullPolicyItems() {
+        ListBoxModel model = new ListBoxModel();
+        for (QueueFullPolicy policy : QueueFullPolicy.values()) {
+            model.add(policy.getDisplayName(), policy.name());
+        }
+        return model;
+    }
+
+    public ListBoxModel doFillTagCardinalityActionItems() {
+        ListBoxModel model = new ListBoxModel();
+        for (CardinalityGuard.GuardAction guardAction : CardinalityGuard.GuardAction.values()) {
+            model.add(guardAction.getDisplayName(), guardAction.name());
+        }
+        return model;
+    }
+
+    /**
+     * Stops guarding the tags which exceeded the cardinality limit, e.g. after the job writing too many values
+     * was fixed.
+     */
+    @RequirePOST
+    public FormValidation doResetGuardedTags() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        List<String> resetTags = CardinalityGuard.get().resetGuardedTags();
+        if (resetTags.isEmpty()) {
+            return FormValidation.ok("No tags are guarded.");
+        }
+        return FormValidation.ok("Reset " + String.join(", ", resetTags) + ".");
+    }
+
+    public ListBoxModel doFillRobotDetailLevelItems() {
+        ListBoxModel model = new ListBoxModel();
+        for (RobotDetailLevel level : RobotDetailLevel.values()) {
+            model.add(level.getDisplayName(), level.name());
+        }
+        return model;
+    }
 }
@@ -1,30 +1,24 @@
 package jenkinsci.plugins.influxdb;
 
-import com.google.common.base.Strings;
-import hudson.ProxyConfiguration;
+import hudson.FilePath;
 import hudson.model.Run;
 import hudson.model.TaskListener;
-import hudson.util.Secret;
-import jenkins.model.Jenkins;
 import jenkinsci.plugins.influxdb.generators.*;
 import jenkinsci.plugins.influxdb.models.Target;
+import jenkinsci.plugins.influxdb.publication.CardinalityGuard;
+import jenkinsci.plugins.influxdb.publication.PublicationQueue;
+import jenkinsci.plugins.influxdb.publication.PublicationSink;
+import jenkinsci.plugins.influxdb.publication.QueuedChunks;
+import jenkinsci.plugins.influxdb.publication.TargetPublication;
+import jenkinsci.plugins.influxdb.publication.WriteSpool;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
 import jenkinsci.plugins.influxdb.renderer.ProjectNameRenderer;
-import okhttp3.Credentials;
-import okhttp3.OkHttpClient;
-import org.influxdb.InfluxDB;
-import org.influxdb.InfluxDB.ConsistencyLevel;
-import org.influxdb.InfluxDBFactory;
-import org.influxdb.dto.BatchPoints;
-import org.influxdb.dto.Point;
 
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Level;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class InfluxDbPublicationService {
@@ -34,11 +28,6 @@ public class InfluxDbPublicationService {
      **/
     private static final Logger logger = Logger.getLogger(InfluxDbPublicationService.class.getName());
 
-    /**
-     * Shared HTTP client which can make use of connection and thread pooling.
-     */
-    private static final OkHttpClient httpClient = new OkHttpClient();
-
     /**
      * List of targets to write to
      */
@@ -169,170 +158,83 @@ public class InfluxDbPublicationService {
     }
 
     public void perform(Run<?, ?> build, TaskListener listener) {
+        perform(build, listener, null);
+    }
+
+    /**
+     * @param workspace workspace of the build, whose agent may do the work of the generators which does not need
+     *                  the controller, {@code null} if there is none
+     */
+    public void perform(Run<?, ?> build, TaskListener listener, FilePath workspace) {
         // Logging
         listener.getLogger().println("[InfluxDB Plugin] Collecting data for publication in InfluxDB...");
 
-        // Renderer to use for the metrics
-        MeasurementRenderer<Run<?, ?>> measurementRenderer = new ProjectNameRenderer(customPrefix, customProjectName);
-
-        // Points to write
-        List<Point> pointsToWrite = new ArrayList<>();
-
-        // Basic metrics
-        JenkinsBasePointGenerator jGen = new JenkinsBasePointGenerator(measurementRenderer, customPrefix, build, timestamp, listener, jenkinsEnvParameterField, jenkinsEnvParameterTag, measurementName, replaceDashWithUnderscore);
-        addPoints(pointsToWrite, jGen, listener);
-
-        CustomDataPointGenerator cdGen = new CustomDataPointGenerator(measurementRenderer, customPrefix, build, timestamp, customData, customDataTags, measurementName, replaceDashWithUnderscore);
-        if (cdGen.hasReport()) {
-            listener.getLogger().println("[InfluxDB Plugin] Custom data found. Writing to InfluxDB...");
-            addPoints(pointsToWrite, cdGen, listener);
-        } else {
-            logger.log(Level.FINE, "Data source empty: Custom Data");
-        }
-
-        CustomDataMapPointGenerator cdmGen = new CustomDataMapPointGenerator(measurementRenderer, customPrefix, build, timestamp, customDataMap, customDataMapTags, replaceDashWithUnderscore);
-        if (cdmGen.hasReport()) {
-            listener.getLogger().println("[InfluxDB Plugin] Custom data map found. Writing to InfluxDB...");
-            addPoints(pointsToWrite, cdmGen, listener);
-        } else {
-            logger.log(Level.FINE, "Data source empty: Custom Data Map");
-        }
-
-        try {
-            CoberturaPointGenerator cGen = new CoberturaPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore);
-            if (cGen.hasReport()) {
-                listener.getLogger().println("[InfluxDB Plugin] Cobertura data found. Writing to InfluxDB...");
-                addPoints(pointsToWrite, cGen, listener);
-            }
-        } catch (NoClassDefFoundError ignore) {
-            logger.log(Level.FINE, "Plugin skipped: Cobertura");
-        }
-
-        try {
-            RobotFrameworkPointGenerator rfGen = new RobotFrameworkPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore);
-            if (rfGen.hasReport()) {
-                listener.getLogger().println("[InfluxDB Plugin] Robot Framework data found. Writing to InfluxDB...");
-                addPoints(pointsToWrite, rfGen, listener);
-            }
-        } catch (NoClassDefFoundError ignore) {
-            logger.log(Level.FINE, "Plugin skipped: Robot Framework");
-        }
-
-        try {
-            JacocoPointGenerator jacoGen = new JacocoPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore);
-            if (jacoGen.hasReport()) {
-                listener.getLogger().println("[InfluxDB Plugin] Jacoco data found. Writing to InfluxDB...");
-                addPoints(pointsToWrite, jacoGen, listener);
-            }
-        } catch (NoClassDefFoundError ignore) {
-            logger.log(Level.FINE, "Plugin skipped: JaCoCo");
-        }
-
-        try {
-            PerformancePointGenerator perfGen = new PerformancePointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore);
-            if (perfGen.hasReport()) {
-                listener.getLogger().println("[InfluxDB Plugin] Performance data found. Writing to InfluxDB...");
-                addPoints(pointsToWrite, perfGen, listener);
-            }
-        } catch (NoClassDefFoundError ignore) {
-            logger.log(Level.FINE, "Plugin skipped: Performance");
-        }
-
-        SonarQubePointGenerator sonarGen = new SonarQubePointGenerator(measurementRenderer, customPrefix, build, timestamp, listener, replaceDashWithUnderscore);
-        if (sonarGen.hasReport()) {
-            listener.getLogger().println("[InfluxDB Plugin] SonarQube data found. Writing to InfluxDB...");
-            addPoints(pointsToWrite, sonarGen, listener);
-        } else {
-            logger.log(Level.FINE, "Plugin skipped: SonarQube");
+        // Renderer to use for the metrics, with what all points of the build share computed once for all generators
+        MeasurementRenderer<Run<?, ?>> measurementRenderer = new BuildContext(new ProjectNameRenderer(customPrefix, customProjectName),
+                customPrefix, build, listener, replaceDashWithUnderscore, InfluxDbPublisher.DESCRIPTOR.isLeanSchema());
+
+        // Points are encoded as they are generated. Synchronous publications ship each chunk right away,
+        // asynchronous ones hand the chunks over when all points are generated, spilling them to a file
+        // beyond the size of a chunk.
+        boolean async = InfluxDbPublisher.DESCRIPTOR.isAsyncPublication();
+        int chunkSize = InfluxDbPublisher.DESCRIPTOR.getChunkMaxSize() * 1024;
+        QueuedChunks queuedChunks = async ? new QueuedChunks(chunkSize) : null;
+        TargetPublication publication = async ? null : new TargetPublication(selectedTargets, listener);
+        CardinalityGuard cardinalityGuard = CardinalityGuard.get();
+        PublicationSink pointsToWrite = new PublicationSink(InfluxDbPublisher.DESCRIPTOR.getChunkMaxPoints(),
+                chunkSize, async ? queuedChunks : publication::write,
+                cardinalityGuard.forPublication());
+
+        // Requests to other servers are sent from the agent of the build, the controller only merges and writes
+        FilePath agentWorkspace = InfluxDbPublisher.DESCRIPTOR.isCollectOnAgent() && workspace != null && workspace.isRemote() ? workspace : null;
+
+        // Generators run concurrently, their points are written in this order. The build data and the custom data
+        // only need the build, they are generated on this thread.
+        List<GeneratorFanOut.Source> sources = new ArrayList<>();
+        sources.add(GeneratorFanOut.localSource("Jenkins", null, () -> new JenkinsBasePointGenerator(measurementRenderer, customPrefix, build, timestamp, listener, jenkinsEnvParameterField, jenkinsEnvParameterTag, measurementName, replaceDashWithUnderscore)));
+        sources.add(GeneratorFanOut.localSource("Custom Data", "Custom data", () -> new CustomDataPointGenerator(measurementRenderer, customPrefix, build, timestamp, customData, customDataTags, measurementName, replaceDashWithUnderscore)));
+        sources.add(GeneratorFanOut.localSource("Custom Data Map", "Custom data map", () -> new CustomDataMapPointGenerator(measurementRenderer, customPrefix, build, timestamp, customDataMap, customDataMapTags, replaceDashWithUnderscore)));
+        sources.add(GeneratorFanOut.source("Cobertura", "Cobertura data", () -> new CoberturaPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore)));
+        sources.add(GeneratorFanOut.source("Robot Framework", "Robot Framework data", () -> new RobotFrameworkPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore, RobotDetailLevel.fromName(InfluxDbPublisher.DESCRIPTOR.getRobotDetailLevel()), InfluxDbPublisher.DESCRIPTOR.getRobotCaseSampleRate())));
+        sources.add(GeneratorFanOut.source("JaCoCo", "Jacoco data", () -> new JacocoPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore)));
+        sources.add(GeneratorFanOut.source("Performance", "Performance data", () -> new PerformancePointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore)));
+        sources.add(GeneratorFanOut.source("SonarQube", "SonarQube data", () -> new SonarQubePointGenerator(measurementRenderer, customPrefix, build, timestamp, listener, replaceDashWithUnderscore, InfluxDbPublisher.DESCRIPTOR.getLogScanMaxSize() * 1024L * 1024L, agentWorkspace)));
+        sources.add(GeneratorFanOut.source("Change Log", "Git ChangeLog data", () -> new ChangeLogPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore)));
+        sources.add(GeneratorFanOut.source("Performance Publisher", "PerfPublisher data", () -> new PerfPublisherPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore)));
+        sources.add(GeneratorFanOut.source("Build Log Metrics", "Build log metrics", () -> new LogMetricsPointGenerator(measurementRenderer, customPrefix, build, timestamp, Arrays.asList(InfluxDbPublisher.DESCRIPTOR.getLogMetricRules()), replaceDashWithUnderscore)));
+        GeneratorFanOut.generateAll(sources, pointsToWrite, TimeUnit.SECONDS.toMillis(InfluxDbPublisher.DESCRIPTOR.getGeneratorTimeout()), listener);
+
+        pointsToWrite.finish();
+        if (!pointsToWrite.getFilteredTags().isEmpty()) {
+            listener.getLogger().println("[InfluxDB Plugin] Tags over the cardinality limit, written as "
+                    + InfluxDbPublisher.DESCRIPTOR.getTagCardinalityAction() + ": " + String.join(", ", pointsToWrite.getFilteredTags()));
         }
-
-        ChangeLogPointGenerator changeLogGen = new ChangeLogPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore);
-        if (changeLogGen.hasReport()) {
-            listener.getLogger().println("[InfluxDB Plugin] Git ChangeLog data found. Writing to InfluxDB...");
-            addPoints(pointsToWrite, changeLogGen, listener);
+        cardinalityGuard.saveIfChanged(false);
+        if (async) {
+            // Targets and chunks are handed over as they are now, the build may go on and finish
+            List<Target> targets = new ArrayList<>(selectedTargets);
+            // Spool what could not be written before Jenkins shuts down
+            boolean spoolEnabled = WriteSpool.get().isEnabled();
+            Runnable fallback = () -> {
+                if (spoolEnabled) {
+                    TargetPublication.spool(targets, queuedChunks);
+                }
+                queuedChunks.discard();
+            };
+            PublicationQueue.get().submit(() -> {
+                try {
+                    TargetPublication queuedPublication = new TargetPublication(targets, TaskListener.NULL);
+                    queuedChunks.forEach(queuedPublication::write);
+                    queuedPublication.finish(false);
+                } finally {
+                    queuedChunks.discard();
+                }
+            }, fallback);
+            listener.getLogger().println("[InfluxDB Plugin] Data queued for asynchronous publication.");
         } else {
-            logger.log(Level.FINE, "Data source empty: Change Log");
-        }
-
-        try {
-            PerfPublisherPointGenerator perfPublisherGen = new PerfPublisherPointGenerator(measurementRenderer, customPrefix, build, timestamp, replaceDashWithUnderscore);
-            if (perfPublisherGen.hasReport()) {
-                listener.getLogger().println("[InfluxDB Plugin] PerfPublisher data found. Writing to InfluxDB...");
-                addPoints(pointsToWrite, perfPublisherGen, listener);
-            }
-        } catch (NoClassDefFoundError ignore) {
-            logger.log(Level.FINE, "Plugin skipped: Performance Publisher");
-        }
-
-        for (Target target : selectedTargets) {
-            String logMessage = "[InfluxDB Plugin] Publishing data to: " + target;
-            logger.log(Level.FINE, logMessage);
-            listener.getLogger().println(logMessage);
-
-            URL url;
-            try {
-                url = new URL(target.getUrl());
-            } catch (MalformedURLException e) {
-                listener.getLogger().println("[InfluxDB Plugin] Skipping target due to invalid URL: " + target.getUrl());
-                continue;
-            }
-
-            OkHttpClient.Builder httpClient = createHttpClient(url, target.isUsingJenkinsProxy());
-            InfluxDB influxDB = Strings.isNullOrEmpty(target.getUsername()) ?
-                    InfluxDBFactory.connect(target.getUrl(), httpClient) :
-                    InfluxDBFactory.connect(target.getUrl(), target.getUsername(), Secret.toString(target.getPassword()), httpClient);
-            writeToInflux(target, influxDB, pointsToWrite);
+            publication.finish(true);
         }
 
         listener.getLogger().println("[InfluxDB Plugin] Completed.");
     }
-
-    private void addPoints(List<Point> pointsToWrite, PointGenerator generator, TaskListener listener) {
-        try {
-            pointsToWrite.addAll(Arrays.asList(generator.generate()));
-        } catch (Exception e) {
-            listener.getLogger().println("[InfluxDB Plugin] Failed to collect data. Ignoring Exception:" + e);
-        }
-    }
-
-    private OkHttpClient.Builder createHttpClient(URL url, boolean useProxy) {
-        OkHttpClient.Builder builder = httpClient.newBuilder();
-        ProxyConfiguration proxyConfig = Jenkins.getInstance().proxy;
-        if (useProxy && proxyConfig != null) {
-            builder.proxy(proxyConfig.createProxy(url.getHost()));
-            if (proxyConfig.getUserName() != null) {
-                builder.proxyAuthenticator((route, response) -> {
-                    if (response.request().header("Proxy-Authorization") != null) {
-                        return null; // Give up, we've already failed to authenticate.
-                    }
-
-                    String credential = Credentials.basic(proxyConfig.getUserName(), proxyConfig.getPassword());
-                    return response.request().newBuilder().header("Proxy-Authorization", credential).build();
-                });
-            }
-        }
-        return builder;
-    }
-
-    private void writeToInflux(Target target, InfluxDB influxDB, List<Point> pointsToWrite) {
-        /*
-         * build batchpoints for a single write.
-         */
-        try {
-            BatchPoints batchPoints = BatchPoints
-                    .database(target.getDatabase())
-                    .points(pointsToWrite.toArray(new Point[0]))
-                    .retentionPolicy(target.getRetentionPolicy())
-                    .consistency(ConsistencyLevel.ANY)
-                    .build();
-            influxDB.write(batchPoints);
-        } catch (Exception e) {
-            if (target.isExposeExceptions()) {
-                throw new InfluxReportException(e);
-            } else {
-                //Exceptions not exposed by configuration. Just log and ignore.
-                logger.log(Level.WARNING, "Could not report to InfluxDB. Ignoring Exception.", e);
-            }
-        }
-    }
 }
@@ -12,6 +12,7 @@ import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
 import jenkins.tasks.SimpleBuildStep;
+import jenkinsci.plugins.influxdb.global.TargetRouter;
 import jenkinsci.plugins.influxdb.models.Target;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -263,17 +264,11 @@ public class InfluxDbPublisher extends Notifier implements SimpleBuildStep {
     }
 
     public Target getTarget() {
-        Target[] targets = DESCRIPTOR.getTargets();
-        if (selectedTarget == null && targets.length > 0) {
-            return targets[0];
+        TargetRouter router = DESCRIPTOR.getTargetRouter();
+        if (selectedTarget == null) {
+            return router.getDefaultTarget();
         }
-        for (Target target : targets) {
-            String targetInfo = target.getDescription();
-            if (targetInfo.equals(selectedTarget)) {
-                return target;
-            }
-        }
-        return null;
+        return router.getTarget(selectedTarget);
     }
 
     //@Override
@@ -327,7 +322,7 @@ public class InfluxDbPublisher extends Notifier implements SimpleBuildStep {
                 replaceDashWithUnderscore);
 
         // Publishes the metrics
-        publicationService.perform(build, listener);
+        publicationService.perform(build, listener, workspace);
     }
 
     private long resolveTimestampForPointGenerationInNanoseconds(final Run<?, ?> build) {
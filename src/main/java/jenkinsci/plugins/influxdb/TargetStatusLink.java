@@ -0,0 +1,85 @@
+package jenkinsci.plugins.influxdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.influxdb.models.Target;
+import jenkinsci.plugins.influxdb.publication.RateLimiter;
+import jenkinsci.plugins.influxdb.publication.TargetHealth;
+
+/**
+ * Page of Manage Jenkins showing the state of the circuit and the rate limit usage of each target. Failures may
+ * contain details of the targets, so only administrators see it.
+ */
+@Extension
+public class TargetStatusLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return Jenkins.getInstance().hasPermission(Jenkins.ADMINISTER) ? "graph.png" : null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "InfluxDB Targets";
+    }
+
+    @Override
+    public String getDescription() {
+        return "State of the circuit and rate limit usage of the InfluxDB targets.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "influxdb-targets";
+    }
+
+    public List<TargetStatus> getTargetStatuses() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        List<TargetStatus> statuses = new ArrayList<>();
+        for (Target target : InfluxDbPublisher.DESCRIPTOR.getTargets()) {
+            statuses.add(new TargetStatus(target.getDescription(), target.getUrl(),
+                    TargetHealth.get().describe(target.getUrl()), RateLimiter.get().describe(target.getUrl())));
+        }
+        return statuses;
+    }
+
+    public static final class TargetStatus {
+        private final String description;
+        private final String url;
+        private final String circuitState;
+        private final String rateLimitUsage;
+
+        TargetStatus(String description, String url, String circuitState, String rateLimitUsage) {
+            this.description = description;
+            this.url = url;
+            this.circuitState = circuitState;
+            this.rateLimitUsage = rateLimitUsage;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * The state of the circuit, {@code null} if it is closed.
+         */
+        public String getCircuitState() {
+            return circuitState;
+        }
+
+        /**
+         * How much of the rate limits is in use, {@code null} if the target has no limits.
+         */
+        public String getRateLimitUsage() {
+            return rateLimitUsage;
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package jenkinsci.plugins.influxdb.encoder;
+
+import org.influxdb.dto.Point;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes points as InfluxDB line protocol straight into a reusable, growing byte buffer.
+ * <p>
+ * {@link Point#lineProtocol()} renders every point through a {@link StringBuilder} into a String, which is
+ * then copied into the request as bytes. The encoder skips those intermediate copies: the generators write their
+ * points into a {@link PointBuilder}, whose names, tags and values are escaped and UTF-8 encoded directly into the
+ * buffer, and the escaped bytes of measurement names and keys, which repeat for every build, are cached, and so are
+ * the series key prefixes made of the measurement and the project tags, which repeat for every point of a job. The
+ * output is the same as the one of {@link org.influxdb.dto.BatchPoints#lineProtocol()} with nanosecond precision.
+ * <p>
+ * An encoder is not thread-safe. It is meant to be reused by one thread, e.g. through {@link #forCurrentThread()}.
+ */
+public final class LineProtocolEncoder {
+
+    /**
+     * Number of values a hashed tag is written with, see {@link TagFilter.Action#HASH}.
+     */
+    public static final int HASH_BUCKETS = 64;
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    /**
+     * Buffers grown beyond this size are released on {@link #reset()}, so that one huge publication does not
+     * pin its memory on a thread forever.
+     */
+    private static final int RETAINED_CAPACITY = 1024 * 1024;
+
+    private static final int MAX_CACHED_NAMES = 4096;
+
+    private static final int MAX_CACHED_SERIES_PREFIXES = 4096;
+
+    /**
+     * Tags of the job, set by the point generators on every point. They sort before the tags of the reports,
+     * e.g. the name of a test case, so together with the measurement they start the series key of most points.
+     */
+    private static final String PREFIX_TAG = "prefix";
+    private static final String PROJECT_NAME_TAG = "project_name";
+
+    /**
+     * Characters escaped in measurement names, keys and tag values. {@link Point} escapes the same set in all of them,
+     * which keeps the series keys identical to the ones written before.
+     */
+    private static final boolean[] KEY_ESCAPES = escapes(", =");
+    private static final boolean[] STRING_ESCAPES = escapes("\"\\");
+
+    private static final ConcurrentMap<String, byte[]> ESCAPED_MEASUREMENTS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, byte[]> ESCAPED_KEYS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<SeriesPrefix, byte[]> SERIES_PREFIXES = new ConcurrentHashMap<>();
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<LineProtocolEncoder> THREAD_ENCODER = ThreadLocal.withInitial(LineProtocolEncoder::new);
+
+    private byte[] buffer;
+    private int size;
+    private int pointCount;
+    private int pointStart;
+    private boolean firstField;
+
+    /**
+     * Series key prefix of the last point, points of one report mostly follow each other.
+     */
+    private SeriesPrefix lastSeriesPrefix;
+    private byte[] lastSeriesPrefixBytes;
+
+    /**
+     * Indexes of the tags of the current point which are written as fields, see {@link TagFilter.Action#FIELD}.
+     */
+    private int[] demotedTags = new int[4];
+
+    public LineProtocolEncoder() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private LineProtocolEncoder(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * Returns the encoder of the current thread, emptied and ready for use.
+     */
+    public static LineProtocolEncoder forCurrentThread() {
+        LineProtocolEncoder encoder = THREAD_ENCODER.get();
+        encoder.reset();
+        return encoder;
+    }
+
+    /**
+     * Empties the encoder, keeping its buffer for the next use.
+     */
+    public LineProtocolEncoder reset() {
+        if (buffer.length > RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        size = 0;
+        pointCount = 0;
+        return this;
+    }
+
+    /**
+     * Appends the points, one line each.
+     */
+    public LineProtocolEncoder encode(Collection<PointBuilder> points) {
+        for (PointBuilder point : points) {
+            encode(point);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a point as produced by the point generators.
+     */
+    public LineProtocolEncoder encode(PointBuilder point) {
+        return encode(point, null);
+    }
+
+    /**
+     * Appends a point as produced by the point generators, writing its tags as the filter decides. The project tags
+     * are always written as they are.
+     *
+     * @param tagFilter decides how the other tags are written, {@code null} to write all tags as they are
+     */
+    public LineProtocolEncoder encode(PointBuilder point, TagFilter tagFilter) {
+        String measurement = point.measurement();
+        int tagCount = point.tagCount();
+        int tag = 0;
+        String prefix = null;
+        if (tag < tagCount && PREFIX_TAG.equals(point.tagKey(tag))) {
+            prefix = point.tagValue(tag);
+            tag++;
+        }
+        if (tag < tagCount && PROJECT_NAME_TAG.equals(point.tagKey(tag))) {
+            startSeries(measurement, prefix, point.tagValue(tag));
+            tag++;
+        } else {
+            startPoint(measurement);
+            if (prefix != null) {
+                tag(PREFIX_TAG, prefix);
+            }
+        }
+        int demotedCount = 0;
+        for (; tag < tagCount; tag++) {
+            String key = point.tagKey(tag);
+            String value = point.tagValue(tag);
+            TagFilter.Action action = tagFilter != null && !PREFIX_TAG.equals(key) && !PROJECT_NAME_TAG.equals(key)
+                    ? tagFilter.filter(measurement, key, value) : TagFilter.Action.KEEP;
+            switch (action) {
+                case FIELD:
+                    if (!point.hasField(key)) {
+                        if (demotedCount == demotedTags.length) {
+                            demotedTags = Arrays.copyOf(demotedTags, demotedCount * 2);
+                        }
+                        demotedTags[demotedCount++] = tag;
+                    }
+                    break;
+                case HASH:
+                    tag(key, hashBucket(value));
+                    break;
+                case DROP:
+                    break;
+                default:
+                    tag(key, value);
+                    break;
+            }
+        }
+        point.encodeFields(this);
+        for (int i = 0; i < demotedCount; i++) {
+            field(point.tagKey(demotedTags[i]), point.tagValue(demotedTags[i]));
+        }
+        if (point.hasTime()) {
+            endPoint(point.time(), point.precision());
+        } else {
+            endPoint();
+        }
+        return this;
+    }
+
+    /**
+     * Appends the points encoded by another encoder.
+     */
+    public LineProtocolEncoder append(LineProtocolEncoder other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.buffer, 0, buffer, size, other.size);
+        size += other.size;
+        pointCount += other.pointCount;
+        return this;
+    }
+
+    /**
+     * Starts a new point. Tags have to follow before the first field.
+     */
+    public LineProtocolEncoder startPoint(String measurement) {
+        pointStart = size;
+        writeBytes(escaped(ESCAPED_MEASUREMENTS, measurement, KEY_ESCAPES));
+        firstField = true;
+        return this;
+    }
+
+    /**
+     * Starts a new point with the project tags, which have to be the first tags in sort order. Further tags have
+     * to follow before the first field.
+     *
+     * @param prefix the prefix tag, {@code null} if there is none
+     */
+    public LineProtocolEncoder startSeries(String measurement, String prefix, String projectName) {
+        byte[] bytes;
+        SeriesPrefix last = lastSeriesPrefix;
+        if (last != null && last.matches(measurement, prefix, projectName)) {
+            bytes = lastSeriesPrefixBytes;
+        } else {
+            SeriesPrefix key = new SeriesPrefix(measurement, prefix, projectName);
+            bytes = SERIES_PREFIXES.get(key);
+            if (bytes == null) {
+                LineProtocolEncoder encoder = new LineProtocolEncoder(128);
+                encoder.startPoint(measurement);
+                if (prefix != null) {
+                    encoder.tag(PREFIX_TAG, prefix);
+                }
+                encoder.tag(PROJECT_NAME_TAG, projectName);
+                bytes = encoder.toByteArray();
+                // Jobs come and go, start over rather than keeping the prefixes of jobs which stopped building
+                if (SERIES_PREFIXES.size() >= MAX_CACHED_SERIES_PREFIXES) {
+                    SERIES_PREFIXES.clear();
+                }
+                SERIES_PREFIXES.putIfAbsent(key, bytes);
+            }
+            lastSeriesPrefix = key;
+            lastSeriesPrefixBytes = bytes;
+        }
+        pointStart = size;
+        writeBytes(bytes);
+        firstField = true;
+        return this;
+    }
+
+    /**
+     * Appends a tag. Tags with an empty key or value are left out, InfluxDB rejects them.
+     */
+    public LineProtocolEncoder tag(String key, String value) {
+        if (key.isEmpty() || value.isEmpty()) {
+            return this;
+        }
+        writeByte(',');
+        writeBytes(escaped(ESCAPED_KEYS, key, KEY_ESCAPES));
+        writeByte('=');
+        writeString(value, KEY_ESCAPES);
+        return this;
+    }
+
+    public LineProtocolEncoder field(String key, long value) {
+        startField(key);
+        writeLong(value);
+        writeByte('i');
+        return this;
+    }
+
+    /**
+     * Appends a float field. Infinite and NaN values are left out, InfluxDB would reject the whole write.
+     */
+    public LineProtocolEncoder field(String key, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return this;
+        }
+        startField(key);
+        writeDouble(value);
+        return this;
+    }
+
+    public LineProtocolEncoder field(String key, boolean value) {
+        startField(key);
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public LineProtocolEncoder field(String key, String value) {
+        startField(key);
+        writeByte('"');
+        writeString(value, STRING_ESCAPES);
+        writeByte('"');
+        return this;
+    }
+
+    /**
+     * Appends a field of any of the types {@link Point.Builder} accepts, rendered the way {@link Point} renders it.
+     * Fields without a value are left out.
+     */
+    public LineProtocolEncoder field(String key, Object value) {
+        if (value == null) {
+            return this;
+        } else if (value instanceof Double || value instanceof Float) {
+            return field(key, ((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal) {
+            startField(key);
+            writeString(((BigDecimal) value).toPlainString(), null);
+            return this;
+        } else if (value instanceof BigInteger) {
+            startField(key);
+            writeString(value.toString(), null);
+            writeByte('i');
+            return this;
+        } else if (value instanceof Number) {
+            return field(key, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            return field(key, ((Boolean) value).booleanValue());
+        } else if (value instanceof String) {
+            return field(key, (String) value);
+        }
+        startField(key);
+        writeString(String.valueOf(value), null);
+        return this;
+    }
+
+    /**
+     * Ends the current point with a timestamp, which is written in nanoseconds.
+     */
+    public LineProtocolEncoder endPoint(long time, TimeUnit unit) {
+        writeByte(' ');
+        writeLong(TimeUnit.NANOSECONDS.convert(time, unit));
+        return endPoint();
+    }
+
+    /**
+     * Ends the current point without a timestamp, InfluxDB then uses the time it receives the point.
+     */
+    public LineProtocolEncoder endPoint() {
+        if (firstField) {
+            // A point needs at least one field, drop what was written of it
+            size = pointStart;
+            return this;
+        }
+        writeByte('\n');
+        pointCount++;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * The internal buffer, valid from offset 0 up to {@link #size()} until the encoder is used again.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reduces a tag value to one of {@link #HASH_BUCKETS} values, the same one for every build.
+     */
+    static String hashBucket(String value) {
+        int hash = value.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return "h" + Math.floorMod(hash, HASH_BUCKETS);
+    }
+
+    private void startField(String key) {
+        writeByte(firstField ? ' ' : ',');
+        firstField = false;
+        writeBytes(escaped(ESCAPED_KEYS, key, KEY_ESCAPES));
+        writeByte('=');
+    }
+
+    private void writeDouble(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            // Integral values are the common case, e.g. counts and durations, they need no string conversion
+            writeLong((long) value);
+            writeByte('.');
+            writeByte('0');
+        } else {
+            String text = Double.toString(value);
+            if (text.indexOf('E') >= 0) {
+                // Point writes plain decimals, keep doing so instead of switching to the scientific notation
+                text = new BigDecimal(text).stripTrailingZeros().toPlainString();
+                if (text.indexOf('.') < 0) {
+                    text += ".0";
+                }
+            }
+            writeString(text, null);
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+    }
+
+    /**
+     * Writes the string as UTF-8, prefixing the characters flagged in the escape table with a backslash.
+     */
+    private void writeString(String value, boolean[] escapes) {
+        int length = value.length();
+        // Worst case: every character takes three bytes, or two when escaped
+        ensureCapacity(length * 3);
+        byte[] buf = buffer;
+        int pos = size;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (escapes != null && escapes[c]) {
+                    buf[pos++] = '\\';
+                }
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        size = pos;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) b;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+
+    /**
+     * Returns the escaped UTF-8 bytes of a name, from the cache when it was seen before.
+     */
+    private static byte[] escaped(ConcurrentMap<String, byte[]> cache, String name, boolean[] escapes) {
+        byte[] bytes = cache.get(name);
+        if (bytes == null) {
+            LineProtocolEncoder encoder = new LineProtocolEncoder(name.length() * 3);
+            encoder.writeString(name, escapes);
+            bytes = encoder.toByteArray();
+            // Names come from job and report data, stop caching rather than growing without bounds
+            if (cache.size() < MAX_CACHED_NAMES) {
+                cache.putIfAbsent(name, bytes);
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean[] escapes(String characters) {
+        boolean[] escapes = new boolean[0x80];
+        for (char c : characters.toCharArray()) {
+            escapes[c] = true;
+        }
+        return escapes;
+    }
+
+    /**
+     * Measurement and project tags of a series key prefix.
+     */
+    private static final class SeriesPrefix {
+        private final String measurement;
+        private final String prefix;
+        private final String projectName;
+        private final int hash;
+
+        SeriesPrefix(String measurement, String prefix, String projectName) {
+            this.measurement = measurement;
+            this.prefix = prefix;
+            this.projectName = projectName;
+            this.hash = Objects.hash(measurement, prefix, projectName);
+        }
+
+        boolean matches(String measurement, String prefix, String projectName) {
+            return this.measurement.equals(measurement) && Objects.equals(this.prefix, prefix)
+                    && this.projectName.equals(projectName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SeriesPrefix)) {
+                return false;
+            }
+            SeriesPrefix other = (SeriesPrefix) o;
+            return hash == other.hash && matches(other.measurement, other.prefix, other.projectName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package jenkinsci.plugins.influxdb.encoder;
+
+import org.influxdb.dto.Point;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point the point generators write and the {@link LineProtocolEncoder} encodes, without a {@link Point} in between.
+ * <p>
+ * It accepts what {@link Point.Builder} accepts and keeps tags and fields sorted by key the way {@link Point} does,
+ * so the encoded lines are the same, but it keeps them in plain arrays with unboxed numbers. A builder is meant to be
+ * reused: generators start every point on the same builder with {@link #reset(String)} and pass it on before they
+ * start the next one. Whoever keeps a point beyond that takes a {@link #copy()}.
+ * <p>
+ * A builder is not thread-safe.
+ */
+public final class PointBuilder {
+
+    private static final byte LONG = 0;
+    private static final byte DOUBLE = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte STRING = 3;
+    private static final byte OBJECT = 4;
+
+    private String measurement;
+
+    private String[] tagKeys;
+    private String[] tagValues;
+    private int tagCount;
+
+    private String[] fieldKeys;
+    private byte[] fieldKinds;
+    /**
+     * Values of long and boolean fields, booleans as 1 or 0.
+     */
+    private long[] longValues;
+    private double[] doubleValues;
+    /**
+     * Values of string fields and of fields of other types.
+     */
+    private Object[] objectValues;
+    private int fieldCount;
+
+    private long time;
+    private TimeUnit precision;
+
+    public PointBuilder() {
+        this(8, 16);
+    }
+
+    private PointBuilder(int tagCapacity, int fieldCapacity) {
+        tagKeys = new String[tagCapacity];
+        tagValues = new String[tagCapacity];
+        fieldKeys = new String[fieldCapacity];
+        fieldKinds = new byte[fieldCapacity];
+        longValues = new long[fieldCapacity];
+        doubleValues = new double[fieldCapacity];
+        objectValues = new Object[fieldCapacity];
+    }
+
+    /**
+     * Starts a point on a new builder.
+     */
+    public static PointBuilder measurement(String measurement) {
+        return new PointBuilder().reset(measurement);
+    }
+
+    /**
+     * Starts a new point, dropping the tags, fields and time of the previous one.
+     */
+    public PointBuilder reset(String measurement) {
+        this.measurement = Objects.requireNonNull(measurement, "measurement");
+        Arrays.fill(tagValues, 0, tagCount, null);
+        Arrays.fill(objectValues, 0, fieldCount, null);
+        tagCount = 0;
+        fieldCount = 0;
+        precision = null;
+        return this;
+    }
+
+    /**
+     * Sets a tag. Tags with an empty key or value are left out, like {@link Point.Builder#tag(String, String)} does.
+     */
+    public PointBuilder tag(String key, String value) {
+        Objects.requireNonNull(key, "tagName");
+        Objects.requireNonNull(value, "value");
+        if (key.isEmpty() || value.isEmpty()) {
+            return this;
+        }
+        int index = Arrays.binarySearch(tagKeys, 0, tagCount, key);
+        if (index < 0) {
+            index = -index - 1;
+            if (tagCount == tagKeys.length) {
+                int capacity = Math.max(4, tagCount * 2);
+                tagKeys = Arrays.copyOf(tagKeys, capacity);
+                tagValues = Arrays.copyOf(tagValues, capacity);
+            }
+            System.arraycopy(tagKeys, index, tagKeys, index + 1, tagCount - index);
+            System.arraycopy(tagValues, index, tagValues, index + 1, tagCount - index);
+            tagKeys[index] = key;
+            tagCount++;
+        }
+        tagValues[index] = value;
+        return this;
+    }
+
+    public PointBuilder tag(Map<String, String> tags) {
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            tag(tag.getKey(), tag.getValue());
+        }
+        return this;
+    }
+
+    public PointBuilder addField(String key, long value) {
+        int index = fieldIndex(key, LONG);
+        longValues[index] = value;
+        return this;
+    }
+
+    public PointBuilder addField(String key, double value) {
+        int index = fieldIndex(key, DOUBLE);
+        doubleValues[index] = value;
+        return this;
+    }
+
+    public PointBuilder addField(String key, boolean value) {
+        int index = fieldIndex(key, BOOLEAN);
+        longValues[index] = value ? 1 : 0;
+        return this;
+    }
+
+    public PointBuilder addField(String key, String value) {
+        Objects.requireNonNull(value, "value");
+        int index = fieldIndex(key, STRING);
+        objectValues[index] = value;
+        return this;
+    }
+
+    /**
+     * Sets a number field. Fields without a value are left out when the point is encoded.
+     */
+    public PointBuilder addField(String key, Number value) {
+        if (value instanceof Double || value instanceof Float) {
+            return addField(key, value.doubleValue());
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return addField(key, value.longValue());
+        }
+        int index = fieldIndex(key, OBJECT);
+        objectValues[index] = value;
+        return this;
+    }
+
+    /**
+     * Sets fields of any of the types {@link Point.Builder#fields(Map)} accepts. Fields without a value are left out
+     * when the point is encoded.
+     */
+    public PointBuilder fields(Map<String, Object> fields) {
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object value = field.getValue();
+            if (value instanceof Number) {
+                addField(field.getKey(), (Number) value);
+            } else if (value instanceof Boolean) {
+                addField(field.getKey(), ((Boolean) value).booleanValue());
+            } else if (value instanceof String) {
+                addField(field.getKey(), (String) value);
+            } else {
+                int index = fieldIndex(field.getKey(), OBJECT);
+                objectValues[index] = value;
+            }
+        }
+        return this;
+    }
+
+    public PointBuilder time(long time, TimeUnit precision) {
+        this.time = time;
+        this.precision = Objects.requireNonNull(precision, "precision");
+        return this;
+    }
+
+    public boolean hasField(String key) {
+        return Arrays.binarySearch(fieldKeys, 0, fieldCount, key) >= 0;
+    }
+
+    /**
+     * Copies the point, for receivers which keep it while the generator goes on with the next one.
+     */
+    public PointBuilder copy() {
+        PointBuilder copy = new PointBuilder(tagCount, fieldCount);
+        copy.measurement = measurement;
+        System.arraycopy(tagKeys, 0, copy.tagKeys, 0, tagCount);
+        System.arraycopy(tagValues, 0, copy.tagValues, 0, tagCount);
+        copy.tagCount = tagCount;
+        System.arraycopy(fieldKeys, 0, copy.fieldKeys, 0, fieldCount);
+        System.arraycopy(fieldKinds, 0, copy.fieldKinds, 0, fieldCount);
+        System.arraycopy(longValues, 0, copy.longValues, 0, fieldCount);
+        System.arraycopy(doubleValues, 0, copy.doubleValues, 0, fieldCount);
+        System.arraycopy(objectValues, 0, copy.objectValues, 0, fieldCount);
+        copy.fieldCount = fieldCount;
+        copy.time = time;
+        copy.precision = precision;
+        return copy;
+    }
+
+    /**
+     * Builds the {@link Point} of the same content, for callers which still work with points.
+     */
+    public Point toPoint() {
+        Point.Builder builder = Point.measurement(measurement);
+        for (int i = 0; i < tagCount; i++) {
+            builder.tag(tagKeys[i], tagValues[i]);
+        }
+        for (int i = 0; i < fieldCount; i++) {
+            switch (fieldKinds[i]) {
+                case LONG:
+                    builder.addField(fieldKeys[i], longValues[i]);
+                    break;
+                case DOUBLE:
+                    builder.addField(fieldKeys[i], doubleValues[i]);
+                    break;
+                case BOOLEAN:
+                    builder.addField(fieldKeys[i], longValues[i] != 0);
+                    break;
+                default:
+                    if (objectValues[i] != null) {
+                        builder.fields(Collections.singletonMap(fieldKeys[i], objectValues[i]));
+                    }
+                    break;
+            }
+        }
+        if (precision != null) {
+            builder.time(time, precision);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Encodes the point like {@link Point#lineProtocol()}, without the line break.
+     */
+    public String lineProtocol() {
+        String line = new LineProtocolEncoder().encode(this).toString();
+        return line.isEmpty() ? line : line.substring(0, line.length() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return lineProtocol();
+    }
+
+    String measurement() {
+        return measurement;
+    }
+
+    int tagCount() {
+        return tagCount;
+    }
+
+    String tagKey(int index) {
+        return tagKeys[index];
+    }
+
+    String tagValue(int index) {
+        return tagValues[index];
+    }
+
+    /**
+     * Appends the fields to the current point of the encoder, in key order.
+     */
+    void encodeFields(LineProtocolEncoder encoder) {
+        for (int i = 0; i < fieldCount; i++) {
+            switch (fieldKinds[i]) {
+                case LONG:
+                    encoder.field(fieldKeys[i], longValues[i]);
+                    break;
+                case DOUBLE:
+                    encoder.field(fieldKeys[i], doubleValues[i]);
+                    break;
+                case BOOLEAN:
+                    encoder.field(fieldKeys[i], longValues[i] != 0);
+                    break;
+                case STRING:
+                    encoder.field(fieldKeys[i], (String) objectValues[i]);
+                    break;
+                default:
+                    encoder.field(fieldKeys[i], objectValues[i]);
+                    break;
+            }
+        }
+    }
+
+    boolean hasTime() {
+        return precision != null;
+    }
+
+    long time() {
+        return time;
+    }
+
+    TimeUnit precision() {
+        return precision;
+    }
+
+    /**
+     * Finds the index of the field, inserting it in key order if it is new.
+     */
+    private int fieldIndex(String key, byte kind) {
+        int index = Arrays.binarySearch(fieldKeys, 0, fieldCount, Objects.requireNonNull(key, "field"));
+        if (index < 0) {
+            index = -index - 1;
+            if (fieldCount == fieldKeys.length) {
+                int capacity = Math.max(4, fieldCount * 2);
+                fieldKeys = Arrays.copyOf(fieldKeys, capacity);
+                fieldKinds = Arrays.copyOf(fieldKinds, capacity);
+                longValues = Arrays.copyOf(longValues, capacity);
+                doubleValues = Arrays.copyOf(doubleValues, capacity);
+                objectValues = Arrays.copyOf(objectValues, capacity);
+            }
+            int moved = fieldCount - index;
+            System.arraycopy(fieldKeys, index, fieldKeys, index + 1, moved);
+            System.arraycopy(fieldKinds, index, fieldKinds, index + 1, moved);
+            System.arraycopy(longValues, index, longValues, index + 1, moved);
+            System.arraycopy(doubleValues, index, doubleValues, index + 1, moved);
+            System.arraycopy(objectValues, index, objectValues, index + 1, moved);
+            fieldKeys[index] = key;
+            fieldCount++;
+        }
+        fieldKinds[index] = kind;
+        objectValues[index] = null;
+        return index;
+    }
+}
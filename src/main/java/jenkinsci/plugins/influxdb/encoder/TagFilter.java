@@ -0,0 +1,33 @@
+package jenkinsci.plugins.influxdb.encoder;
+
+/**
+ * Decides how the encoder writes a tag of a point, e.g. to keep the number of series of a measurement within bounds.
+ */
+@FunctionalInterface
+public interface TagFilter {
+
+    enum Action {
+
+        /**
+         * Writes the tag as it is.
+         */
+        KEEP,
+
+        /**
+         * Writes the value as a string field instead, unless the point has a field of the same key already.
+         */
+        FIELD,
+
+        /**
+         * Writes the tag with one of {@link LineProtocolEncoder#HASH_BUCKETS} values derived from a hash of its value.
+         */
+        HASH,
+
+        /**
+         * Leaves the tag out.
+         */
+        DROP
+    }
+
+    Action filter(String measurement, String key, String value);
+}
@@ -1,12 +1,13 @@
 package jenkinsci.plugins.influxdb.generators;
 
+import hudson.EnvVars;
 import hudson.model.Run;
-import jenkins.model.Jenkins;
+import hudson.model.TaskListener;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
-import org.influxdb.dto.Point;
 
+import java.io.IOException;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
 
 public abstract class AbstractPointGenerator implements PointGenerator {
 
@@ -19,47 +20,79 @@ public abstract class AbstractPointGenerator implements PointGenerator {
 
     private MeasurementRenderer projectNameRenderer;
 
+    /**
+     * Context of the publication, shared with the other generators, {@code null} if the generator was given a
+     * plain renderer.
+     */
+    private final BuildContext sharedContext;
+
+    /**
+     * Context last used to start points.
+     */
+    private BuildContext context;
+
+    /**
+     * Builder all points of the generator are started on, a point is passed on before the next one is started.
+     */
+    private final PointBuilder builder = new PointBuilder();
+
     public AbstractPointGenerator(MeasurementRenderer projectNameRenderer, long timestamp, boolean replaceDashWithUnderscore) {
         this.projectNameRenderer = Objects.requireNonNull(projectNameRenderer);
         this.timestamp = timestamp;
         this.replaceDashWithUnderscore = replaceDashWithUnderscore;
+        this.sharedContext = projectNameRenderer instanceof BuildContext ? (BuildContext) projectNameRenderer : null;
+        this.context = sharedContext;
     }
 
     @Override
-    public Point.Builder buildPoint(String name, String customPrefix, Run<?, ?> build, long timestamp) {
-        final String renderedProjectName = projectNameRenderer.render(build);
-
-        String projectTagName;
-        if (this.replaceDashWithUnderscore) {
-            projectTagName = renderedProjectName;
-        } else if (customPrefix != null){
-            projectTagName = customPrefix + "_" + build.getParent().getName();
-        } else {
-            projectTagName = build.getParent().getName();
-        }
+    public PointBuilder buildPoint(String name, String customPrefix, Run<?, ?> build, long timestamp) {
+        return context(customPrefix, build).newPoint(builder, name, timestamp, false);
+    }
 
-        Point.Builder builder = Point
-                .measurement(name)
-                .addField(PROJECT_NAME, renderedProjectName)
-                .addField(PROJECT_PATH, build.getParent().getRelativeNameFrom(Jenkins.getInstance()))
-                .addField(BUILD_NUMBER, build.getNumber())
-                .time(timestamp, TimeUnit.NANOSECONDS);
+    /**
+     * Starts a point of which a build has many, e.g. one per test case. With the lean schema, these points leave out
+     * the project name and path fields, which the summary points of the build carry.
+     */
+    public PointBuilder buildDetailPoint(String name, String customPrefix, Run<?, ?> build, long timestamp) {
+        return context(customPrefix, build).newPoint(builder, name, timestamp, true);
+    }
 
-        if (customPrefix != null && !customPrefix.isEmpty())
-            builder.tag(CUSTOM_PREFIX, this.replaceDashWithUnderscore ? measurementName(customPrefix) : customPrefix);
+    public PointBuilder buildDetailPoint(String name, String customPrefix, Run<?, ?> build) {
+        return buildDetailPoint(name, customPrefix, build, timestamp);
+    }
 
-        builder.tag(PROJECT_NAME, projectTagName);
+    /**
+     * Whether detail points carry only tags and the values of their own, without string fields repeating their tags.
+     */
+    protected boolean isLeanSchema() {
+        return sharedContext != null && sharedContext.isLeanSchema();
+    }
 
-        return builder;
+    private BuildContext context(String customPrefix, Run<?, ?> build) {
+        BuildContext current = context;
+        if (current == null || !current.matches(build, customPrefix, replaceDashWithUnderscore)) {
+            current = new BuildContext(projectNameRenderer, customPrefix, build, null, replaceDashWithUnderscore, false);
+            context = current;
+        }
+        return current;
+    }
 
+    /**
+     * Returns the environment of the build, resolved once per publication when the generator shares its context.
+     */
+    protected EnvVars getEnvironment(Run<?, ?> build, TaskListener listener) throws IOException, InterruptedException {
+        if (sharedContext != null && sharedContext.getBuild() == build) {
+            return sharedContext.getEnvironment();
+        }
+        return build.getEnvironment(listener);
     }
 
-    public Point.Builder buildPoint(String name, String customPrefix, Run<?, ?> build) {
+    public PointBuilder buildPoint(String name, String customPrefix, Run<?, ?> build) {
         return buildPoint(name, customPrefix, build, timestamp);
     }
 
     protected String measurementName(String measurement) {
         //influx discourages "-" in measurement names.
-        return measurement.replaceAll("-", "_");
+        return measurement.replace('-', '_');
     }
 }
@@ -0,0 +1,124 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import hudson.EnvVars;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
+import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What all points of one publication share about its build, computed once for all generators.
+ * <p>
+ * Rendering the project name, resolving the project path and running the environment contributors of the build
+ * would otherwise be repeated for every point, or every value. The context renders the project name of its build
+ * like the renderer it was created from, so it is passed to generators in place of that renderer.
+ */
+public final class BuildContext implements MeasurementRenderer<Run<?, ?>> {
+
+    private final MeasurementRenderer<Run<?, ?>> projectNameRenderer;
+    private final Run<?, ?> build;
+    private final TaskListener listener;
+    private final String customPrefix;
+    private final boolean replaceDashWithUnderscore;
+    private final boolean leanSchema;
+
+    private final String projectName;
+    private final String projectTagName;
+    private final String prefixTagName;
+    private final String projectPath;
+    private final int buildNumber;
+
+    private EnvVars environment;
+
+    /**
+     * @param listener   listener the environment of the build is resolved with, {@code null} if it is not needed
+     * @param leanSchema whether only the summary points of the build carry the descriptive string fields
+     */
+    public BuildContext(MeasurementRenderer<Run<?, ?>> projectNameRenderer, String customPrefix, Run<?, ?> build,
+                        TaskListener listener, boolean replaceDashWithUnderscore, boolean leanSchema) {
+        this.projectNameRenderer = Objects.requireNonNull(projectNameRenderer);
+        this.build = build;
+        this.listener = listener;
+        this.customPrefix = customPrefix;
+        this.replaceDashWithUnderscore = replaceDashWithUnderscore;
+        this.leanSchema = leanSchema;
+
+        this.projectName = projectNameRenderer.render(build);
+        String jobName = build.getParent().getName();
+        if (replaceDashWithUnderscore) {
+            this.projectTagName = projectName;
+        } else if (customPrefix != null) {
+            this.projectTagName = customPrefix + "_" + jobName;
+        } else {
+            this.projectTagName = jobName;
+        }
+        if (customPrefix != null && !customPrefix.isEmpty()) {
+            this.prefixTagName = replaceDashWithUnderscore ? customPrefix.replace('-', '_') : customPrefix;
+        } else {
+            this.prefixTagName = null;
+        }
+        this.projectPath = build.getParent().getRelativeNameFrom(Jenkins.getInstance());
+        this.buildNumber = build.getNumber();
+    }
+
+    @Override
+    public String render(Run<?, ?> input) {
+        return input == build ? projectName : projectNameRenderer.render(input);
+    }
+
+    public Run<?, ?> getBuild() {
+        return build;
+    }
+
+    public boolean isLeanSchema() {
+        return leanSchema;
+    }
+
+    /**
+     * Whether points of the build with the prefix can be started from this context.
+     */
+    boolean matches(Run<?, ?> build, String customPrefix, boolean replaceDashWithUnderscore) {
+        return this.build == build && Objects.equals(this.customPrefix, customPrefix)
+                && this.replaceDashWithUnderscore == replaceDashWithUnderscore;
+    }
+
+    /**
+     * Starts a point with the tags and fields every point of the build has.
+     *
+     * @param builder builder the point is started on, its previous point is dropped
+     * @param detail  whether the build has many points of the measurement, which leave out the project name and
+     *                path fields with the lean schema
+     */
+    PointBuilder newPoint(PointBuilder builder, String measurement, long timestamp, boolean detail) {
+        builder.reset(measurement)
+                .addField(AbstractPointGenerator.BUILD_NUMBER, buildNumber)
+                .time(timestamp, TimeUnit.NANOSECONDS);
+
+        if (!detail || !leanSchema) {
+            builder.addField(AbstractPointGenerator.PROJECT_NAME, projectName)
+                    .addField(AbstractPointGenerator.PROJECT_PATH, projectPath);
+        }
+
+        if (prefixTagName != null)
+            builder.tag(AbstractPointGenerator.CUSTOM_PREFIX, prefixTagName);
+
+        builder.tag(AbstractPointGenerator.PROJECT_NAME, projectTagName);
+
+        return builder;
+    }
+
+    /**
+     * Returns the environment of the build, resolving it on first use. Failures are not remembered.
+     */
+    public synchronized EnvVars getEnvironment() throws IOException, InterruptedException {
+        if (environment == null) {
+            environment = build.getEnvironment(listener);
+        }
+        return environment;
+    }
+}
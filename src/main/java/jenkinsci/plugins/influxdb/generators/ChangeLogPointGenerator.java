@@ -2,11 +2,10 @@ package jenkinsci.plugins.influxdb.generators;
 
 import java.util.Collection;
 
-import org.influxdb.dto.Point;
-
 import hudson.model.AbstractBuild;
 import hudson.model.Run;
 import hudson.scm.ChangeLogSet;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
 
 public class ChangeLogPointGenerator extends AbstractPointGenerator {
@@ -39,8 +38,8 @@ public class ChangeLogPointGenerator extends AbstractPointGenerator {
 		return false;
 	}
 
-	public Point[] generate() {
-		Point.Builder point = buildPoint(measurementName("changelog_data"), customPrefix, build);
+	public void generate(PointSink sink) {
+		PointBuilder point = buildPoint(measurementName("changelog_data"), customPrefix, build);
 
 		point.addField(BUILD_DISPLAY_NAME, build.getDisplayName())
 				.addField("commit_messages", this.getMessages())
@@ -48,7 +47,7 @@ public class ChangeLogPointGenerator extends AbstractPointGenerator {
 				.addField("affected_paths", this.getAffectedPaths())
 				.addField("commit_count", this.getCommitCount());
 
-		return new Point[] { point.build() };
+		sink.accept(point);
 	}
 
 	private void getChangeLog(Run<?, ?> run) {
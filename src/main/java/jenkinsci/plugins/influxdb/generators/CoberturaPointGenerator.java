@@ -1,7 +1,7 @@
 package jenkinsci.plugins.influxdb.generators;
 
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
-import org.influxdb.dto.Point;
 
 import hudson.model.Run;
 import hudson.plugins.cobertura.CoberturaBuildAction;
@@ -35,22 +35,21 @@ public class CoberturaPointGenerator extends AbstractPointGenerator {
         return coberturaBuildAction != null && coberturaBuildAction.getResult() != null;
     }
 
-    public Point[] generate() {
+    public void generate(PointSink sink) {
         CoverageResult result = coberturaBuildAction.getResult();
         Ratio conditionals = result.getCoverage(CoverageMetric.CONDITIONAL);
         Ratio lines = result.getCoverage(CoverageMetric.LINE);
         Ratio packages = result.getCoverage(CoverageMetric.PACKAGES);
         Ratio classes = result.getCoverage(CoverageMetric.CLASSES);
         Ratio files = result.getCoverage(CoverageMetric.FILES);
-        Point point = buildPoint(measurementName("cobertura_data"), customPrefix, build)
+        PointBuilder point = buildPoint(measurementName("cobertura_data"), customPrefix, build)
             .addField(COBERTURA_NUMBER_OF_PACKAGES, packages.denominator)
             .addField(COBERTURA_NUMBER_OF_SOURCEFILES, files.denominator)
             .addField(COBERTURA_NUMBER_OF_CLASSES, classes.denominator)
             .addField(COBERTURA_BRANCH_COVERAGE_RATE, conditionals.getPercentageFloat())
             .addField(COBERTURA_LINE_COVERAGE_RATE, lines.getPercentageFloat())
             .addField(COBERTURA_PACKAGE_COVERAGE_RATE, packages.getPercentageFloat())
-            .addField(COBERTURA_CLASS_COVERAGE_RATE, classes.getPercentageFloat())
-            .build();
-        return new Point[] {point};
+            .addField(COBERTURA_CLASS_COVERAGE_RATE, classes.getPercentageFloat());
+        sink.accept(point);
     }
 }
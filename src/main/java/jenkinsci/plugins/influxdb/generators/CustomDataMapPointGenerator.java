@@ -1,8 +1,8 @@
 package jenkinsci.plugins.influxdb.generators;
 
 import hudson.model.Run;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
-import org.influxdb.dto.Point;
 
 import java.util.*;
 
@@ -27,11 +27,9 @@ public class CustomDataMapPointGenerator extends AbstractPointGenerator {
         return (customDataMap != null && customDataMap.size() > 0);
     }
 
-    public Point[] generate() {
-        List<Point> customPoints = new ArrayList<>();
-
+    public void generate(PointSink sink) {
         for (Map.Entry<String, Map<String, Object>> entry : customDataMap.entrySet()) {
-            Point.Builder pointBuilder = buildPoint(measurementName(entry.getKey()), customPrefix, build)
+            PointBuilder pointBuilder = buildPoint(measurementName(entry.getKey()), customPrefix, build)
                     .fields(entry.getValue());
 
             if (customDataMapTags != null) {
@@ -43,11 +41,8 @@ public class CustomDataMapPointGenerator extends AbstractPointGenerator {
                 }
             }
 
-            Point point = pointBuilder.build();
-
-            customPoints.add(point);
+            sink.accept(pointBuilder);
         }
-        return customPoints.toArray(new Point[0]);
     }
 
 }
@@ -1,8 +1,8 @@
 package jenkinsci.plugins.influxdb.generators;
 
 import hudson.model.Run;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
-import org.influxdb.dto.Point;
 
 import java.util.Map;
 
@@ -34,12 +34,12 @@ public class CustomDataPointGenerator extends AbstractPointGenerator {
         return (customData != null && customData.size() > 0);
     }
 
-    public Point[] generate() {
+    public void generate(PointSink sink) {
         long startTime = build.getTimeInMillis();
         long currTime = System.currentTimeMillis();
         long dt = currTime - startTime;
 
-        Point.Builder pointBuilder = buildPoint(measurementName(measurementName), customPrefix, build)
+        PointBuilder pointBuilder = buildPoint(measurementName(measurementName), customPrefix, build)
                 .addField(BUILD_TIME, build.getDuration() == 0 ? dt : build.getDuration())
                 .fields(customData);
 
@@ -49,9 +49,7 @@ public class CustomDataPointGenerator extends AbstractPointGenerator {
             }
         }
 
-        Point point = pointBuilder.build();
-
-        return new Point[] {point};
+        sink.accept(pointBuilder);
     }
 
 }
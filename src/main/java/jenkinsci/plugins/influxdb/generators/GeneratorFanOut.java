@@ -0,0 +1,338 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
+import org.acegisecurity.Authentication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the point generators of one publication concurrently, so that one slow generator, e.g. one waiting
+ * for a remote server, does not hold up the others.
+ * <p>
+ * Every generator hands its points over through a small bounded queue of its own. The publishing thread passes
+ * them on to the sink in the order the generators were given, so the publication does not depend on which
+ * generator finished first: the points of the first generator stream through as they are generated, the
+ * generators after it run ahead until their queue is full and then wait for their turn. Memory use stays bounded
+ * by the queues however large the reports are. A publication runs at most {@link #MAX_GENERATORS_PER_PUBLICATION}
+ * generators at a time, the next one starts when the publishing thread is done with the points of an earlier one.
+ * Generators which do not pass on all their points within the timeout, counted from the moment the generator
+ * started, are interrupted and the rest of their points are left out.
+ * <p>
+ * The points of a generator which fails or times out are left out as a whole, unless it got so far that some of
+ * them had to be written already, which is reported in the build log.
+ * <p>
+ * Local data sources, whose generators only read what the build holds in memory, are generated on the publishing
+ * thread when their turn comes, without a deadline. Their points are written even when the generator pool is busy.
+ */
+public final class GeneratorFanOut {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(GeneratorFanOut.class.getName());
+
+    public static final int DEFAULT_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Points a generator may run ahead of the publishing thread, and points of a generator the publishing thread
+     * holds back before it passes them on.
+     */
+    static final int HAND_OFF_CAPACITY = 1024;
+
+    /**
+     * Generators of one publication running at the same time.
+     */
+    static final int MAX_GENERATORS_PER_PUBLICATION = 4;
+
+    /**
+     * Grows with the number of publications, which each use a few threads at most. Generators blocked by their
+     * hand-off queue thereby never keep the generators of other publications from starting.
+     */
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            new NamingThreadFactory(new DaemonThreadFactory(), "InfluxDB point generator"));
+
+    /**
+     * Marks the end of the points of a generator in its hand-off queue.
+     */
+    private static final Object END = new Object();
+
+    private GeneratorFanOut() {
+        //nop
+    }
+
+    /**
+     * Creates the generator of a data source. Generators of optional plugins fail with a
+     * {@link NoClassDefFoundError} when the plugin is not installed.
+     */
+    @FunctionalInterface
+    public interface GeneratorFactory {
+        PointGenerator create();
+    }
+
+    /**
+     * A data source of the publication.
+     *
+     * @param name       name of the data source, used in log messages
+     * @param reportName announced in the build log when the data source has a report, {@code null} for none
+     */
+    public static Source source(String name, String reportName, GeneratorFactory factory) {
+        return new Source(name, reportName, factory, false);
+    }
+
+    /**
+     * A data source whose generator only reads what the build holds in memory. It is generated on the publishing
+     * thread.
+     *
+     * @see #source(String, String, GeneratorFactory)
+     */
+    public static Source localSource(String name, String reportName, GeneratorFactory factory) {
+        return new Source(name, reportName, factory, true);
+    }
+
+    /**
+     * Generates the points of all data sources and passes them to the sink, in the order of the data sources.
+     *
+     * @param timeoutMillis deadline of each generator running on the pool, not positive for no deadline
+     */
+    public static void generateAll(List<Source> sources, PointSink sink, long timeoutMillis, TaskListener listener) {
+        // Generators see the build with the permissions of the publishing thread
+        Authentication authentication = Jenkins.getAuthentication();
+        List<Generation> generations = new ArrayList<>();
+        for (Source source : sources) {
+            if (!source.local) {
+                generations.add(new Generation(source, listener, authentication, timeoutMillis));
+            }
+        }
+        try {
+            int started = Math.min(MAX_GENERATORS_PER_PUBLICATION, generations.size());
+            for (int i = 0; i < started; i++) {
+                generations.get(i).start();
+            }
+            int drained = 0;
+            for (Source source : sources) {
+                if (source.local) {
+                    generateLocally(source, sink, listener);
+                    continue;
+                }
+                generations.get(drained++).drainTo(sink);
+                if (started < generations.size()) {
+                    generations.get(started++).start();
+                }
+            }
+        } finally {
+            // Generators waiting for their turn would wait forever if the sink failed
+            for (Generation generation : generations) {
+                generation.cancel();
+            }
+        }
+    }
+
+    private static void generateLocally(Source source, PointSink sink, TaskListener listener) {
+        List<PointBuilder> points = new ArrayList<>();
+        try {
+            PointGenerator generator = source.factory.create();
+            if (!generator.hasReport()) {
+                logger.log(Level.FINE, "Data source empty: " + source.name);
+                return;
+            }
+            if (source.reportName != null) {
+                listener.getLogger().println("[InfluxDB Plugin] " + source.reportName + " found. Writing to InfluxDB...");
+            }
+            generator.generate(point -> points.add(point.copy()));
+        } catch (NoClassDefFoundError ignore) {
+            logger.log(Level.FINE, "Plugin skipped: " + source.name);
+            return;
+        } catch (Exception e) {
+            listener.getLogger().println("[InfluxDB Plugin] Failed to collect data from " + source.name + ". Ignoring Exception:" + e);
+            return;
+        }
+        points.forEach(sink::accept);
+    }
+
+    public static final class Source {
+        private final String name;
+        private final String reportName;
+        private final GeneratorFactory factory;
+
+        private final boolean local;
+
+        private Source(String name, String reportName, GeneratorFactory factory, boolean local) {
+            this.name = name;
+            this.reportName = reportName;
+            this.factory = factory;
+            this.local = local;
+        }
+    }
+
+    private static final class Generation implements Runnable {
+        private final Source source;
+        private final TaskListener listener;
+        private final Authentication authentication;
+        private final long timeoutMillis;
+        private final BlockingQueue<Object> handOff = new ArrayBlockingQueue<>(HAND_OFF_CAPACITY);
+
+        private volatile Throwable failure;
+        private volatile boolean cancelled;
+        private volatile long startNanos;
+        private volatile boolean started;
+        private Future<?> future;
+
+        Generation(Source source, TaskListener listener, Authentication authentication, long timeoutMillis) {
+            this.source = source;
+            this.listener = listener;
+            this.authentication = authentication;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        void start() {
+            future = executor.submit(this);
+        }
+
+        @Override
+        public void run() {
+            startNanos = System.nanoTime();
+            started = true;
+            try {
+                generate();
+            } catch (HandOffCancelledException ignore) {
+                return;
+            } catch (Exception | Error e) {
+                failure = e;
+            }
+            try {
+                if (!cancelled) {
+                    handOff.put(END);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void generate() {
+            try (ACLContext ignored = ACL.as(authentication)) {
+                PointGenerator generator = source.factory.create();
+                if (!generator.hasReport()) {
+                    logger.log(Level.FINE, "Data source empty: " + source.name);
+                    return;
+                }
+                if (source.reportName != null) {
+                    listener.getLogger().println("[InfluxDB Plugin] " + source.reportName + " found. Writing to InfluxDB...");
+                }
+                generator.generate(this::handOver);
+            } catch (NoClassDefFoundError ignore) {
+                logger.log(Level.FINE, "Plugin skipped: " + source.name);
+            }
+        }
+
+        /**
+         * Waits until the publishing thread took enough points for the point to fit into the queue. The queue takes a
+         * copy, the generator goes on with the next point on the same builder.
+         */
+        private void handOver(PointBuilder point) {
+            if (cancelled) {
+                throw new HandOffCancelledException();
+            }
+            try {
+                handOff.put(point.copy());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HandOffCancelledException();
+            }
+        }
+
+        /**
+         * Passes the points of the generator on to the sink once it completed, or as they arrive once it generated
+         * more points than are held back. The points still to come are left out if the generator failed or the
+         * deadline passed.
+         */
+        void drainTo(PointSink sink) {
+            List<PointBuilder> heldBack = new ArrayList<>();
+            int passedOn = 0;
+            try {
+                while (true) {
+                    Object next = timeoutMillis > 0 ? handOff.poll(remainingNanos(), TimeUnit.NANOSECONDS) : handOff.take();
+                    if (next == null) {
+                        if (started && remainingNanos() <= 0) {
+                            cancel();
+                            listener.getLogger().println("[InfluxDB Plugin] Failed to collect data from " + source.name
+                                    + " within " + timeoutMillis + " ms. Ignoring " + (passedOn > 0 ? "the rest of " : "")
+                                    + "its data" + writtenAlready(passedOn) + ".");
+                            return;
+                        }
+                        continue;
+                    }
+                    if (next == END) {
+                        if (failure != null) {
+                            listener.getLogger().println("[InfluxDB Plugin] Failed to collect data from " + source.name
+                                    + writtenAlready(passedOn) + ". Ignoring Exception:" + failure);
+                        } else {
+                            heldBack.forEach(sink::accept);
+                        }
+                        return;
+                    }
+                    if (passedOn > 0) {
+                        sink.accept((PointBuilder) next);
+                        passedOn++;
+                    } else {
+                        heldBack.add((PointBuilder) next);
+                        if (heldBack.size() >= HAND_OFF_CAPACITY) {
+                            heldBack.forEach(sink::accept);
+                            passedOn = heldBack.size();
+                            heldBack.clear();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+        }
+
+        /**
+         * Time left until the deadline, the whole timeout while the generator did not start yet.
+         */
+        private long remainingNanos() {
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            return Math.max(0, started ? startNanos + timeoutNanos - System.nanoTime() : timeoutNanos);
+        }
+
+        private static String writtenAlready(int passedOn) {
+            return passedOn > 0 ? ", " + passedOn + " of its points were written already" : "";
+        }
+
+        /**
+         * Stops the generator, and releases it if it waits for room in the queue.
+         */
+        void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+            handOff.clear();
+        }
+    }
+
+    /**
+     * Thrown into a generator whose points are not taken anymore.
+     */
+    private static final class HandOffCancelledException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -1,7 +1,7 @@
 package jenkinsci.plugins.influxdb.generators;
 
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
-import org.influxdb.dto.Point;
 
 import hudson.model.Run;
 import hudson.plugins.jacoco.JacocoBuildAction;
@@ -31,15 +31,14 @@ public class JacocoPointGenerator extends AbstractPointGenerator {
         return jacocoBuildAction != null && jacocoBuildAction.getResult() != null;
     }
 
-    public Point[] generate() {
-        Point point = buildPoint(measurementName("jacoco_data"), customPrefix, build)
+    public void generate(PointSink sink) {
+        PointBuilder point = buildPoint(measurementName("jacoco_data"), customPrefix, build)
             .addField(JACOCO_INSTRUCTION_COVERAGE_RATE, jacocoBuildAction.getResult().getInstructionCoverage().getPercentageFloat())
             .addField(JACOCO_CLASS_COVERAGE_RATE, jacocoBuildAction.getResult().getClassCoverage().getPercentageFloat())
             .addField(JACOCO_BRANCH_COVERAGE_RATE, jacocoBuildAction.getResult().getBranchCoverage().getPercentageFloat())
             .addField(JACOCO_LINE_COVERAGE_RATE, jacocoBuildAction.getResult().getLineCoverage().getPercentageFloat())
-            .addField(JACOCO_METHOD_COVERAGE_RATE, jacocoBuildAction.getResult().getMethodCoverage().getPercentageFloat())
-            .build();
-        return new Point[] {point};
+            .addField(JACOCO_METHOD_COVERAGE_RATE, jacocoBuildAction.getResult().getMethodCoverage().getPercentageFloat());
+        sink.accept(point);
     }
 
 }
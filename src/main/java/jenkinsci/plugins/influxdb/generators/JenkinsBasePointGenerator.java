@@ -9,10 +9,10 @@ import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.test.AbstractTestResultAction;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.StrSubstitutor;
-import org.influxdb.dto.Point;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -73,7 +73,7 @@ public class JenkinsBasePointGenerator extends AbstractPointGenerator {
         return true;
     }
 
-    public Point[] generate() {
+    public void generate(PointSink sink) {
         // Build is not finished when running with pipelines. Duration must be calculated manually
         long startTime = build.getTimeInMillis();
         long currTime = System.currentTimeMillis();
@@ -91,7 +91,7 @@ public class JenkinsBasePointGenerator extends AbstractPointGenerator {
             ordinal = buildResult.ordinal;
         }
 
-        Point.Builder point = buildPoint(measurementName(measurementName), customPrefix, build);
+        PointBuilder point = buildPoint(measurementName(measurementName), customPrefix, build);
 
         point.addField(BUILD_TIME, build.getDuration() == 0 ? dt : build.getDuration())
             .addField(BUILD_SCHEDULED_TIME, build.getTimeInMillis())
@@ -129,7 +129,7 @@ public class JenkinsBasePointGenerator extends AbstractPointGenerator {
             point.tag(tagMap);
         }
 
-        return new Point[] {point.build()};
+        sink.accept(point);
     }
 
     private String getBuildAgentName() {
@@ -198,7 +198,7 @@ public class JenkinsBasePointGenerator extends AbstractPointGenerator {
 
     private String resolveEnvParameter(final String stringValue) {
         try {
-            EnvVars envVars = build.getEnvironment(listener);
+            EnvVars envVars = getEnvironment(build, listener);
             return StrSubstitutor.replace(stringValue, envVars);
         } catch (IOException | InterruptedException e) {
             e.printStackTrace();
@@ -0,0 +1,53 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import hudson.model.Run;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
+import jenkinsci.plugins.influxdb.logs.LogMetricsScanner;
+import jenkinsci.plugins.influxdb.models.LogMetricRule;
+import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the metrics the configured {@link LogMetricRule}s derive from the build log, all of them read in one pass.
+ */
+public class LogMetricsPointGenerator extends AbstractPointGenerator {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(LogMetricsPointGenerator.class.getName());
+
+    private final Run<?, ?> build;
+    private final String customPrefix;
+    private final LogMetricsScanner scanner;
+
+    public LogMetricsPointGenerator(MeasurementRenderer<Run<?, ?>> measurementRenderer, String customPrefix,
+                                    Run<?, ?> build, long timestamp, List<LogMetricRule> rules, boolean replaceDashWithUnderscore) {
+        super(measurementRenderer, timestamp, replaceDashWithUnderscore);
+        this.build = build;
+        this.customPrefix = customPrefix;
+        this.scanner = new LogMetricsScanner(rules);
+    }
+
+    public boolean hasReport() {
+        return !scanner.isEmpty();
+    }
+
+    public void generate(PointSink sink) {
+        Map<String, Object> fields;
+        try {
+            fields = scanner.scan(build.getLogReader());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read the build log of " + build, e);
+            return;
+        }
+        PointBuilder point = buildPoint(measurementName("build_log_metrics"), customPrefix, build)
+                .fields(fields);
+        sink.accept(point);
+    }
+}
@@ -5,11 +5,9 @@ import hudson.plugins.PerfPublisher.PerfPublisherBuildAction;
 import hudson.plugins.PerfPublisher.Report.Metric;
 import hudson.plugins.PerfPublisher.Report.ReportContainer;
 import hudson.plugins.PerfPublisher.Report.Test;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
-import org.influxdb.dto.Point;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -34,30 +32,26 @@ public class PerfPublisherPointGenerator extends AbstractPointGenerator {
     }
 
     @Override
-    public Point.Builder buildPoint(String name, String customPrefix, Run<?, ?> build) {
+    public PointBuilder buildPoint(String name, String customPrefix, Run<?, ?> build) {
         // add unique time to guarantee correct point adding to DB
         return super.buildPoint(name, customPrefix, build)
                 .time(timeGenerator.next(), TimeUnit.NANOSECONDS);
     }
 
-    public Point[] generate() {
+    public void generate(PointSink sink) {
         ReportContainer reports = performanceBuildAction.getReports();
 
-        List<Point> pointsList = new ArrayList<>();
-
-        pointsList.add(generateSummaryPoint(reports));
-        pointsList.addAll(generateMetricsPoints(reports));
+        sink.accept(generateSummaryPoint(reports));
+        generateMetricsPoints(reports, sink);
 
         for (Test test : reports.getTests()) {
-            pointsList.add(generateTestPoint(test));
-            pointsList.addAll(generateTestMetricsPoints(test));
+            sink.accept(generateTestPoint(test));
+            generateTestMetricsPoints(test, sink);
         }
-
-        return pointsList.toArray(new Point[0]);
     }
 
-    private Point generateSummaryPoint(ReportContainer reports) {
-        Point.Builder builder = buildPoint(measurementName("perfpublisher_summary"), customPrefix, build)
+    private PointBuilder generateSummaryPoint(ReportContainer reports) {
+        PointBuilder builder = buildPoint(measurementName("perfpublisher_summary"), customPrefix, build)
                 .addField("number_of_tests", reports.getNumberOfTest())
                 .addField("number_of_executed_tests", reports.getNumberOfExecutedTest())
                 .addField("number_of_not_executed_tests", reports.getNumberOfNotExecutedTest())
@@ -93,33 +87,30 @@ public class PerfPublisherPointGenerator extends AbstractPointGenerator {
                     .addField("avg_execution_time", reports.getAverageOfExecutionTime());
         }
 
-        return builder.build();
+        return builder;
     }
 
-    private List<Point> generateMetricsPoints(ReportContainer reports) {
-
-        List<Point> pointsList = new ArrayList<>();
-
+    private void generateMetricsPoints(ReportContainer reports, PointSink sink) {
         for (Map.Entry<String, Double> entry : reports.getAverageValuePerMetrics().entrySet()) {
             String metricName = entry.getKey();
-            Point point = buildPoint(measurementName("perfpublisher_metric"), customPrefix, build)
+            PointBuilder point = buildDetailPoint(measurementName("perfpublisher_metric"), customPrefix, build)
                     .addField("metric_name", metricName)
                     .addField("average", entry.getValue())
                     .addField("worst", reports.getWorstValuePerMetrics().get(metricName))
-                    .addField("best", reports.getBestValuePerMetrics().get(metricName))
-                    .build();
-            pointsList.add(point);
+                    .addField("best", reports.getBestValuePerMetrics().get(metricName));
+            sink.accept(point);
         }
-        return pointsList;
     }
 
-    private Point generateTestPoint(Test test) {
-        Point.Builder builder = buildPoint(measurementName("perfpublisher_test"), customPrefix, build)
-                .addField("test_name", test.getName())
+    private PointBuilder generateTestPoint(Test test) {
+        PointBuilder builder = buildDetailPoint(measurementName("perfpublisher_test"), customPrefix, build)
                 .tag("test_name", test.getName())
                 .addField("successful", test.isSuccessfull())
                 .addField("executed", test.isExecuted());
 
+        if (!isLeanSchema())
+            builder.addField("test_name", test.getName());
+
         if (test.getMessage() != null)
             builder.addField("message", test.getMessage());
 
@@ -132,27 +123,25 @@ public class PerfPublisherPointGenerator extends AbstractPointGenerator {
         if (test.isPerformance())
             builder.addField("performance", test.getPerformance().getMeasure());
 
-        return builder.build();
+        return builder;
     }
 
-    private List<Point> generateTestMetricsPoints(Test test) {
-        List<Point> pointsList = new ArrayList<>();
-
+    private void generateTestMetricsPoints(Test test, PointSink sink) {
         for (Map.Entry<String, Metric> entry : test.getMetrics().entrySet()) {
             String metricName = entry.getKey();
             Metric metric = entry.getValue();
 
-            Point point = buildPoint(measurementName("perfpublisher_test_metric"), customPrefix, build)
-                    .addField("test_name", test.getName())
+            PointBuilder builder = buildDetailPoint(measurementName("perfpublisher_test_metric"), customPrefix, build)
                     .tag("test_name", test.getName())
                     .addField("metric_name", metricName)
                     .addField("value", metric.getMeasure())
                     .addField("unit", metric.getUnit())
-                    .addField("relevant", metric.isRelevant())
-                    .build();
+                    .addField("relevant", metric.isRelevant());
+
+            if (!isLeanSchema())
+                builder.addField("test_name", test.getName());
 
-            pointsList.add(point);
+            sink.accept(builder);
         }
-        return pointsList;
     }
 }
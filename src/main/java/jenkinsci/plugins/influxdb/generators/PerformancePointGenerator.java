@@ -1,7 +1,7 @@
 package jenkinsci.plugins.influxdb.generators;
 
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
-import org.influxdb.dto.Point;
 
 import hudson.model.Run;
 import hudson.plugins.performance.actions.PerformanceBuildAction;
@@ -37,20 +37,16 @@ public class PerformancePointGenerator extends AbstractPointGenerator {
         return performanceBuildAction != null && performanceBuildAction.getPerformanceReportMap() != null;
     }
 
-    public Point[] generate() {
+    public void generate(PointSink sink) {
         Map<String, PerformanceReport> reportMap = performanceBuildAction.getPerformanceReportMap().getPerformanceReportMap();
 
-        List<Point> pointsList = new ArrayList<>();
-
         for (PerformanceReport report : reportMap.values()) {
-            pointsList.add(generateReportPoint(report));
+            sink.accept(generateReportPoint(report));
         }
-
-        return pointsList.toArray(new Point[0]);
     }
 
-    private Point generateReportPoint(PerformanceReport performanceReport) {
-        Point point = buildPoint(measurementName("performance_data"), customPrefix, build)
+    private PointBuilder generateReportPoint(PerformanceReport performanceReport) {
+        PointBuilder point = buildPoint(measurementName("performance_data"), customPrefix, build)
             .addField(PERFORMANCE_ERROR_PERCENT, performanceReport.errorPercent())
             .addField(PERFORMANCE_ERROR_COUNT, performanceReport.countErrors())
             .addField(PERFORMANCE_AVERAGE, performanceReport.getAverage())
@@ -59,8 +55,7 @@ public class PerformancePointGenerator extends AbstractPointGenerator {
             .addField(PERFORMANCE_TOTAL_TRAFFIC, performanceReport.getTotalTrafficInKb())
             .addField(PERFORMANCE_SIZE, performanceReport.samplesCount())
             .addField(PERFORMANCE_90PERCENTILE, performanceReport.get90Line())
-            .addField(PERFORMANCE_MEDIAN, performanceReport.getMedian())
-            .build();
+            .addField(PERFORMANCE_MEDIAN, performanceReport.getMedian());
 
         return point;
     }
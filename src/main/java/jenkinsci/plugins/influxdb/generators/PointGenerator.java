@@ -1,21 +1,37 @@
 package jenkinsci.plugins.influxdb.generators;
 
 import hudson.model.Run;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import org.influxdb.dto.Point;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface PointGenerator {
 
     boolean hasReport();
 
-    Point[] generate();
+    /**
+     * Passes the points to the sink one by one, each written into the builder the generator starts its points on.
+     */
+    void generate(PointSink sink);
+
+    /**
+     * Returns all points at once, built from the points passed to a sink.
+     */
+    default Point[] generate() {
+        List<Point> points = new ArrayList<>();
+        generate(point -> points.add(point.toPoint()));
+        return points.toArray(new Point[0]);
+    }
 
     /**
      * Initializes a basic build point with the basic data already set with a specified timestamp.
      */
-    Point.Builder buildPoint(String name, String customPrefix, Run<?, ?> build, long timeStamp);
+    PointBuilder buildPoint(String name, String customPrefix, Run<?, ?> build, long timeStamp);
 
     /**
      * Initializes a basic build point with the basic data already set.
      */
-    Point.Builder buildPoint(String name, String customPrefix, Run<?, ?> build);
+    PointBuilder buildPoint(String name, String customPrefix, Run<?, ?> build);
 }
@@ -0,0 +1,14 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
+
+/**
+ * Receiver of the points of a {@link PointGenerator}. A sink may encode and ship the points right away,
+ * so generators should not hold on to points they already passed on. Generators reuse the builder for their
+ * next point once the sink returns, a sink keeping the point takes a {@link PointBuilder#copy()}.
+ */
+@FunctionalInterface
+public interface PointSink {
+
+    void accept(PointBuilder point);
+}
@@ -0,0 +1,56 @@
+package jenkinsci.plugins.influxdb.generators;
+
+/**
+ * Which points of a Robot Framework result are written, from the least to the most detailed.
+ */
+public enum RobotDetailLevel {
+
+    /**
+     * Only the overview of the whole result.
+     */
+    SUMMARY("Summary only"),
+
+    /**
+     * The overview, one point per suite and one per tag.
+     */
+    SUITES("Suites and tags"),
+
+    /**
+     * Suites and tags, and one point per failed case.
+     */
+    FAILED_CASES("Failed cases"),
+
+    /**
+     * Suites and tags, and one point per case.
+     */
+    ALL_CASES("All cases");
+
+    private final String displayName;
+
+    RobotDetailLevel(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Whether the points of the given level are written at this level.
+     */
+    public boolean includes(RobotDetailLevel level) {
+        return compareTo(level) >= 0;
+    }
+
+    /**
+     * Resolves a level from its name, falling back to {@link #ALL_CASES} for unknown or empty names.
+     */
+    public static RobotDetailLevel fromName(String name) {
+        for (RobotDetailLevel level : values()) {
+            if (level.name().equals(name)) {
+                return level;
+            }
+        }
+        return ALL_CASES;
+    }
+}
@@ -5,13 +5,14 @@ import hudson.plugins.robot.RobotBuildAction;
 import hudson.plugins.robot.model.RobotCaseResult;
 import hudson.plugins.robot.model.RobotResult;
 import hudson.plugins.robot.model.RobotSuiteResult;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
-import org.influxdb.dto.Point;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Hashtable;
-import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class RobotFrameworkPointGenerator extends AbstractPointGenerator {
 
@@ -33,12 +34,21 @@ public class RobotFrameworkPointGenerator extends AbstractPointGenerator {
     private final Run<?, ?> build;
     private final String customPrefix;
     private final Map<String, RobotTagResult> tagResults;
+    private final RobotDetailLevel detailLevel;
+    private final int passedCaseSampleRate;
 
+    /**
+     * @param detailLevel          which points are written besides the overview
+     * @param passedCaseSampleRate percentage of the passed cases written when all cases are written
+     */
     public RobotFrameworkPointGenerator(MeasurementRenderer<Run<?,?>> projectNameRenderer, String customPrefix,
-                                        Run<?, ?> build, long timestamp, boolean replaceDashWithUnderscore) {
+                                        Run<?, ?> build, long timestamp, boolean replaceDashWithUnderscore,
+                                        RobotDetailLevel detailLevel, int passedCaseSampleRate) {
         super(projectNameRenderer, timestamp, replaceDashWithUnderscore);
         this.build = build;
         this.customPrefix = customPrefix;
+        this.detailLevel = detailLevel;
+        this.passedCaseSampleRate = passedCaseSampleRate;
         tagResults = new Hashtable<>();
     }
 
@@ -47,18 +57,16 @@ public class RobotFrameworkPointGenerator extends AbstractPointGenerator {
         return robotBuildAction != null && robotBuildAction.getResult() != null;
     }
 
-    public Point[] generate() {
+    public void generate(PointSink sink) {
         RobotBuildAction robotBuildAction = build.getAction(RobotBuildAction.class);
 
-        List<Point> pointsList = new ArrayList<>();
-
-        pointsList.add(generateOverviewPoint(robotBuildAction));
-        pointsList.addAll(generateSubPoints(robotBuildAction.getResult()));
-
-        return pointsList.toArray(new Point[0]);
+        sink.accept(generateOverviewPoint(robotBuildAction));
+        if (detailLevel.includes(RobotDetailLevel.SUITES)) {
+            generateSubPoints(robotBuildAction.getResult(), sink);
+        }
     }
 
-    private Point generateOverviewPoint(RobotBuildAction robotBuildAction) {
+    private PointBuilder generateOverviewPoint(RobotBuildAction robotBuildAction) {
         return buildPoint(measurementName("rf_results"), customPrefix, build)
             .addField(RF_FAILED, robotBuildAction.getResult().getOverallFailed())
             .addField(RF_PASSED, robotBuildAction.getResult().getOverallPassed())
@@ -69,69 +77,132 @@ public class RobotFrameworkPointGenerator extends AbstractPointGenerator {
             .addField(RF_CRITICAL_PASS_PERCENTAGE, robotBuildAction.getCriticalPassPercentage())
             .addField(RF_PASS_PERCENTAGE, robotBuildAction.getOverallPassPercentage())
             .addField(RF_DURATION, robotBuildAction.getResult().getDuration())
-            .addField(RF_SUITES, robotBuildAction.getResult().getAllSuites().size())
-            .build();
+            .addField(RF_SUITES, robotBuildAction.getResult().getAllSuites().size());
     }
 
-    private List<Point> generateSubPoints(RobotResult robotResult) {
-        List<Point> subPoints = new ArrayList<>();
+    private void generateSubPoints(RobotResult robotResult, PointSink sink) {
+        // Cases already passed on, to skip duplicates
+        Set<CaseKey> casesPassedOn = new HashSet<>();
         TimeGenerator suiteResultTime = new TimeGenerator(timestamp);
         for (RobotSuiteResult suiteResult : robotResult.getAllSuites()) {
             long caseTimeStamp = suiteResultTime.next();
-            subPoints.add(generateSuitePoint(suiteResult, caseTimeStamp));
+            sink.accept(generateSuitePoint(suiteResult, caseTimeStamp));
             // To preserve the existing functionality of the case being timestamps after the
             // suiteResult, seed the new TimeGenerator with the suiteResult's time
             TimeGenerator caseResultTime = new TimeGenerator(caseTimeStamp);
             for (RobotCaseResult caseResult : suiteResult.getAllCases()) {
-                Point casePoint = generateCasePoint(caseResult, caseResultTime.next());
-                if (casePointExists(subPoints, casePoint)) {
-                    continue;
+                long caseTimestamp = caseResultTime.next();
+                for (String tag : caseResult.getTags()) {
+                    markTagResult(tag, caseResult);
+                }
+                if (isCaseWritten(caseResult) && casesPassedOn.add(new CaseKey(caseResult))) {
+                    sink.accept(generateCasePoint(caseResult, caseTimestamp));
                 }
-                subPoints.add(casePoint);
             }
 
         }
 
         TimeGenerator tagTime = new TimeGenerator(timestamp);
         for (Map.Entry<String, RobotTagResult> entry : tagResults.entrySet()) {
-            subPoints.add(generateTagPoint(entry.getValue(), tagTime.next()));
+            sink.accept(generateTagPoint(entry.getValue(), tagTime.next()));
         }
-        return subPoints;
     }
 
-    private boolean casePointExists(List<Point> subPoints, Point point) {
-        for (Point p : subPoints) {
-            try {
-                // CasePoints are the same if all the fields are equal
-                String pFields = p.toString().substring(p.toString().indexOf("fields="));
-                String pointFields = point.toString().substring(point.toString().indexOf("fields="));
-                if (pFields.equals(pointFields)) {
-                    return true;
-                }
-            } catch (StringIndexOutOfBoundsException e) {
-                // Handle exception
-            }
+    /**
+     * Tags count all cases, but only the cases of the detail level get a point of their own.
+     */
+    private boolean isCaseWritten(RobotCaseResult caseResult) {
+        if (caseResult.getFailed() > 0) {
+            return detailLevel.includes(RobotDetailLevel.FAILED_CASES);
         }
-        return false;
+        return detailLevel.includes(RobotDetailLevel.ALL_CASES)
+                && isSampled(caseResult.getParent().getName() + "." + caseResult.getName(), passedCaseSampleRate);
     }
 
-    private Point generateCasePoint(RobotCaseResult caseResult, long timestamp) {
-        Point point = buildPoint(measurementName("testcase_point"), customPrefix, build, timestamp)
+    /**
+     * Samples a case by its name, so that the same cases are written for every build and their trends stay complete.
+     */
+    static boolean isSampled(String caseName, int sampleRate) {
+        if (sampleRate >= 100) {
+            return true;
+        }
+        if (sampleRate <= 0) {
+            return false;
+        }
+        // Spreads similar names, like numbered cases, over all buckets
+        int hash = caseName.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, 100) < sampleRate;
+    }
+
+    private PointBuilder generateCasePoint(RobotCaseResult caseResult, long timestamp) {
+        PointBuilder builder = buildDetailPoint(measurementName("testcase_point"), customPrefix, build, timestamp)
             .tag(RF_NAME, caseResult.getName())
-            .addField(RF_NAME, caseResult.getName())
-            .addField(RF_SUITE_NAME, caseResult.getParent().getName())
             .addField(RF_CRITICAL_FAILED, caseResult.getCriticalFailed())
             .addField(RF_CRITICAL_PASSED, caseResult.getCriticalPassed())
             .addField(RF_FAILED, caseResult.getFailed())
             .addField(RF_PASSED, caseResult.getPassed())
             .addField(RF_DURATION, caseResult.getDuration())
-            .build();
+            // Stays a field, as a tag it would add the suites to the series of the measurement
+            .addField(RF_SUITE_NAME, caseResult.getParent().getName());
+
+        if (!isLeanSchema())
+            builder.addField(RF_NAME, caseResult.getName());
 
-        for (String tag : caseResult.getTags()) {
-            markTagResult(tag, caseResult);
+        return builder;
+    }
+
+    /**
+     * Fields of a case point which differ between cases. Cases with equal fields are written once.
+     */
+    private static final class CaseKey {
+        private final String name;
+        private final String suiteName;
+        private final long criticalFailed;
+        private final long criticalPassed;
+        private final long failed;
+        private final long passed;
+        private final long duration;
+        private final int hash;
+
+        CaseKey(RobotCaseResult caseResult) {
+            this.name = caseResult.getName();
+            this.suiteName = caseResult.getParent().getName();
+            this.criticalFailed = caseResult.getCriticalFailed();
+            this.criticalPassed = caseResult.getCriticalPassed();
+            this.failed = caseResult.getFailed();
+            this.passed = caseResult.getPassed();
+            this.duration = caseResult.getDuration();
+            this.hash = Objects.hash(name, suiteName, criticalFailed, criticalPassed, failed, passed, duration);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CaseKey)) {
+                return false;
+            }
+            CaseKey other = (CaseKey) o;
+            return hash == other.hash
+                    && criticalFailed == other.criticalFailed
+                    && criticalPassed == other.criticalPassed
+                    && failed == other.failed
+                    && passed == other.passed
+                    && duration == other.duration
+                    && Objects.equals(name, other.name)
+                    && Objects.equals(suiteName, other.suiteName);
         }
 
-        return point;
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 
     private static final class RobotTagResult {
@@ -141,7 +212,7 @@ public class RobotFrameworkPointGenerator extends AbstractPointGenerator {
             this.name = name;
         }
 
-        protected final List<String> testCases = new ArrayList<>();
+        protected final Set<String> testCases = new HashSet<>();
         protected int failed = 0;
         protected int passed = 0;
         protected int criticalFailed = 0;
@@ -154,34 +225,35 @@ public class RobotFrameworkPointGenerator extends AbstractPointGenerator {
             tagResults.put(tag, new RobotTagResult(tag));
 
         RobotTagResult tagResult = tagResults.get(tag);
-        if (!tagResult.testCases.contains(caseResult.getDuplicateSafeName())) {
+        if (tagResult.testCases.add(caseResult.getDuplicateSafeName())) {
             tagResult.failed += caseResult.getFailed();
             tagResult.passed += caseResult.getPassed();
             tagResult.criticalFailed += caseResult.getCriticalFailed();
             tagResult.criticalPassed += caseResult.getCriticalPassed();
             tagResult.duration += caseResult.getDuration();
-            tagResult.testCases.add(caseResult.getDuplicateSafeName());
         }
     }
 
-    private Point generateTagPoint(RobotTagResult tagResult, long timestamp) {
-        return buildPoint(measurementName("tag_point"), customPrefix, build, timestamp)
+    private PointBuilder generateTagPoint(RobotTagResult tagResult, long timestamp) {
+        PointBuilder builder = buildDetailPoint(measurementName("tag_point"), customPrefix, build, timestamp)
             .tag(RF_TAG_NAME, tagResult.name)
-            .addField(RF_TAG_NAME, tagResult.name)
             .addField(RF_CRITICAL_FAILED, tagResult.criticalFailed)
             .addField(RF_CRITICAL_PASSED, tagResult.criticalPassed)
             .addField(RF_CRITICAL_TOTAL, tagResult.criticalPassed + tagResult.criticalFailed)
             .addField(RF_FAILED, tagResult.failed)
             .addField(RF_PASSED, tagResult.passed)
             .addField(RF_TOTAL, tagResult.passed + tagResult.failed)
-            .addField(RF_DURATION, tagResult.duration)
-            .build();
+            .addField(RF_DURATION, tagResult.duration);
+
+        if (!isLeanSchema())
+            builder.addField(RF_TAG_NAME, tagResult.name);
+
+        return builder;
     }
 
-    private Point generateSuitePoint(RobotSuiteResult suiteResult, long timestamp) {
-        return buildPoint(measurementName("suite_result"), customPrefix, build, timestamp)
+    private PointBuilder generateSuitePoint(RobotSuiteResult suiteResult, long timestamp) {
+        PointBuilder builder = buildDetailPoint(measurementName("suite_result"), customPrefix, build, timestamp)
             .tag(RF_SUITE_NAME, suiteResult.getName())
-            .addField(RF_SUITE_NAME, suiteResult.getName())
             .addField(RF_TESTCASES, suiteResult.getAllCases().size())
             .addField(RF_CRITICAL_FAILED, suiteResult.getCriticalFailed())
             .addField(RF_CRITICAL_PASSED, suiteResult.getCriticalPassed())
@@ -189,8 +261,12 @@ public class RobotFrameworkPointGenerator extends AbstractPointGenerator {
             .addField(RF_FAILED, suiteResult.getFailed())
             .addField(RF_PASSED, suiteResult.getPassed())
             .addField(RF_TOTAL, suiteResult.getTotal())
-            .addField(RF_DURATION, suiteResult.getDuration())
-            .build();
+            .addField(RF_DURATION, suiteResult.getDuration());
+
+        if (!isLeanSchema())
+            builder.addField(RF_SUITE_NAME, suiteResult.getName());
+
+        return builder;
     }
 
 }
@@ -0,0 +1,207 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.commons.lang3.StringUtils;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Fetches the issue counts and measures of a project from the SonarQube web API.
+ * <p>
+ * It only sends the requests and reads their JSON, so that it runs on the agent of a build without loading the
+ * generator and its caches there. The authorization is sent along with it: when the requests are sent from the
+ * agent, the agent gets to see the SonarQube token of the build.
+ */
+final class SonarQubeFetcher extends MasterToSlaveFileCallable<SonarQubeFetcher.Result> {
+
+	private static final long serialVersionUID = 1L;
+
+	static final String SONARQUBE_LINES_OF_CODE = "lines_of_code";
+	static final String SONARQUBE_COMPLEXITY = "complexity";
+	static final String SONARQUBE_COVERAGE = "coverage";
+	static final String SONARQUBE_DUPLICATED_LINES_DENSITY = "duplicated_lines_density";
+	static final String SONARQUBE_TECHNICAL_DEBT = "technical_debt";
+
+	private static final OkHttpClient httpClient = new OkHttpClient();
+
+	private final String issuesUrl;
+	private final String metricsUrl;
+	private final String authorization;
+
+	/**
+	 * @param authorization value of the Authorization header, {@code null} to send none
+	 */
+	SonarQubeFetcher(String issuesUrl, String metricsUrl, String authorization) {
+		this.issuesUrl = issuesUrl;
+		this.metricsUrl = metricsUrl;
+		this.authorization = authorization;
+	}
+
+	@Override
+	public Result invoke(File workspace, VirtualChannel channel) throws IOException {
+		return fetch();
+	}
+
+	/**
+	 * Sends both requests at the same time and waits for their results.
+	 */
+	Result fetch() throws IOException {
+		CompletableFuture<String> issues = getResultAsync(issuesUrl, authorization);
+		CompletableFuture<String> measures = getResultAsync(metricsUrl, authorization);
+		try {
+			return new Result(getIssueCounts(await(issues)), getMeasures(await(measures)));
+		} catch (IOException | RuntimeException e) {
+			issues.cancel(true);
+			measures.cancel(true);
+			throw e;
+		}
+	}
+
+	private static CompletableFuture<String> getResultAsync(String url, String authorization) {
+		Call call = httpClient.newCall(getRequest(url, authorization));
+		CompletableFuture<String> result = new CompletableFuture<>();
+		result.whenComplete((body, failure) -> {
+			if (result.isCancelled()) {
+				call.cancel();
+			}
+		});
+		call.enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				result.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				try (Response closed = response) {
+					if (closed.code() != 200) {
+						throw new RuntimeException("Failed : HTTP error code : " + closed.code() + " from URL : " + url);
+					}
+					result.complete(closed.body().string());
+				} catch (IOException | RuntimeException e) {
+					result.completeExceptionally(e);
+				}
+			}
+		});
+		return result;
+	}
+
+	private static String await(CompletableFuture<String> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for SonarQube");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private static Request getRequest(String url, String authorization) {
+		Request.Builder requestBuilder = new Request.Builder()
+				.get()
+				.url(url)
+				.header("Accept", "application/json");
+		if (authorization != null) {
+			requestBuilder.header("Authorization", authorization);
+		}
+		return requestBuilder.build();
+	}
+
+	/**
+	 * Reads the number of unresolved issues per severity from the severities facet of an issues search.
+	 */
+	static Map<String, Integer> getIssueCounts(String output) {
+		Map<String, Integer> issueCounts = new HashMap<>();
+		JSONArray facets = JSONObject.fromObject(output).optJSONArray("facets");
+		if (facets == null) {
+			return issueCounts;
+		}
+		for (int i = 0; i < facets.size(); i++) {
+			JSONObject facet = facets.getJSONObject(i);
+			if (!"severities".equals(facet.optString("property"))) {
+				continue;
+			}
+			JSONArray values = facet.getJSONArray("values");
+			for (int j = 0; j < values.size(); j++) {
+				JSONObject value = values.getJSONObject(j);
+				issueCounts.put(value.getString("val"), value.getInt("count"));
+			}
+		}
+		return issueCounts;
+	}
+
+	/**
+	 * Reads the measures of the component, keyed by field name. Measures SonarQube has no value for are left out.
+	 */
+	static Map<String, Object> getMeasures(String output) {
+		Map<String, Object> measures = new LinkedHashMap<>();
+		JSONArray array = JSONObject.fromObject(output).getJSONObject("component").getJSONArray("measures");
+		for (int i = 0; i < array.size(); i++) {
+			JSONObject metricsObject = array.getJSONObject(i);
+			String value = metricsObject.optString("value", null);
+			if (StringUtils.isEmpty(value)) {
+				continue;
+			}
+			switch (metricsObject.getString("metric")) {
+				case "ncloc":
+					measures.put(SONARQUBE_LINES_OF_CODE, Integer.parseInt(value));
+					break;
+				case "complexity":
+					measures.put(SONARQUBE_COMPLEXITY, Integer.parseInt(value));
+					break;
+				case "coverage":
+					measures.put(SONARQUBE_COVERAGE, Double.parseDouble(value));
+					break;
+				case "duplicated_lines_density":
+					measures.put(SONARQUBE_DUPLICATED_LINES_DENSITY, Double.parseDouble(value));
+					break;
+				case "sqale_index":
+					measures.put(SONARQUBE_TECHNICAL_DEBT, Long.parseLong(value));
+					break;
+				default:
+					break;
+			}
+		}
+		return measures;
+	}
+
+	/**
+	 * What travels back to the controller: the issue counts per severity and the measures.
+	 */
+	static final class Result implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final Map<String, Integer> issueCounts;
+		final Map<String, Object> measures;
+
+		Result(Map<String, Integer> issueCounts, Map<String, Object> measures) {
+			this.issueCounts = issueCounts;
+			this.measures = measures;
+		}
+	}
+}
@@ -1,66 +1,81 @@
 package jenkinsci.plugins.influxdb.generators;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
-import java.util.regex.Matcher;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.lang.InterruptedException;
 
 import okhttp3.Credentials;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 import org.apache.commons.lang3.StringUtils;
-import org.influxdb.dto.Point;
 
+import hudson.FilePath;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
+import jenkinsci.plugins.influxdb.logs.ReverseLogScanner;
 import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
-import net.sf.json.JSONArray;
-import net.sf.json.JSONObject;
 
 public class SonarQubePointGenerator extends AbstractPointGenerator {
 
 	private static final String BUILD_DISPLAY_NAME = "display_name";
-	private static final String SONARQUBE_LINES_OF_CODE = "lines_of_code";
-	private static final String SONARQUBE_COMPLEXITY = "complexity";
 	private static final String SONARQUBE_CRITICAL_ISSUES = "critical_issues";
 	private static final String SONARQUBE_MAJOR_ISSUES = "major_issues";
 	private static final String SONARQUBE_MINOR_ISSUES = "minor_issues";
 	private static final String SONARQUBE_INFO_ISSUES = "info_issues";
 	private static final String SONARQUBE_BLOCKER_ISSUES = "blocker_issues";
 
-	private static final String URL_PATTERN_IN_LOGS = ".*" + Pattern.quote("ANALYSIS SUCCESSFUL, you can browse ")
-			+ "(.*)";
+	private static final String URL_IN_LOGS = "ANALYSIS SUCCESSFUL, you can browse ";
 
-	private static final String SONAR_ISSUES_BASE_URL = "/api/issues/search?ps=500&projectKeys=";
+	private static final Pattern URL_PATTERN_IN_LOGS = Pattern.compile(Pattern.quote(URL_IN_LOGS) + "(.*)");
 
-	private static final String SONAR_METRICS_BASE_URL = "/api/measures/component?metricKeys=ncloc,complexity,violations&componentKey=";
+	// Only the severities facet is used, the issues themselves are not
+	private static final String SONAR_ISSUES_BASE_URL = "/api/issues/search?ps=1&facets=severities&resolved=false&projectKeys=";
 
-	private static final OkHttpClient httpClient = new OkHttpClient();
+	private static final String SONAR_METRICS_BASE_URL = "/api/measures/component?metricKeys=ncloc,complexity,coverage,duplicated_lines_density,sqale_index&componentKey=";
 
+	private static final int CACHE_MAX_ENTRIES = 1000;
+	private static final long CACHE_TTL_MINUTES = 10;
+
+	// Shared by all publications of a build, e.g. by the global listener and a publisher step, or one per target
+	private static final TimedCache<String> analysisUrlCache = new TimedCache<>(CACHE_MAX_ENTRIES, CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+	private static final TimedCache<SonarQubeFetcher.Result> resultCache = new TimedCache<>(CACHE_MAX_ENTRIES, CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+
+	private String sonarServer;
+	private String sonarProjectName;
 	private String sonarIssuesUrl;
 	private String sonarMetricsUrl;
 
 	private final Run<?, ?> build;
 	private final String customPrefix;
 	private final TaskListener listener;
-
+	private final long logScanMaxBytes;
+	private final FilePath workspace;
+
+	/**
+	 * @param logScanMaxBytes maximum number of bytes of the build log scanned for the analysis URL, not positive for the default
+	 * @param workspace       workspace of the build, whose agent sends the requests to SonarQube with the SonarQube token of
+	 *                        the build, {@code null} to send them from the controller
+	 */
 	public SonarQubePointGenerator(MeasurementRenderer<Run<?, ?>> measurementRenderer, String customPrefix,
-			Run<?, ?> build, long timestamp, TaskListener listener, boolean replaceDashWithUnderscore) {
+			Run<?, ?> build, long timestamp, TaskListener listener, boolean replaceDashWithUnderscore, long logScanMaxBytes,
+			FilePath workspace) {
 		super(measurementRenderer, timestamp, replaceDashWithUnderscore);
 		this.build = build;
 		this.customPrefix = customPrefix;
 		this.listener = listener;
+		this.logScanMaxBytes = logScanMaxBytes;
+		this.workspace = workspace;
 	}
 
 	public boolean hasReport() {
 		String sonarBuildLink = null;
 		try {
-			sonarBuildLink = getSonarProjectURLFromBuildLogs(build);
+			sonarBuildLink = analysisUrlCache.get(build.getExternalizableId(), () -> getSonarProjectURLFromBuildLogs(build));
 			if (!StringUtils.isEmpty(sonarBuildLink)) {
 				setSonarDetails(sonarBuildLink);
 				return true;
@@ -74,15 +89,14 @@ public class SonarQubePointGenerator extends AbstractPointGenerator {
 
 	private void setSonarDetails(String sonarBuildLink) {
 		try {
-			String sonarProjectName = getSonarProjectName(sonarBuildLink);
+			sonarProjectName = getSonarProjectName(sonarBuildLink);
 			// Use SONAR_HOST_URL environment variable if possible
 			String url = "";
 			try {
-				url = build.getEnvironment(listener).get("SONAR_HOST_URL");
+				url = getEnvironment(build, listener).get("SONAR_HOST_URL");
 			} catch (InterruptedException | IOException e) {
 				// handle
 			}
-			String sonarServer;
 			if (url != null && !url.isEmpty()) {
 				sonarServer = url;
 			} else {
@@ -94,69 +108,84 @@ public class SonarQubePointGenerator extends AbstractPointGenerator {
 							sonarBuildLink.indexOf("/dashboard/index/" + sonarProjectName));
 				}
 			}
-			sonarIssuesUrl = sonarServer + SONAR_ISSUES_BASE_URL + sonarProjectName + "&resolved=false&severities=";
+			sonarIssuesUrl = sonarServer + SONAR_ISSUES_BASE_URL + sonarProjectName;
 			sonarMetricsUrl = sonarServer + SONAR_METRICS_BASE_URL + sonarProjectName;
 		} catch (URISyntaxException e) {
 			//
 		}
 	}
 
-	public Point[] generate() {
-		Point point = null;
+	public void generate(PointSink sink) {
+		SonarQubeFetcher.Result result;
 		try {
-			point = buildPoint(measurementName("sonarqube_data"), customPrefix, build)
-					.addField(BUILD_DISPLAY_NAME, build.getDisplayName())
-					.addField(SONARQUBE_CRITICAL_ISSUES, getSonarIssues(sonarIssuesUrl, "CRITICAL"))
-					.addField(SONARQUBE_BLOCKER_ISSUES, getSonarIssues(sonarIssuesUrl, "BLOCKER"))
-					.addField(SONARQUBE_MAJOR_ISSUES, getSonarIssues(sonarIssuesUrl, "MAJOR"))
-					.addField(SONARQUBE_MINOR_ISSUES, getSonarIssues(sonarIssuesUrl, "MINOR"))
-					.addField(SONARQUBE_INFO_ISSUES, getSonarIssues(sonarIssuesUrl, "INFO"))
-					.addField(SONARQUBE_LINES_OF_CODE, getLinesOfCode(sonarMetricsUrl))
-					.build();
+			// The analysis of a build does not change, its results are only fetched once
+			result = resultCache.get(sonarServer + '\n' + sonarProjectName + '\n' + build.getExternalizableId(), this::fetchResult);
 		} catch (IOException e) {
-			// handle
+			return;
 		}
-		return new Point[] { point };
+
+		PointBuilder point = buildPoint(measurementName("sonarqube_data"), customPrefix, build)
+				.addField(BUILD_DISPLAY_NAME, build.getDisplayName())
+				.addField(SONARQUBE_CRITICAL_ISSUES, result.issueCounts.getOrDefault("CRITICAL", 0))
+				.addField(SONARQUBE_BLOCKER_ISSUES, result.issueCounts.getOrDefault("BLOCKER", 0))
+				.addField(SONARQUBE_MAJOR_ISSUES, result.issueCounts.getOrDefault("MAJOR", 0))
+				.addField(SONARQUBE_MINOR_ISSUES, result.issueCounts.getOrDefault("MINOR", 0))
+				.addField(SONARQUBE_INFO_ISSUES, result.issueCounts.getOrDefault("INFO", 0))
+				// Replaced by the measure if SonarQube has one
+				.addField(SonarQubeFetcher.SONARQUBE_LINES_OF_CODE, 0)
+				.fields(result.measures);
+		sink.accept(point);
 	}
 
-	private String getResult(String url) throws IOException {
-		Request.Builder requestBuilder = new Request.Builder()
-				.get()
-				.url(url)
-				.header("Accept", "application/json");
+	private SonarQubeFetcher.Result fetchResult() throws IOException {
+		// The token is only resolved, and only sent to the agent, when the results are not cached yet
+		SonarQubeFetcher fetcher = new SonarQubeFetcher(sonarIssuesUrl, sonarMetricsUrl, getAuthorization());
+		if (workspace == null) {
+			return fetcher.fetch();
+		}
+		try {
+			// Only the compact result travels back to the controller
+			return workspace.act(fetcher);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for SonarQube");
+		}
+	}
+
+	/**
+	 * Statistics of the cache of the analysis URLs found in build logs.
+	 */
+	public static TimedCache<String> getAnalysisUrlCache() {
+		return analysisUrlCache;
+	}
+
+	/**
+	 * Statistics of the cache of the results fetched from SonarQube.
+	 */
+	public static TimedCache<?> getResultCache() {
+		return resultCache;
+	}
 
+	private String getAuthorization() {
 		try {
-			String token = build.getEnvironment(listener).get("SONAR_AUTH_TOKEN");
+			String token = getEnvironment(build, listener).get("SONAR_AUTH_TOKEN");
 			if (token != null) {
-				String credential = Credentials.basic(token, "", StandardCharsets.UTF_8);
-				requestBuilder.header("Authorization", credential);
+				return Credentials.basic(token, "", StandardCharsets.UTF_8);
 			}
 		} catch (InterruptedException | IOException e) {
 			// handle
 		}
-
-		try (Response response = httpClient.newCall(requestBuilder.build()).execute()) {
-			if (response.code() != 200) {
-				throw new RuntimeException("Failed : HTTP error code : " + response.code() + " from URL : " + url);
-			}
-
-			return response.body().string();
-		}
+		return null;
 	}
 
 	private String getSonarProjectURLFromBuildLogs(Run<?, ?> build) throws IOException {
-		String url = null;
-		try (BufferedReader br = new BufferedReader(build.getLogReader())) {
-			String line;
-			Pattern p = Pattern.compile(URL_PATTERN_IN_LOGS);
-			while ((line = br.readLine()) != null) {
-				Matcher match = p.matcher(line);
-				if (match.matches()) {
-					url = match.group(1);
-				}
-			}
+		// The analysis URL is printed near the end of the build, the log is scanned backward
+		ReverseLogScanner scanner = new ReverseLogScanner(URL_IN_LOGS, URL_PATTERN_IN_LOGS, logScanMaxBytes);
+		File logFile = build.getLogFile();
+		if (logFile != null && logFile.isFile() && !logFile.getName().endsWith(".gz")) {
+			return scanner.findLast(logFile);
 		}
-		return url;
+		return scanner.findLast(build.getLogReader());
 	}
 
 	String getSonarProjectName(String url) throws URISyntaxException {
@@ -170,24 +199,4 @@ public class SonarQubePointGenerator extends AbstractPointGenerator {
 		}
 		return projectUrl.length > 1 ? projectUrl[projectUrl.length - 1] : "";
 	}
-
-	private int getLinesOfCode(String url) throws IOException {
-		String output = getResult(url);
-		JSONObject metricsObjects = JSONObject.fromObject(output);
-		int linesOfCodeCount = 0;
-		JSONArray array = metricsObjects.getJSONObject("component").getJSONArray("measures");
-		for (int i = 0; i < array.size(); i++) {
-			JSONObject metricsObject = array.getJSONObject(i);
-			if (metricsObject.get("metric").equals("ncloc")) {
-				linesOfCodeCount = metricsObject.getInt("value");
-			}
-		}
-
-		return linesOfCodeCount;
-	}
-
-	private int getSonarIssues(String url, String severity) throws IOException {
-		String output = getResult(url + severity);
-		return JSONObject.fromObject(output).getInt("total");
-	}
 }
@@ -0,0 +1,119 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache whose entries expire a fixed time after they were loaded.
+ * <p>
+ * Publications of the same build running at the same time share the load of a value: the first one loads it,
+ * the others wait for its result. Failed loads are not cached, and neither are {@code null} values: the value may
+ * still turn up later, like the analysis URL in the log of a running build. When the cache is full, the least
+ * recently used entry is dropped.
+ */
+public final class TimedCache<V> {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<String, Entry<V>> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public TimedCache(int maxEntries, long ttl, TimeUnit unit) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > TimedCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Load of a value which is not cached yet.
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    /**
+     * Returns the cached value of the key, loading it on the calling thread if it is not cached or expired.
+     *
+     * @throws IOException if the value could not be loaded
+     */
+    public V get(String key, Loader<V> loader) throws IOException {
+        Entry<V> entry;
+        boolean load = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null || System.nanoTime() - entry.loadedNanos >= ttlNanos) {
+                entry = new Entry<>();
+                entries.put(key, entry);
+                load = true;
+            }
+        }
+
+        if (load) {
+            missCount.incrementAndGet();
+            try {
+                V value = loader.load();
+                if (value == null) {
+                    invalidate(key, entry);
+                }
+                entry.value.complete(value);
+                return value;
+            } catch (IOException | RuntimeException e) {
+                invalidate(key, entry);
+                entry.value.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        hitCount.incrementAndGet();
+        try {
+            return entry.value.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private void invalidate(String key, Entry<V> entry) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+    }
+
+    private static final class Entry<V> {
+        private final CompletableFuture<V> value = new CompletableFuture<>();
+        private final long loadedNanos = System.nanoTime();
+    }
+}
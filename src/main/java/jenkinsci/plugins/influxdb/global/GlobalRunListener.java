@@ -15,7 +15,6 @@ import org.apache.commons.lang3.StringUtils;
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * Listens to call builds being completed, and publishes their metrics
@@ -28,39 +27,34 @@ public class GlobalRunListener extends RunListener<Run<?, ?>> {
     public void onCompleted(Run<?, ?> build, @Nonnull TaskListener listener) {
         // Gets the full path of the build's project
         String path = build.getParent().getRelativeNameFrom(Jenkins.getInstance());
-        // Gets the list of targets from the configuration
-        Target[] targets = InfluxDbPublisher.DESCRIPTOR.getTargets();
-        if (targets != null) {
-            // Selects the targets eligible as global listeners and which match the build path
-            List<Target> selectedTargets = new ArrayList<>();
-            for (Target target : targets) {
-                // Checks if the target matches the path to the project
-                // Skip build if it already publishes information on this target
-                if (isTargetMatchingPath(target, path) && !isPublicationInBuild(target, build)) {
-                    selectedTargets.add(target);
-                }
-            }
-            // If some targets are selected
-            if (!selectedTargets.isEmpty()) {
-                // Creates the publication service
-                InfluxDbPublicationService publicationService = new InfluxDbPublicationService(
-                        selectedTargets,
-                        null,
-                        null,
-                        null,
-                        null,
-                        null,
-                        null,
-                        System.currentTimeMillis() * 1000000,
-                        null,
-                        null,
-                        "jenkins_data",
-                        true
-                );
-                // Publication
-                publicationService.perform(build, listener);
+        // Selects the targets eligible as global listeners and which match the build path
+        List<Target> selectedTargets = new ArrayList<>();
+        for (Target target : InfluxDbPublisher.DESCRIPTOR.getTargetRouter().route(path)) {
+            // Skip build if it already publishes information on this target
+            if (!isPublicationInBuild(target, build)) {
+                selectedTargets.add(target);
             }
         }
+        // If some targets are selected
+        if (!selectedTargets.isEmpty()) {
+            // Creates the publication service
+            InfluxDbPublicationService publicationService = new InfluxDbPublicationService(
+                    selectedTargets,
+                    null,
+                    null,
+                    null,
+                    null,
+                    null,
+                    null,
+                    System.currentTimeMillis() * 1000000,
+                    null,
+                    null,
+                    "jenkins_data",
+                    true
+            );
+            // Publication
+            publicationService.perform(build, listener);
+        }
     }
 
     private boolean isPublicationInBuild(Target target, Run<?, ?> build) {
@@ -77,13 +71,4 @@ public class GlobalRunListener extends RunListener<Run<?, ?>> {
             return false;
         }
     }
-
-    private boolean isTargetMatchingPath(@Nonnull Target target, @Nonnull String path) {
-        if (target.isGlobalListener()) {
-            String pattern = target.getGlobalListenerFilter();
-            return StringUtils.isBlank(pattern) || Pattern.matches(pattern, path);
-        } else {
-            return false;
-        }
-    }
 }
@@ -0,0 +1,199 @@
+package jenkinsci.plugins.influxdb.global;
+
+import jenkinsci.plugins.influxdb.models.Target;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Routing table of the configured targets, built once whenever the targets change.
+ * <p>
+ * Targets are found by description with a map lookup. The global listener targets matching a build path are found
+ * without compiling any pattern: filters which are a plain folder prefix followed by {@code .*}, or a plain path,
+ * are looked up in a trie while walking the path once. Only the remaining filters are matched, against patterns
+ * compiled when the table was built.
+ */
+public final class TargetRouter {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(TargetRouter.class.getName());
+
+    private static final TargetRouter EMPTY = new TargetRouter(new Target[0]);
+
+    private final Target[] targets;
+    private final Map<String, Target> byDescription = new HashMap<>();
+
+    private final BitSet matchingAll = new BitSet();
+    private final Node prefixes = new Node();
+    private final Map<String, BitSet> paths = new HashMap<>();
+    private final List<PatternRoute> patternRoutes = new ArrayList<>();
+    /**
+     * Patterns of the prefix and path routes, for paths {@code .} does not match all characters of.
+     */
+    private final List<PatternRoute> literalRoutes = new ArrayList<>();
+
+    public TargetRouter(Target[] targets) {
+        this.targets = targets.clone();
+        for (int index = 0; index < targets.length; index++) {
+            Target target = targets[index];
+            // The first target with a description wins, like a search through the configured targets
+            byDescription.putIfAbsent(target.getDescription(), target);
+            if (target.isGlobalListener()) {
+                addGlobalListener(index, target.getGlobalListenerFilter());
+            }
+        }
+    }
+
+    public static TargetRouter empty() {
+        return EMPTY;
+    }
+
+    private void addGlobalListener(int index, String filter) {
+        if (StringUtils.isBlank(filter)) {
+            matchingAll.set(index);
+            return;
+        }
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(filter);
+        } catch (PatternSyntaxException e) {
+            logger.log(Level.WARNING, "Ignoring the global listener of target " + targets[index].getDescription()
+                    + ", its filter is not a valid pattern: " + e.getDescription());
+            return;
+        }
+        boolean prefix = filter.endsWith(".*") && !filter.endsWith("\\.*");
+        String literal = literalOf(prefix ? filter.substring(0, filter.length() - 2) : filter);
+        if (literal == null) {
+            patternRoutes.add(new PatternRoute(index, pattern));
+        } else if (prefix) {
+            Node node = prefixes;
+            for (int i = 0; i < literal.length(); i++) {
+                node = node.children.computeIfAbsent(literal.charAt(i), c -> new Node());
+            }
+            node.targets.set(index);
+            literalRoutes.add(new PatternRoute(index, pattern));
+        } else {
+            paths.computeIfAbsent(literal, path -> new BitSet()).set(index);
+            literalRoutes.add(new PatternRoute(index, pattern));
+        }
+    }
+
+    /**
+     * Returns the text a pattern matches, {@code null} if it matches anything else than a single text.
+     * Escaped punctuation, like {@code \.} or {@code \-}, is part of the text.
+     */
+    static String literalOf(String pattern) {
+        StringBuilder literal = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == pattern.length()) {
+                    return null;
+                }
+                char escaped = pattern.charAt(++i);
+                if (Character.isLetterOrDigit(escaped)) {
+                    // Character classes, back references and quoting
+                    return null;
+                }
+                literal.append(escaped);
+            } else if ("^$.|?*+()[]{}".indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    /**
+     * Returns the target with the description, {@code null} if there is none.
+     */
+    public Target getTarget(String description) {
+        return byDescription.get(description);
+    }
+
+    /**
+     * Returns the first configured target, {@code null} if there is none.
+     */
+    public Target getDefaultTarget() {
+        return targets.length > 0 ? targets[0] : null;
+    }
+
+    /**
+     * Returns the global listener targets whose filter matches the full path of a project, in configured order.
+     */
+    public List<Target> route(String path) {
+        if (targets.length == 0) {
+            return Collections.emptyList();
+        }
+        BitSet matched = (BitSet) matchingAll.clone();
+        if (hasLineTerminator(path)) {
+            // The trie assumes .* matches the whole rest of the path
+            match(literalRoutes, path, matched);
+        } else {
+            Node node = prefixes;
+            matched.or(node.targets);
+            for (int i = 0; i < path.length() && node != null; i++) {
+                node = node.children.get(path.charAt(i));
+                if (node != null) {
+                    matched.or(node.targets);
+                }
+            }
+            BitSet exact = paths.get(path);
+            if (exact != null) {
+                matched.or(exact);
+            }
+        }
+        match(patternRoutes, path, matched);
+
+        List<Target> routed = new ArrayList<>(matched.cardinality());
+        for (int index = matched.nextSetBit(0); index >= 0; index = matched.nextSetBit(index + 1)) {
+            routed.add(targets[index]);
+        }
+        return routed;
+    }
+
+    private static void match(List<PatternRoute> routes, String path, BitSet matched) {
+        for (PatternRoute route : routes) {
+            if (!matched.get(route.index) && route.pattern.matcher(path).matches()) {
+                matched.set(route.index);
+            }
+        }
+    }
+
+    private static boolean hasLineTerminator(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final BitSet targets = new BitSet();
+    }
+
+    private static final class PatternRoute {
+        private final int index;
+        private final Pattern pattern;
+
+        private PatternRoute(int index, Pattern pattern) {
+            this.index = index;
+            this.pattern = pattern;
+        }
+    }
+}
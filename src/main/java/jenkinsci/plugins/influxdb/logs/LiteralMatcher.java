@@ -0,0 +1,76 @@
+package jenkinsci.plugins.influxdb.logs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton finding which of many literals occur in a line, in a single pass over the line.
+ */
+final class LiteralMatcher {
+
+    private final Node root = new Node();
+
+    /**
+     * @param literals the literals to look for, the index of a literal identifies it in the result of {@link #find}
+     */
+    LiteralMatcher(List<String> literals) {
+        for (int index = 0; index < literals.size(); index++) {
+            Node node = root;
+            for (char c : literals.get(index).toCharArray()) {
+                node = node.children.computeIfAbsent(c, key -> new Node());
+            }
+            node.outputs.add(index);
+        }
+
+        // Failure links, breadth first so that the links of shorter prefixes are known
+        Queue<Node> queue = new ArrayDeque<>();
+        for (Node child : root.children.values()) {
+            child.failure = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.remove();
+            for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                Node child = entry.getValue();
+                Node failure = node.failure;
+                while (failure != root && !failure.children.containsKey(entry.getKey())) {
+                    failure = failure.failure;
+                }
+                Node next = failure.children.get(entry.getKey());
+                child.failure = next != null && next != child ? next : root;
+                child.outputs.addAll(child.failure.outputs);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Sets the indexes of the literals occurring in the line.
+     */
+    void find(CharSequence line, BitSet found) {
+        Node node = root;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            Node next = node.children.get(c);
+            while (next == null && node != root) {
+                node = node.failure;
+                next = node.children.get(c);
+            }
+            node = next != null ? next : root;
+            for (int output : node.outputs) {
+                found.set(output);
+            }
+        }
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final List<Integer> outputs = new ArrayList<>(1);
+        private Node failure;
+    }
+}
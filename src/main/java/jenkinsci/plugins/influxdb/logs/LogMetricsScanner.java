@@ -0,0 +1,334 @@
+package jenkinsci.plugins.influxdb.logs;
+
+import hudson.console.ConsoleNote;
+import jenkinsci.plugins.influxdb.models.LogMetricRule;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Evaluates many {@link LogMetricRule}s in a single pass over a build log.
+ * <p>
+ * Most lines of a log match none of the rules. Each rule is reduced to a literal which every matching line
+ * contains, and one automaton over the literals of all rules tells for each line which rules may match. Only
+ * their expressions are evaluated, so the cost of a line barely grows with the number of rules.
+ */
+public final class LogMetricsScanner {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(LogMetricsScanner.class.getName());
+
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+    /**
+     * Group expressions which only match numbers, like {@code \d+}, {@code -?[0-9.]+} or {@code \d{1,3}\.\d*}.
+     */
+    private static final Pattern NUMERIC_EXPRESSION = Pattern.compile("(?:\\\\d|\\\\\\.|[0-9+-]|\\[(?:\\\\d|\\\\\\.|[0-9.+-])+]|[*+?]|\\{\\d+(?:,\\d*)?})+");
+    private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[a-zA-Z-]+[):]");
+
+    private final List<CompiledRule> rules = new ArrayList<>();
+    private final List<CompiledRule> filteredRules = new ArrayList<>();
+    private final List<CompiledRule> unfilteredRules = new ArrayList<>();
+    private final LiteralMatcher literalMatcher;
+
+    /**
+     * Rules without a name or with an invalid expression are skipped.
+     */
+    public LogMetricsScanner(List<LogMetricRule> rules) {
+        List<String> literals = new ArrayList<>();
+        for (LogMetricRule rule : rules) {
+            if (StringUtils.isBlank(rule.getName()) || StringUtils.isEmpty(rule.getPattern())) {
+                continue;
+            }
+            CompiledRule compiled;
+            try {
+                compiled = new CompiledRule(rule.getName(), rule.getPattern());
+            } catch (PatternSyntaxException e) {
+                logger.log(Level.WARNING, "Skipping build log metric " + rule.getName() + " due to invalid pattern: " + e.getDescription());
+                continue;
+            }
+            this.rules.add(compiled);
+            String literal = requiredLiteral(rule.getPattern());
+            if (literal != null) {
+                literals.add(literal);
+                filteredRules.add(compiled);
+            } else {
+                unfilteredRules.add(compiled);
+            }
+        }
+        literalMatcher = new LiteralMatcher(literals);
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Reads the log once and evaluates all rules.
+     *
+     * @return the fields of all rules, in the order of the rules
+     */
+    public Map<String, Object> scan(Reader log) throws IOException {
+        BitSet candidates = new BitSet(filteredRules.size());
+        try (BufferedReader reader = new BufferedReader(log)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.indexOf('\u001B') >= 0) {
+                    line = ConsoleNote.removeNotes(line);
+                }
+                candidates.clear();
+                literalMatcher.find(line, candidates);
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    filteredRules.get(i).match(line);
+                }
+                for (CompiledRule rule : unfilteredRules) {
+                    rule.match(line);
+                }
+            }
+        }
+
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (CompiledRule rule : rules) {
+            rule.addFields(fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Finds the longest literal which every match of the expression contains.
+     *
+     * @return the literal, {@code null} if the expression does not require one, or if it cannot be told safely
+     */
+    static String requiredLiteral(String regex) {
+        if (regex.indexOf('|') >= 0 || INLINE_FLAGS.matcher(regex).find()) {
+            return null;
+        }
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= regex.length()) {
+                        return null;
+                    }
+                    char escaped = regex.charAt(++i);
+                    if (escaped == 'Q') {
+                        int end = regex.indexOf("\\E", i + 1);
+                        String quoted = regex.substring(i + 1, end < 0 ? regex.length() : end);
+                        if (depth == 0) {
+                            run.append(quoted);
+                        }
+                        i = end < 0 ? regex.length() : end + 1;
+                    } else if (Character.isLetterOrDigit(escaped)) {
+                        // Character classes, boundaries, back references and escaped characters, whose
+                        // arguments are not literal text
+                        i = endOfEscape(regex, i);
+                        longest = longer(longest, run);
+                    } else if (depth == 0) {
+                        run.append(escaped);
+                    }
+                    break;
+                case '[':
+                    i = endOfCharacterClass(regex, i);
+                    longest = longer(longest, run);
+                    break;
+                case '(':
+                    depth++;
+                    longest = longer(longest, run);
+                    break;
+                case ')':
+                    depth--;
+                    longest = longer(longest, run);
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // The preceding character may be absent
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+                    longest = longer(longest, run);
+                    if (c == '{') {
+                        int end = regex.indexOf('}', i);
+                        i = end < 0 ? regex.length() : end;
+                    }
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    longest = longer(longest, run);
+                    break;
+                default:
+                    if (depth == 0) {
+                        run.append(c);
+                    } else {
+                        longest = longer(longest, run);
+                    }
+                    break;
+            }
+        }
+        longest = longer(longest, run);
+        return longest.isEmpty() ? null : longest;
+    }
+
+    /**
+     * Ends the current run of literal characters, keeping the longest run.
+     */
+    private static String longer(String longest, StringBuilder run) {
+        String candidate = run.toString();
+        run.setLength(0);
+        return candidate.length() > longest.length() ? candidate : longest;
+    }
+
+    /**
+     * Finds the last character of an escape sequence, including the arguments of escapes like {@code \x41},
+     * {@code \cA} or {@code \k<name>}.
+     *
+     * @param start the index of the character following the backslash
+     */
+    private static int endOfEscape(String regex, int start) {
+        int last = regex.length() - 1;
+        switch (regex.charAt(start)) {
+            case 'x':
+                if (start < last && regex.charAt(start + 1) == '{') {
+                    return endOf(regex, '}', start);
+                }
+                return Math.min(start + 2, last);
+            case 'u':
+                return Math.min(start + 4, last);
+            case 'c':
+                return Math.min(start + 1, last);
+            case 'k':
+                return endOf(regex, '>', start);
+            case 'p':
+            case 'P':
+            case 'N':
+                if (start < last && regex.charAt(start + 1) == '{') {
+                    return endOf(regex, '}', start);
+                }
+                return Math.min(start + 1, last);
+            case '0':
+                int octal = start;
+                while (octal < last && octal - start < 3 && regex.charAt(octal + 1) >= '0' && regex.charAt(octal + 1) <= '7') {
+                    octal++;
+                }
+                return octal;
+            default:
+                int end = start;
+                if (Character.isDigit(regex.charAt(start))) {
+                    while (end < last && Character.isDigit(regex.charAt(end + 1))) {
+                        end++;
+                    }
+                }
+                return end;
+        }
+    }
+
+    private static int endOf(String regex, char terminator, int start) {
+        int end = regex.indexOf(terminator, start);
+        return end < 0 ? regex.length() - 1 : end;
+    }
+
+    /**
+     * Finds the parenthesis closing the group whose expression starts at the given index.
+     */
+    private static int endOfGroup(String regex, int start) {
+        int depth = 1;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = endOfCharacterClass(regex, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    private static int endOfCharacterClass(String regex, int start) {
+        int nesting = 0;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                nesting++;
+            } else if (c == ']' && --nesting == 0) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    /**
+     * A rule and its named groups. The type of a group's field follows from its expression, so that it does not
+     * change from build to build: groups which only match numbers are float fields, all others string fields.
+     */
+    private static final class CompiledRule {
+        private final String name;
+        private final Pattern pattern;
+        private final Map<String, Boolean> numericGroups = new LinkedHashMap<>();
+        private final Map<String, Object> lastValues = new LinkedHashMap<>();
+        private int count;
+
+        CompiledRule(String name, String regex) {
+            this.name = name;
+            this.pattern = Pattern.compile(regex);
+            Matcher groupMatcher = NAMED_GROUP.matcher(regex);
+            while (groupMatcher.find()) {
+                String expression = regex.substring(groupMatcher.end(), endOfGroup(regex, groupMatcher.end()));
+                numericGroups.put(groupMatcher.group(1), NUMERIC_EXPRESSION.matcher(expression).matches());
+            }
+        }
+
+        void match(String line) {
+            Matcher matcher = pattern.matcher(line);
+            if (!matcher.find()) {
+                return;
+            }
+            count++;
+            for (Map.Entry<String, Boolean> group : numericGroups.entrySet()) {
+                String value = matcher.group(group.getKey());
+                if (value == null) {
+                    continue;
+                }
+                if (!group.getValue()) {
+                    lastValues.put(group.getKey(), value);
+                } else if (NUMBER.matcher(value).matches()) {
+                    lastValues.put(group.getKey(), Double.parseDouble(value));
+                } else {
+                    // Like "1.2.3", which the expression allows but which is no number
+                    logger.log(Level.FINE, "Ignoring value {0} of numeric group {1} of build log metric {2}", new Object[]{value, group.getKey(), name});
+                }
+            }
+        }
+
+        void addFields(Map<String, Object> fields) {
+            fields.put(name, count);
+            for (Map.Entry<String, Object> value : lastValues.entrySet()) {
+                fields.put(name + "_" + value.getKey(), value.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package jenkinsci.plugins.influxdb.logs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the last line of a build log matching a pattern, reading the log backward from its end.
+ * <p>
+ * Output looked for at the end of a build, like the analysis URL printed by the SonarQube scanner, is found
+ * without reading the whole log. The log file is read in blocks from the end. Lines are only decoded and matched
+ * against the pattern when they contain a literal, which every matching line contains, and the scan gives up
+ * after a maximum number of bytes.
+ */
+public final class ReverseLogScanner {
+
+    public static final int DEFAULT_MAX_SCAN_SIZE_MB = 100;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final String literal;
+    private final byte[] literalBytes;
+    private final Pattern pattern;
+    private final long maxBytes;
+
+    /**
+     * @param literal  contained in every line matching the pattern
+     * @param pattern  matched against the lines containing the literal, the first group is the result if it has one
+     * @param maxBytes maximum number of bytes read, not positive for the default
+     */
+    public ReverseLogScanner(String literal, Pattern pattern, long maxBytes) {
+        this.literal = literal;
+        this.literalBytes = literal.getBytes(StandardCharsets.UTF_8);
+        this.pattern = pattern;
+        this.maxBytes = maxBytes > 0 ? maxBytes : DEFAULT_MAX_SCAN_SIZE_MB * 1024L * 1024L;
+    }
+
+    /**
+     * Scans the log file from its end.
+     *
+     * @return the result of the last matching line, {@code null} if there is none within the maximum number of bytes
+     */
+    public String findLast(File log) throws IOException {
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            long position = channel.size();
+            long scanned = 0;
+            // Start of the line which continues in the block read before
+            byte[] carry = new byte[0];
+            while (position > 0 && scanned < maxBytes) {
+                int size = (int) Math.min(BLOCK_SIZE, Math.min(position, maxBytes - scanned));
+                position -= size;
+                scanned += size;
+
+                byte[] data = new byte[size + carry.length];
+                ByteBuffer block = ByteBuffer.wrap(data, 0, size);
+                while (block.hasRemaining()) {
+                    if (channel.read(block, position + block.position()) < 0) {
+                        throw new IOException("Log file truncated while scanning: " + log);
+                    }
+                }
+                System.arraycopy(carry, 0, data, size, carry.length);
+
+                int end = data.length;
+                for (int i = data.length - 1; i >= 0; i--) {
+                    if (data[i] == '\n') {
+                        String result = matchLine(data, i + 1, end);
+                        if (result != null) {
+                            return result;
+                        }
+                        end = i;
+                    }
+                }
+                carry = end == data.length ? data : Arrays.copyOf(data, end);
+            }
+            // The first line of the log has no line break before it
+            return position == 0 ? matchLine(carry, 0, carry.length) : null;
+        }
+    }
+
+    /**
+     * Scans a log which is not available as a plain file, e.g. a compressed one, from its start.
+     *
+     * @return the result of the last matching line, {@code null} if there is none
+     */
+    public String findLast(Reader log) throws IOException {
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(log)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains(literal)) {
+                    String lineResult = match(line);
+                    result = lineResult != null ? lineResult : result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private String matchLine(byte[] data, int from, int to) {
+        if (indexOf(data, from, to, literalBytes) < 0) {
+            return null;
+        }
+        if (to > from && data[to - 1] == '\r') {
+            to--;
+        }
+        return match(new String(data, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    private String match(String line) {
+        Matcher matcher = pattern.matcher(line);
+        if (!matcher.find()) {
+            return null;
+        }
+        return matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte[] literal) {
+        int last = to - literal.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < literal.length; j++) {
+                if (data[i + j] != literal[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,57 @@
+package jenkinsci.plugins.influxdb.models;
+
+import com.google.common.base.Objects;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Metric derived from the lines of the build log matching a regular expression.
+ * <p>
+ * The number of matching lines is written as field {@code <name>}. Each named group of the expression is written
+ * as field {@code <name>_<group>}, with the value captured in the last matching line. Groups whose expression
+ * only matches numbers, like {@code \d+}, are float fields, all other groups string fields.
+ */
+public class LogMetricRule extends AbstractDescribableImpl<LogMetricRule> implements java.io.Serializable {
+
+    private String name;
+    private String pattern;
+
+    public LogMetricRule() {
+        //nop
+    }
+
+    @DataBoundConstructor
+    public LogMetricRule(String name, String pattern) {
+        this.name = name;
+        this.pattern = pattern;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(LogMetricRule.class)
+                .add("name", name)
+                .add("pattern", pattern)
+                .toString();
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<LogMetricRule> {}
+}
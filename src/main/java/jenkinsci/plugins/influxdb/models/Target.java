@@ -6,6 +6,7 @@ import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import hudson.util.Secret;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 public class Target extends AbstractDescribableImpl<Target> implements java.io.Serializable {
 
@@ -20,6 +21,10 @@ public class Target extends AbstractDescribableImpl<Target> implements java.io.S
     private boolean usingJenkinsProxy;
     private boolean globalListener;
     private String globalListenerFilter;
+    private boolean compressWrites;
+    private int compressionThreshold;
+    private int maxPointsPerSecond;
+    private int maxRequestsPerSecond;
 
     public Target() {
         //nop
@@ -130,6 +135,51 @@ public class Target extends AbstractDescribableImpl<Target> implements java.io.S
         this.globalListenerFilter = globalListenerFilter;
     }
 
+    public boolean isCompressWrites() {
+        return compressWrites;
+    }
+
+    @DataBoundSetter
+    public void setCompressWrites(boolean compressWrites) {
+        this.compressWrites = compressWrites;
+    }
+
+    /**
+     * Minimum size in bytes of the payloads to compress, 0 for the default.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    @DataBoundSetter
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Maximum number of points written to the target per second, 0 for no limit.
+     */
+    public int getMaxPointsPerSecond() {
+        return maxPointsPerSecond;
+    }
+
+    @DataBoundSetter
+    public void setMaxPointsPerSecond(int maxPointsPerSecond) {
+        this.maxPointsPerSecond = maxPointsPerSecond;
+    }
+
+    /**
+     * Maximum number of write requests sent to the target per second, 0 for no limit.
+     */
+    public int getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    @DataBoundSetter
+    public void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+
     @Override
     public String toString() {
         return Objects.toStringHelper(Target.class)
@@ -0,0 +1,288 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import com.google.common.base.Strings;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.Secret;
+import jenkins.util.Timer;
+import jenkinsci.plugins.influxdb.models.Target;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plugin-wide buffer merging the points of many builds into one write per destination.
+ * <p>
+ * Line protocol written to the same url, database, retention policy and credentials is collected in a shared
+ * buffer. The buffer is flushed as a single write when it reaches the maximum number of points or size,
+ * or when its oldest points have waited for the maximum linger time.
+ * <p>
+ * The Jenkins timer only schedules the linger flushes. Writes, which may wait for retries and rate limits, run on
+ * a small pool of writer threads of their own. While all writers are busy and their queue is full, the thread
+ * adding points writes itself, and linger flushes are postponed.
+ */
+public final class BatchCoalescer {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(BatchCoalescer.class.getName());
+
+    public static final int DEFAULT_MAX_POINTS = 5000;
+    public static final int DEFAULT_MAX_SIZE_KB = 1024;
+    public static final int DEFAULT_MAX_LINGER_MILLIS = 1000;
+
+    private static final int WRITER_THREADS = 4;
+    private static final int WRITER_QUEUE_SIZE = 64;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private static BatchCoalescer instance;
+
+    private final BatchWriter writer;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService writeExecutor;
+    private final ConcurrentMap<String, Buffer> buffers = new ConcurrentHashMap<>();
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong coalescedPointCount = new AtomicLong();
+
+    private volatile int maxPoints = DEFAULT_MAX_POINTS;
+    private volatile long maxBytes = DEFAULT_MAX_SIZE_KB * 1024L;
+    private volatile long maxLingerMillis = DEFAULT_MAX_LINGER_MILLIS;
+
+    /**
+     * @param scheduler     schedules the linger flushes, never writes
+     * @param writeExecutor performs the writes
+     */
+    BatchCoalescer(BatchWriter writer, ScheduledExecutorService scheduler, ExecutorService writeExecutor) {
+        this.writer = writer;
+        this.scheduler = scheduler;
+        this.writeExecutor = writeExecutor;
+    }
+
+    public static synchronized BatchCoalescer get() {
+        if (instance == null) {
+            ThreadPoolExecutor writeExecutor = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(WRITER_QUEUE_SIZE),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "InfluxDB coalesced write"));
+            writeExecutor.allowCoreThreadTimeOut(true);
+            instance = new BatchCoalescer(BatchCoalescer::writeToTarget, Timer.get(), writeExecutor);
+        }
+        return instance;
+    }
+
+    /**
+     * Write of a coalesced batch of line protocol to a target.
+     */
+    @FunctionalInterface
+    interface BatchWriter {
+        void write(Target target, byte[] lineProtocol) throws Exception;
+    }
+
+    public void configure(int maxPoints, long maxBytes, long maxLingerMillis) {
+        this.maxPoints = maxPoints > 0 ? maxPoints : DEFAULT_MAX_POINTS;
+        this.maxBytes = maxBytes > 0 ? maxBytes : DEFAULT_MAX_SIZE_KB * 1024L;
+        this.maxLingerMillis = maxLingerMillis > 0 ? maxLingerMillis : DEFAULT_MAX_LINGER_MILLIS;
+    }
+
+    /**
+     * Adds line protocol to the buffer of the target's destination. The write happens later, on a background thread.
+     * If the buffer would grow beyond the maximum size, what is buffered so far is written first, so that
+     * coalesced writes stay within the size limit.
+     */
+    public void add(Target target, byte[] lineProtocol) {
+        Buffer buffer = buffers.computeIfAbsent(keyOf(target), key -> new Buffer());
+        int pointCount = countLines(lineProtocol);
+        Target overflowTarget = null;
+        byte[] overflow = null;
+        boolean full;
+        synchronized (buffer) {
+            if (buffer.pointCount > 0 && buffer.lines.size() + lineProtocol.length > maxBytes) {
+                overflowTarget = buffer.target;
+                overflow = take(buffer);
+            }
+            buffer.target = target;
+            buffer.lines.write(lineProtocol, 0, lineProtocol.length);
+            buffer.pointCount += pointCount;
+            full = buffer.pointCount >= maxPoints || buffer.lines.size() >= maxBytes;
+            if (!full && buffer.lingerFlush == null) {
+                scheduleLingerFlush(buffer);
+            }
+        }
+        coalescedPointCount.addAndGet(pointCount);
+        // Writes may run on this thread, which must not block other builds adding to the buffer meanwhile
+        if (overflow != null) {
+            Target bufferedTarget = overflowTarget;
+            byte[] buffered = overflow;
+            writeOrRun(() -> write(bufferedTarget, buffered));
+        }
+        if (full) {
+            writeOrRun(() -> flush(buffer));
+        }
+    }
+
+    /**
+     * Writes all buffered points right away.
+     */
+    public void flushAll() {
+        for (Buffer buffer : buffers.values()) {
+            flush(buffer);
+        }
+    }
+
+    public int getBufferedPointCount() {
+        int count = 0;
+        for (Buffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                count += buffer.pointCount;
+            }
+        }
+        return count;
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFailedFlushCount() {
+        return failedFlushCount.get();
+    }
+
+    public long getCoalescedPointCount() {
+        return coalescedPointCount.get();
+    }
+
+    /**
+     * Hands the write to a writer thread, or performs it on the calling thread while all writers are busy.
+     */
+    private void writeOrRun(Runnable write) {
+        try {
+            writeExecutor.execute(write);
+        } catch (RejectedExecutionException e) {
+            write.run();
+        }
+    }
+
+    /**
+     * Schedules the flush of a buffer after the linger time, the caller holds its lock.
+     */
+    private void scheduleLingerFlush(Buffer buffer) {
+        buffer.lingerFlush = scheduler.schedule(() -> {
+            try {
+                writeExecutor.execute(() -> flush(buffer));
+            } catch (RejectedExecutionException e) {
+                // Writers are busy, the timer thread must not write itself
+                synchronized (buffer) {
+                    if (buffer.pointCount > 0) {
+                        scheduleLingerFlush(buffer);
+                    }
+                }
+            }
+        }, maxLingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(Buffer buffer) {
+        Target target;
+        byte[] lineProtocol;
+        synchronized (buffer) {
+            if (buffer.pointCount == 0) {
+                return;
+            }
+            target = buffer.target;
+            lineProtocol = take(buffer);
+        }
+        write(target, lineProtocol);
+    }
+
+    /**
+     * Empties the buffer, the caller holds its lock.
+     */
+    private static byte[] take(Buffer buffer) {
+        if (buffer.lingerFlush != null) {
+            buffer.lingerFlush.cancel(false);
+            buffer.lingerFlush = null;
+        }
+        byte[] lineProtocol = buffer.lines.toByteArray();
+        buffer.lines = new ByteArrayOutputStream();
+        buffer.pointCount = 0;
+        return lineProtocol;
+    }
+
+    private void write(Target target, byte[] lineProtocol) {
+        flushCount.incrementAndGet();
+        try {
+            writer.write(target, lineProtocol);
+        } catch (Exception e) {
+            failedFlushCount.incrementAndGet();
+            logger.log(Level.WARNING, "Could not write coalesced batch to InfluxDB target " + target, e);
+        }
+    }
+
+    private static int countLines(byte[] lineProtocol) {
+        int count = 0;
+        for (byte b : lineProtocol) {
+            if (b == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Destination and credentials of the target, so that a coalesced write is sent with the credentials of each
+     * of the targets it holds points of.
+     */
+    private static String keyOf(Target target) {
+        return target.getUrl() + '\n' + target.getDatabase() + '\n' + target.getRetentionPolicy()
+                + '\n' + Strings.nullToEmpty(target.getUsername()) + '\n' + Secret.toString(target.getPassword());
+    }
+
+    private static void writeToTarget(Target target, byte[] lineProtocol) throws Exception {
+        try {
+            LineProtocolWriter.write(target, lineProtocol, 0, lineProtocol.length);
+        } catch (Exception e) {
+            WriteSpool spool = WriteSpool.get();
+            if (spool.isEnabled() && WriteSpool.isWorthSpooling(e)) {
+                spool.append(target, lineProtocol);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes what is still buffered before Jenkins goes down and waits for the writes in progress. Called by
+     * {@link PublicationQueue#shutdown()} once the queued publications, which may still add points, are drained.
+     */
+    static void shutdown() throws InterruptedException {
+        BatchCoalescer current;
+        synchronized (BatchCoalescer.class) {
+            current = instance;
+        }
+        if (current != null) {
+            current.flushAll();
+            current.writeExecutor.shutdown();
+            if (!current.writeExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.log(Level.WARNING, "Timed out waiting for coalesced writes to InfluxDB.");
+            }
+        }
+    }
+
+    private static final class Buffer {
+        private Target target;
+        private ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        private int pointCount;
+        private ScheduledFuture<?> lingerFlush;
+    }
+}
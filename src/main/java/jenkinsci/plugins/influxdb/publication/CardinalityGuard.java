@@ -0,0 +1,354 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import hudson.init.Terminator;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.influxdb.encoder.TagFilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the number of series InfluxDB has to hold in check by watching the values of every tag.
+ * <p>
+ * The distinct values of each tag of each measurement are counted with a HyperLogLog sketch, which estimates
+ * millions of values within a few percent using 4 KB per tag. Once the estimate of a tag exceeds the budget, the
+ * tag is guarded: from then on, its values are written as a field, reduced to a few hashed values, or left out.
+ * The sketches and the guarded tags are stored in the Jenkins home, so the budget is not reset by a restart. Once the
+ * cause of the values is fixed, the guarded tags are reset from the global configuration and counted anew.
+ */
+public final class CardinalityGuard implements TagFilter {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(CardinalityGuard.class.getName());
+
+    private static final int FILE_MAGIC = 0x484C4C31;
+    private static final long SAVE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static CardinalityGuard instance;
+
+    private final File stateFile;
+    private final ConcurrentMap<String, TagSketch> sketches = new ConcurrentHashMap<>();
+
+    private volatile int limit;
+    private volatile GuardAction guardAction = GuardAction.FIELD;
+    private volatile boolean changed;
+    private long lastSaveNanos = System.nanoTime();
+
+    CardinalityGuard(File stateFile) {
+        this.stateFile = stateFile;
+        load();
+    }
+
+    public static synchronized CardinalityGuard get() {
+        if (instance == null) {
+            instance = new CardinalityGuard(new File(Jenkins.getInstance().getRootDir(), "influxdb-tag-cardinality.bin"));
+        }
+        return instance;
+    }
+
+    /**
+     * What is done with the values of a tag which exceeded the budget.
+     */
+    public enum GuardAction {
+
+        FIELD("Write as field", Action.FIELD),
+
+        HASH("Hash the values", Action.HASH),
+
+        DROP("Drop the tag", Action.DROP);
+
+        private final String displayName;
+        private final Action action;
+
+        GuardAction(String displayName, Action action) {
+            this.displayName = displayName;
+            this.action = action;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * Resolves an action from its name, falling back to {@link #FIELD} for unknown or empty names.
+         */
+        public static GuardAction fromName(String name) {
+            for (GuardAction guardAction : values()) {
+                if (guardAction.name().equals(name)) {
+                    return guardAction;
+                }
+            }
+            return FIELD;
+        }
+    }
+
+    /**
+     * @param limit       maximum number of distinct values of a tag, not positive to write all tags as they are
+     * @param guardAction what is done with the values of tags beyond the limit
+     */
+    public void configure(int limit, GuardAction guardAction) {
+        this.limit = limit;
+        this.guardAction = guardAction;
+    }
+
+    public boolean isEnabled() {
+        return limit > 0;
+    }
+
+    /**
+     * Returns the filter for a publication, {@code null} if tags are not watched.
+     */
+    public TagFilter forPublication() {
+        return isEnabled() ? this : null;
+    }
+
+    @Override
+    public Action filter(String measurement, String key, String value) {
+        int currentLimit = limit;
+        if (currentLimit <= 0) {
+            return Action.KEEP;
+        }
+        TagSketch sketch = sketches.computeIfAbsent(measurement + '\n' + key, name -> new TagSketch(measurement, key));
+        if (sketch.guarded) {
+            return guardAction.action;
+        }
+        if (sketch.offer(value)) {
+            changed = true;
+            if (sketch.estimate() > currentLimit) {
+                sketch.guarded = true;
+                logger.log(Level.WARNING, "Tag " + key + " of measurement " + measurement + " exceeded "
+                        + currentLimit + " distinct values, its values are handled by " + guardAction.name() + " from now on");
+                return guardAction.action;
+            }
+        }
+        return Action.KEEP;
+    }
+
+    /**
+     * Names of the guarded tags, as measurement and tag key separated by a dot.
+     */
+    public List<String> getGuardedTags() {
+        List<String> guardedTags = new ArrayList<>();
+        for (TagSketch sketch : sketches.values()) {
+            if (sketch.guarded) {
+                guardedTags.add(sketch.measurement + "." + sketch.key);
+            }
+        }
+        Collections.sort(guardedTags);
+        return guardedTags;
+    }
+
+    public int getGuardedTagCount() {
+        int count = 0;
+        for (TagSketch sketch : sketches.values()) {
+            if (sketch.guarded) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getTrackedTagCount() {
+        return sketches.size();
+    }
+
+    /**
+     * Estimated number of distinct values of a tag, 0 if the tag was not seen.
+     */
+    public long getEstimatedCardinality(String measurement, String key) {
+        TagSketch sketch = sketches.get(measurement + '\n' + key);
+        return sketch != null ? sketch.estimate() : 0;
+    }
+
+    /**
+     * Stops guarding all guarded tags. Their values are written as they are and counted anew.
+     *
+     * @return the names of the tags which were guarded, as returned by {@link #getGuardedTags()}
+     */
+    public List<String> resetGuardedTags() {
+        List<String> resetTags = new ArrayList<>();
+        for (TagSketch sketch : sketches.values()) {
+            if (sketch.guarded && sketches.remove(sketch.measurement + '\n' + sketch.key, sketch)) {
+                resetTags.add(sketch.measurement + "." + sketch.key);
+            }
+        }
+        if (!resetTags.isEmpty()) {
+            changed = true;
+            saveIfChanged(true);
+            logger.log(Level.INFO, "Reset the guarded tags " + resetTags);
+        }
+        Collections.sort(resetTags);
+        return resetTags;
+    }
+
+    /**
+     * Stores the sketches counted since the last save before Jenkins goes down.
+     */
+    @Terminator
+    public static void shutdown() {
+        CardinalityGuard current;
+        synchronized (CardinalityGuard.class) {
+            current = instance;
+        }
+        if (current != null) {
+            current.saveIfChanged(true);
+        }
+    }
+
+    /**
+     * Stores the sketches if they changed, at most once a minute unless forced.
+     */
+    public void saveIfChanged(boolean force) {
+        synchronized (stateFile) {
+            if (!changed || !force && System.nanoTime() - lastSaveNanos < SAVE_INTERVAL_NANOS) {
+                return;
+            }
+            changed = false;
+            lastSaveNanos = System.nanoTime();
+            File tmp = new File(stateFile.getPath() + ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+                    out.writeInt(FILE_MAGIC);
+                    List<TagSketch> snapshot = new ArrayList<>(sketches.values());
+                    out.writeInt(snapshot.size());
+                    for (TagSketch sketch : snapshot) {
+                        sketch.writeTo(out);
+                    }
+                }
+                Files.move(tmp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                changed = true;
+                logger.log(Level.WARNING, "Failed to store the tag cardinality sketches in " + stateFile, e);
+            }
+        }
+    }
+
+    private void load() {
+        if (!stateFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile.toPath())))) {
+            if (in.readInt() != FILE_MAGIC) {
+                logger.log(Level.WARNING, "Ignoring tag cardinality sketches of unknown format in " + stateFile);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                TagSketch sketch = TagSketch.readFrom(in);
+                sketches.put(sketch.measurement + '\n' + sketch.key, sketch);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to load the tag cardinality sketches from " + stateFile + ", counting anew", e);
+            sketches.clear();
+        }
+    }
+
+    /**
+     * HyperLogLog sketch of the values of one tag.
+     */
+    static final class TagSketch {
+
+        private static final int PRECISION = 12;
+        private static final int REGISTERS = 1 << PRECISION;
+        private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+        private final String measurement;
+        private final String key;
+        private final byte[] registers;
+        private volatile boolean guarded;
+
+        TagSketch(String measurement, String key) {
+            this(measurement, key, new byte[REGISTERS], false);
+        }
+
+        private TagSketch(String measurement, String key, byte[] registers, boolean guarded) {
+            this.measurement = measurement;
+            this.key = key;
+            this.registers = registers;
+            this.guarded = guarded;
+        }
+
+        /**
+         * Counts a value.
+         *
+         * @return whether the sketch changed, values seen before never change it
+         */
+        synchronized boolean offer(String value) {
+            long hash = hash64(value);
+            int index = (int) (hash >>> (64 - PRECISION));
+            // Rank of the first set bit of the remaining bits, the marker bit bounds it
+            int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+            if (rank > registers[index]) {
+                registers[index] = (byte) rank;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized long estimate() {
+            double sum = 0;
+            int zeros = 0;
+            for (byte register : registers) {
+                sum += Double.longBitsToDouble((1023L - register) << 52);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+            double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+            if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+                // Linear counting is more accurate for small numbers of values
+                estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+            }
+            return Math.round(estimate);
+        }
+
+        synchronized void writeTo(DataOutputStream out) throws IOException {
+            out.writeUTF(measurement);
+            out.writeUTF(key);
+            out.writeBoolean(guarded);
+            out.write(registers);
+        }
+
+        static TagSketch readFrom(DataInputStream in) throws IOException {
+            String measurement = in.readUTF();
+            String key = in.readUTF();
+            boolean guarded = in.readBoolean();
+            byte[] registers = new byte[REGISTERS];
+            in.readFully(registers);
+            return new TagSketch(measurement, key, registers, guarded);
+        }
+
+        /**
+         * 64-bit FNV-1a over the characters, with a final mix so that all bits depend on the whole value.
+         */
+        static long hash64(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Line protocol encoded once and written to several targets.
+ * <p>
+ * The encoded points do not depend on the target, the database, retention policy and credentials are part of
+ * the request URL. So every target of a publication gets the same bytes, and the targets compressing their writes
+ * share a single gzip compressed copy, made by the first of them.
+ */
+public final class EncodedPayload {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    private byte[] gzipped;
+    private int pointCount = -1;
+
+    /**
+     * @param bytes line protocol, which must not change once the payload was created
+     */
+    public EncodedPayload(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public EncodedPayload(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the number of points, i.e. lines, of the payload, counting them on first use.
+     */
+    synchronized int getPointCount() {
+        if (pointCount < 0) {
+            int count = 0;
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] == '\n') {
+                    count++;
+                }
+            }
+            pointCount = count;
+        }
+        return pointCount;
+    }
+
+    /**
+     * Returns the gzip compressed payload, compressing it on first use.
+     */
+    synchronized byte[] gzipped() throws IOException {
+        if (gzipped == null) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(length / 4, 64));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192)) {
+                gzip.write(bytes, offset, length);
+            }
+            gzipped = compressed.toByteArray();
+        }
+        return gzipped;
+    }
+}
@@ -0,0 +1,207 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import hudson.ProxyConfiguration;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.influxdb.models.Target;
+import okhttp3.ConnectionPool;
+import okhttp3.Credentials;
+import okhttp3.OkHttpClient;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-lived registry of the HTTP clients of the targets, keyed by the connection settings of a {@link Target}.
+ * <p>
+ * All writes go through the {@link LineProtocolWriter}, which only needs an HTTP client. The clients of the targets
+ * are derived from one shared client, created once per url and proxy settings and reused by every build. They share
+ * its connection pool and dispatcher, so a target whose configuration went away leaves no threads behind and its
+ * idle connections are evicted by the pool like any others.
+ */
+public final class InfluxDbClientRegistry {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(InfluxDbClientRegistry.class.getName());
+
+    /**
+     * Shared HTTP client, whose connection pool and dispatcher are used by the clients of all targets.
+     */
+    private static final OkHttpClient httpClient = new OkHttpClient();
+
+    private static final InfluxDbClientRegistry INSTANCE = new InfluxDbClientRegistry();
+
+    private final ConcurrentMap<ClientKey, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    InfluxDbClientRegistry() {
+        //nop
+    }
+
+    public static InfluxDbClientRegistry get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the HTTP client for the given target, creating it on first use. The credentials of the target are not
+     * part of the client, they are sent with each request.
+     *
+     * @throws MalformedURLException if the target URL is invalid
+     */
+    public OkHttpClient getHttpClient(Target target) throws MalformedURLException {
+        ClientKey key = ClientKey.of(target);
+        OkHttpClient client = clients.get(key);
+        if (client != null) {
+            hitCount.incrementAndGet();
+            return client;
+        }
+        // Validate before creating anything, computeIfAbsent cannot throw checked exceptions
+        URL url = new URL(target.getUrl());
+        missCount.incrementAndGet();
+        return clients.computeIfAbsent(key, k -> createHttpClient(url, target.isUsingJenkinsProxy()).build());
+    }
+
+    /**
+     * Drops the clients which do not belong to any of the given targets anymore, i.e. targets which were removed or
+     * whose connection settings changed. Writes still running on a dropped client complete.
+     */
+    public void retainTargets(Collection<Target> targets) {
+        Set<ClientKey> keys = new HashSet<>();
+        for (Target target : targets) {
+            keys.add(ClientKey.of(target));
+        }
+        clients.entrySet().removeIf(entry -> {
+            if (keys.contains(entry.getKey())) {
+                return false;
+            }
+            logger.log(Level.FINE, "Dropping InfluxDB client for {0}", entry.getKey().url);
+            return true;
+        });
+    }
+
+    /**
+     * Statistics of the connection pool shared by the clients of all targets.
+     */
+    public ConnectionPoolStats getConnectionPoolStats() {
+        ConnectionPool pool = httpClient.connectionPool();
+        return new ConnectionPoolStats(pool.connectionCount(), pool.idleConnectionCount());
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static OkHttpClient.Builder createHttpClient(URL url, boolean useProxy) {
+        OkHttpClient.Builder builder = httpClient.newBuilder();
+        ProxyConfiguration proxyConfig = useProxy ? Jenkins.getInstance().proxy : null;
+        if (proxyConfig != null) {
+            builder.proxy(proxyConfig.createProxy(url.getHost()));
+            if (proxyConfig.getUserName() != null) {
+                builder.proxyAuthenticator((route, response) -> {
+                    if (response.request().header("Proxy-Authorization") != null) {
+                        return null; // Give up, we've already failed to authenticate.
+                    }
+
+                    String credential = Credentials.basic(proxyConfig.getUserName(), proxyConfig.getPassword());
+                    return response.request().newBuilder().header("Proxy-Authorization", credential).build();
+                });
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Connection settings a client depends on. The Jenkins proxy is part of the key for targets
+     * using it, so that proxy changes lead to new clients.
+     */
+    private static final class ClientKey {
+        private final String url;
+        private final String proxy;
+
+        private ClientKey(String url, String proxy) {
+            this.url = url;
+            this.proxy = proxy;
+        }
+
+        static ClientKey of(Target target) {
+            String proxy = null;
+            if (target.isUsingJenkinsProxy()) {
+                Jenkins jenkins = Jenkins.getInstance();
+                ProxyConfiguration proxyConfig = jenkins != null ? jenkins.proxy : null;
+                proxy = proxyConfig == null ? "" : String.join(":", Arrays.asList(
+                        proxyConfig.name, String.valueOf(proxyConfig.port), proxyConfig.getUserName(),
+                        proxyConfig.getPassword(), proxyConfig.noProxyHost));
+            }
+            return new ClientKey(target.getUrl(), proxy);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey other = (ClientKey) o;
+            return Objects.equals(url, other.url)
+                    && Objects.equals(proxy, other.proxy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, proxy);
+        }
+    }
+
+    /**
+     * Snapshot of the connections held by a connection pool.
+     */
+    public static final class ConnectionPoolStats {
+        private final int connectionCount;
+        private final int idleConnectionCount;
+
+        public ConnectionPoolStats(int connectionCount, int idleConnectionCount) {
+            this.connectionCount = connectionCount;
+            this.idleConnectionCount = idleConnectionCount;
+        }
+
+        public int getConnectionCount() {
+            return connectionCount;
+        }
+
+        public int getIdleConnectionCount() {
+            return idleConnectionCount;
+        }
+
+        public int getActiveConnectionCount() {
+            return connectionCount - idleConnectionCount;
+        }
+
+        @Override
+        public String toString() {
+            return connectionCount + " connections, " + idleConnectionCount + " idle";
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+import jenkinsci.plugins.influxdb.generators.SonarQubePointGenerator;
+import jenkinsci.plugins.influxdb.generators.TimedCache;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exposes the state of the publication machinery through the Metrics plugin, when it is installed.
+ */
+@Extension(optional = true)
+public class InfluxDbMetricProvider extends MetricProvider {
+
+    private static final String PREFIX = "jenkins.influxdb";
+
+    private final MetricSet metricSet;
+
+    public InfluxDbMetricProvider() {
+        Map<String, Metric> metrics = new HashMap<>();
+
+        PublicationQueue queue = PublicationQueue.get();
+        gauge(metrics, "queue.depth", queue::getQueueDepth);
+        gauge(metrics, "queue.active_workers", queue::getActiveWorkers);
+        gauge(metrics, "queue.submitted", queue::getSubmittedCount);
+        gauge(metrics, "queue.dropped", queue::getDroppedCount);
+        gauge(metrics, "queue.failed", queue::getFailedCount);
+
+        InfluxDbClientRegistry clients = InfluxDbClientRegistry.get();
+        gauge(metrics, "clients.count", clients::getClientCount);
+        gauge(metrics, "clients.hits", clients::getHitCount);
+        gauge(metrics, "clients.misses", clients::getMissCount);
+        gauge(metrics, "clients.connections", () -> clients.getConnectionPoolStats().getConnectionCount());
+        gauge(metrics, "clients.idle_connections", () -> clients.getConnectionPoolStats().getIdleConnectionCount());
+
+        BatchCoalescer coalescer = BatchCoalescer.get();
+        gauge(metrics, "coalescer.buffered_points", coalescer::getBufferedPointCount);
+        gauge(metrics, "coalescer.coalesced_points", coalescer::getCoalescedPointCount);
+        gauge(metrics, "coalescer.flushes", coalescer::getFlushCount);
+        gauge(metrics, "coalescer.failed_flushes", coalescer::getFailedFlushCount);
+
+        RequestCompression compression = RequestCompression.get();
+        gauge(metrics, "writes.uncompressed_bytes", compression::getUncompressedBytes);
+        gauge(metrics, "writes.sent_bytes", compression::getSentBytes);
+        gauge(metrics, "writes.compressed_requests", compression::getCompressedRequestCount);
+
+        TargetHealth health = TargetHealth.get();
+        gauge(metrics, "writes.retries", health::getRetryCount);
+        gauge(metrics, "circuits.open", health::getOpenCircuitCount);
+        gauge(metrics, "circuits.opened", health::getOpenCount);
+        gauge(metrics, "circuits.rejected_writes", health::getRejectedWriteCount);
+
+        RateLimiter rateLimiter = RateLimiter.get();
+        gauge(metrics, "rate_limit.admitted_points", rateLimiter::getAdmittedPointCount);
+        gauge(metrics, "rate_limit.admitted_requests", rateLimiter::getAdmittedRequestCount);
+        gauge(metrics, "rate_limit.throttled_writes", rateLimiter::getThrottledWriteCount);
+        gauge(metrics, "rate_limit.rejected_writes", rateLimiter::getRejectedWriteCount);
+
+        CardinalityGuard cardinalityGuard = CardinalityGuard.get();
+        gauge(metrics, "cardinality.tracked_tags", cardinalityGuard::getTrackedTagCount);
+        gauge(metrics, "cardinality.guarded_tags", cardinalityGuard::getGuardedTagCount);
+
+        TimedCache<?> analysisUrls = SonarQubePointGenerator.getAnalysisUrlCache();
+        TimedCache<?> sonarResults = SonarQubePointGenerator.getResultCache();
+        gauge(metrics, "sonarqube.cache_hits", () -> analysisUrls.getHitCount() + sonarResults.getHitCount());
+        gauge(metrics, "sonarqube.cache_misses", () -> analysisUrls.getMissCount() + sonarResults.getMissCount());
+        gauge(metrics, "sonarqube.cached_results", sonarResults::size);
+
+        metricSet = () -> Collections.unmodifiableMap(metrics);
+    }
+
+    @Nonnull
+    @Override
+    public MetricSet getMetricSet() {
+        return metricSet;
+    }
+
+    private static <T> void gauge(Map<String, Metric> metrics, String name, Gauge<T> gauge) {
+        metrics.put(MetricRegistry.name(PREFIX, name), gauge);
+    }
+}
@@ -0,0 +1,98 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import com.google.common.base.Strings;
+import hudson.util.Secret;
+import jenkinsci.plugins.influxdb.models.Target;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.influxdb.InfluxDBException;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+/**
+ * Writes encoded line protocol to the {@code /write} endpoint of a target.
+ * <p>
+ * The InfluxDB client only accepts points or strings, so its write path renders and copies the data once more.
+ * This posts the encoded bytes as they are, through the pooled HTTP client of the target, gzip compressed
+ * if the target asks for it.
+ */
+public final class LineProtocolWriter {
+
+    private static final MediaType LINE_PROTOCOL = MediaType.parse("text/plain; charset=utf-8");
+
+    private LineProtocolWriter() {
+        //nop
+    }
+
+    /**
+     * Writes line protocol with nanosecond timestamps. The bytes are consumed before this method returns.
+     *
+     * @throws InfluxDBException if InfluxDB rejected the write
+     * @throws IOException       if InfluxDB could not be reached
+     */
+    public static void write(Target target, byte[] lineProtocol, int offset, int length) throws IOException {
+        write(target, new EncodedPayload(lineProtocol, offset, length));
+    }
+
+    /**
+     * Writes a payload shared by several targets, compressing it at most once for all of them. The write fails
+     * fast while the circuit of the target is open and transient failures are retried, see {@link TargetHealth}.
+     * Every request sent, retries included, waits for the rate limit of the target, see {@link RateLimiter}.
+     *
+     * @throws InfluxDBException if InfluxDB rejected the write
+     * @throws IOException       if InfluxDB could not be reached
+     */
+    public static void write(Target target, EncodedPayload payload) throws IOException {
+        if (payload.getLength() == 0) {
+            return;
+        }
+        TargetHealth.get().write(target, () -> {
+            RateLimiter.get().acquire(target, payload.getPointCount());
+            send(target, payload);
+        });
+    }
+
+    private static void send(Target target, EncodedPayload payload) throws IOException {
+        Request.Builder builder = new Request.Builder().url(writeUrl(target));
+        byte[] compressed = RequestCompression.get().compress(target, payload);
+        if (compressed != null) {
+            builder.header("Content-Encoding", "gzip").post(RequestBody.create(LINE_PROTOCOL, compressed));
+        } else {
+            builder.post(RequestBody.create(LINE_PROTOCOL, payload.getBytes(), payload.getOffset(), payload.getLength()));
+        }
+        Request request = builder.build();
+        try (Response response = InfluxDbClientRegistry.get().getHttpClient(target).newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                ResponseBody body = response.body();
+                String error = body != null ? body.string() : null;
+                throw InfluxDBException.buildExceptionForErrorState(Strings.isNullOrEmpty(error) ? response.message() : error);
+            }
+        }
+    }
+
+    private static HttpUrl writeUrl(Target target) throws MalformedURLException {
+        HttpUrl url = HttpUrl.parse(target.getUrl());
+        if (url == null) {
+            throw new MalformedURLException(target.getUrl());
+        }
+        HttpUrl.Builder builder = url.newBuilder()
+                .addPathSegment("write")
+                .addQueryParameter("db", target.getDatabase())
+                .addQueryParameter("precision", "n")
+                .addQueryParameter("consistency", "any");
+        if (!Strings.isNullOrEmpty(target.getRetentionPolicy())) {
+            builder.addQueryParameter("rp", target.getRetentionPolicy());
+        }
+        // Same authentication as influxdb-java, so the HTTP client of a target does not depend on its credentials
+        if (!Strings.isNullOrEmpty(target.getUsername())) {
+            builder.addQueryParameter("u", target.getUsername())
+                    .addQueryParameter("p", Secret.toString(target.getPassword()));
+        }
+        return builder.build();
+    }
+}
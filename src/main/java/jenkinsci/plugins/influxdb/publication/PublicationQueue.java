@@ -0,0 +1,349 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plugin-wide bounded queue which takes InfluxDB writes off the build thread.
+ * <p>
+ * Builds collect their points and hand the write over as a task. A dedicated pool of
+ * worker threads drains the queue. What happens when the queue is full is decided by
+ * the configured {@link QueueFullPolicy}. Publications dropped because the queue is full are handed to their fallback,
+ * which spools them.
+ * <p>
+ * When Jenkins shuts down, the current pool and the pools replaced by a reconfiguration get a common deadline to
+ * drain. Publications which are still queued or running after the deadline, and publications submitted after the
+ * shutdown, are handed to their fallback, which spools them.
+ */
+public final class PublicationQueue {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(PublicationQueue.class.getName());
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_WORKER_COUNT = 2;
+
+    /**
+     * How long pending publications may take to drain when Jenkins shuts down.
+     */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private static final PublicationQueue INSTANCE = new PublicationQueue();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private int workerCount = DEFAULT_WORKER_COUNT;
+    private QueueFullPolicy queueFullPolicy = QueueFullPolicy.BLOCK;
+    private ThreadPoolExecutor executor;
+    /**
+     * Pools replaced by a reconfiguration which may still be draining.
+     */
+    private final List<ThreadPoolExecutor> retiredExecutors = new ArrayList<>();
+    private final Set<QueuedPublication> runningPublications = ConcurrentHashMap.newKeySet();
+    private boolean shutDown;
+    /**
+     * Set once the shutdown deadline passed, publications are then handed to their fallback instead of started.
+     */
+    private volatile boolean abandoning;
+
+    PublicationQueue() {
+        //nop
+    }
+
+    public static PublicationQueue get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Applies new queue settings. If they differ from the current ones, the running pool is retired
+     * (it still drains what was already queued) and a new pool is created on the next submission.
+     */
+    public synchronized void configure(int queueSize, int workerCount, QueueFullPolicy queueFullPolicy) {
+        int newQueueSize = queueSize > 0 ? queueSize : DEFAULT_QUEUE_SIZE;
+        int newWorkerCount = workerCount > 0 ? workerCount : DEFAULT_WORKER_COUNT;
+        if (newQueueSize == this.queueSize && newWorkerCount == this.workerCount && queueFullPolicy == this.queueFullPolicy) {
+            return;
+        }
+        this.queueSize = newQueueSize;
+        this.workerCount = newWorkerCount;
+        this.queueFullPolicy = queueFullPolicy;
+        if (executor != null) {
+            executor.shutdown();
+            retiredExecutors.add(executor);
+            executor = null;
+        }
+        retiredExecutors.removeIf(ThreadPoolExecutor::isTerminated);
+    }
+
+    /**
+     * Queues a publication. Depending on the policy this may block the caller while the queue is full.
+     */
+    public void submit(Runnable publication) {
+        submit(publication, null);
+    }
+
+    /**
+     * Queues a publication. Depending on the policy this may block the caller while the queue is full.
+     *
+     * @param fallback run instead of the publication if Jenkins shuts down before the publication could be
+     *                 performed, may be {@code null}
+     */
+    public void submit(Runnable publication, Runnable fallback) {
+        submittedCount.incrementAndGet();
+        QueuedPublication queuedPublication = new QueuedPublication(publication, fallback);
+        ThreadPoolExecutor current = getExecutor();
+        if (current == null) {
+            logger.log(Level.WARNING, "InfluxDB publication submitted while Jenkins shuts down, not publishing it.");
+            queuedPublication.abandon();
+            return;
+        }
+        current.execute(queuedPublication);
+    }
+
+    public synchronized int getQueueDepth() {
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    public synchronized int getActiveWorkers() {
+        return executor != null ? executor.getActiveCount() : 0;
+    }
+
+    public synchronized int getQueueSize() {
+        return queueSize;
+    }
+
+    public synchronized int getWorkerCount() {
+        return workerCount;
+    }
+
+    public synchronized QueueFullPolicy getQueueFullPolicy() {
+        return queueFullPolicy;
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Returns the current pool, creating it if needed, {@code null} once the queue was shut down.
+     */
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (shutDown) {
+            return null;
+        }
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueSize),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "InfluxDB publication"),
+                    new QueueFullHandler(queueFullPolicy));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Drains the queue before Jenkins goes down so that already collected points are not lost, then writes what
+     * the drained publications left in the {@link BatchCoalescer}. The coalescer is flushed here rather than by a
+     * terminator of its own, whose order relative to this one would be undefined.
+     */
+    @Terminator
+    public static void shutdown() throws InterruptedException {
+        INSTANCE.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        BatchCoalescer.shutdown();
+    }
+
+    /**
+     * Stops accepting publications and waits for the current and retired pools to drain. Publications queued or
+     * running when the deadline passes are abandoned to their fallback.
+     */
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        List<ThreadPoolExecutor> pools;
+        synchronized (this) {
+            shutDown = true;
+            pools = new ArrayList<>(retiredExecutors);
+            if (executor != null) {
+                pools.add(executor);
+            }
+            retiredExecutors.clear();
+            executor = null;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean drained = true;
+        for (ThreadPoolExecutor pool : pools) {
+            pool.shutdown();
+            drained &= pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        if (drained) {
+            return;
+        }
+
+        // Running publications are abandoned before they are interrupted, so that an interrupted publication
+        // cannot pass for a completed one. What they wrote already is written again by the fallback, which
+        // InfluxDB takes as the same points.
+        abandoning = true;
+        int abandoned = 0;
+        for (QueuedPublication publication : runningPublications) {
+            publication.abandon();
+            abandoned++;
+        }
+        for (ThreadPoolExecutor pool : pools) {
+            for (Runnable publication : pool.shutdownNow()) {
+                if (publication instanceof QueuedPublication) {
+                    ((QueuedPublication) publication).abandon();
+                    abandoned++;
+                }
+            }
+        }
+        logger.log(Level.WARNING, "Timed out waiting for InfluxDB publications, spooled {0} queued or running ones.", abandoned);
+    }
+
+    private final class QueuedPublication implements Runnable {
+
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+
+        private final Runnable publication;
+        private final Runnable fallback;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        QueuedPublication(Runnable publication, Runnable fallback) {
+            this.publication = publication;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(QUEUED, RUNNING)) {
+                return;
+            }
+            runningPublications.add(this);
+            if (abandoning) {
+                runningPublications.remove(this);
+                abandon();
+                return;
+            }
+            try {
+                publication.run();
+            } catch (RuntimeException e) {
+                failedCount.incrementAndGet();
+                logger.log(Level.WARNING, "Asynchronous publication to InfluxDB failed.", e);
+            } finally {
+                runningPublications.remove(this);
+                state.compareAndSet(RUNNING, DONE);
+            }
+        }
+
+        /**
+         * Runs the fallback instead of the publication, or in addition to it if it is still running. Does
+         * nothing if the publication completed or was abandoned before.
+         */
+        void abandon() {
+            if (state.getAndSet(DONE) == DONE) {
+                return;
+            }
+            droppedCount.incrementAndGet();
+            if (fallback != null) {
+                try {
+                    fallback.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Fallback of an abandoned InfluxDB publication failed.", e);
+                }
+            }
+        }
+    }
+
+    private final class QueueFullHandler implements RejectedExecutionHandler {
+
+        private final QueueFullPolicy policy;
+
+        QueueFullHandler(QueueFullPolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable publication, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                // The pool was replaced by a reconfiguration in the meantime
+                submitToCurrentPool(publication, pool);
+                return;
+            }
+            switch (policy) {
+                case DROP_NEWEST:
+                    drop(publication, "newest");
+                    break;
+                case DROP_OLDEST:
+                    Runnable oldest = pool.getQueue().poll();
+                    if (oldest != null) {
+                        drop(oldest, "oldest");
+                    }
+                    pool.execute(publication);
+                    break;
+                case BLOCK:
+                default:
+                    try {
+                        pool.getQueue().put(publication);
+                        if (pool.isShutdown() && pool.remove(publication)) {
+                            // Retired while blocked, its workers may be gone already
+                            submitToCurrentPool(publication, pool);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        drop(publication, "newest");
+                    }
+                    break;
+            }
+        }
+
+        private void submitToCurrentPool(Runnable publication, ThreadPoolExecutor rejectingPool) {
+            ThreadPoolExecutor current = getExecutor();
+            if (current != null && current != rejectingPool) {
+                current.execute(publication);
+            } else if (publication instanceof QueuedPublication) {
+                // Jenkins shuts down
+                ((QueuedPublication) publication).abandon();
+            } else {
+                drop(publication, "newest");
+            }
+        }
+
+        /**
+         * Drops a publication, running its fallback.
+         */
+        private void drop(Runnable publication, String which) {
+            if (publication instanceof QueuedPublication) {
+                ((QueuedPublication) publication).abandon();
+            } else {
+                droppedCount.incrementAndGet();
+            }
+            logger.log(Level.WARNING, "InfluxDB publication queue is full. Dropped the {0} publication.", which);
+        }
+    }
+}
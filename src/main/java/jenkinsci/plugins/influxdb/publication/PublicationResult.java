@@ -0,0 +1,60 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.InfluxReportException;
+import jenkinsci.plugins.influxdb.models.Target;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Combined outcome of writing one publication to several targets.
+ */
+public final class PublicationResult {
+
+    private final int targetCount;
+    private final Map<Target, Exception> failures;
+
+    PublicationResult(int targetCount, Map<Target, Exception> failures) {
+        this.targetCount = targetCount;
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    public int getTargetCount() {
+        return targetCount;
+    }
+
+    /**
+     * Failed targets with the reason of their failure, in the order the targets were given.
+     */
+    public Map<Target, Exception> getFailures() {
+        return failures;
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Fails if any of the failed targets is configured to expose exceptions. The failures of the other
+     * exposing targets are attached as suppressed exceptions.
+     *
+     * @throws InfluxReportException if a target exposing exceptions failed
+     */
+    public void throwIfExposed() {
+        InfluxReportException exposed = null;
+        for (Map.Entry<Target, Exception> failure : failures.entrySet()) {
+            if (!failure.getKey().isExposeExceptions()) {
+                continue;
+            }
+            if (exposed == null) {
+                exposed = new InfluxReportException("Could not report to InfluxDB target: " + failure.getKey().getDescription(), failure.getValue());
+            } else {
+                exposed.addSuppressed(failure.getValue());
+            }
+        }
+        if (exposed != null) {
+            throw exposed;
+        }
+    }
+}
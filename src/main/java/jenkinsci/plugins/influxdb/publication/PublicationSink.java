@@ -0,0 +1,97 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.encoder.LineProtocolEncoder;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
+import jenkinsci.plugins.influxdb.encoder.TagFilter;
+import jenkinsci.plugins.influxdb.generators.PointSink;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Sink encoding the points of a publication as they are generated. Whenever the encoded points reach the
+ * maximum number of points or size of a chunk, they are handed over as a chunk of line protocol and the
+ * points are not kept any longer. The memory used by a publication is thereby bounded by the chunk size
+ * when the chunks are shipped right away, and no single request grows beyond what proxies accept.
+ */
+public final class PublicationSink implements PointSink {
+
+    public static final int DEFAULT_CHUNK_POINTS = 5000;
+    public static final int DEFAULT_CHUNK_SIZE_KB = 512;
+
+    private final LineProtocolEncoder encoder = new LineProtocolEncoder();
+    private final LineProtocolEncoder pointEncoder = new LineProtocolEncoder();
+    private final int chunkPoints;
+    private final int chunkSize;
+    private final Consumer<byte[]> chunkConsumer;
+    private final TagFilter tagFilter;
+    private final Set<String> filteredTags = new LinkedHashSet<>();
+
+    private int pointCount;
+
+    /**
+     * @param chunkPoints   maximum number of points of a chunk
+     * @param chunkSize     maximum size in bytes of a chunk, only exceeded by chunks made of a single large point
+     * @param chunkConsumer receives the chunks of line protocol, each made of complete lines
+     */
+    public PublicationSink(int chunkPoints, int chunkSize, Consumer<byte[]> chunkConsumer) {
+        this(chunkPoints, chunkSize, chunkConsumer, null);
+    }
+
+    /**
+     * @param tagFilter decides how the tags of the points are written, {@code null} to write them as they are
+     */
+    public PublicationSink(int chunkPoints, int chunkSize, Consumer<byte[]> chunkConsumer, TagFilter tagFilter) {
+        this.chunkPoints = chunkPoints > 0 ? chunkPoints : DEFAULT_CHUNK_POINTS;
+        this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE_KB * 1024;
+        this.chunkConsumer = chunkConsumer;
+        this.tagFilter = tagFilter == null ? null : (measurement, key, value) -> {
+            TagFilter.Action action = tagFilter.filter(measurement, key, value);
+            if (action != TagFilter.Action.KEEP) {
+                filteredTags.add(measurement + "." + key);
+            }
+            return action;
+        };
+    }
+
+    @Override
+    public void accept(PointBuilder point) {
+        pointEncoder.reset().encode(point, tagFilter);
+        if (encoder.size() > 0 && encoder.size() + pointEncoder.size() > chunkSize) {
+            flush();
+        }
+        encoder.append(pointEncoder);
+        pointCount++;
+        if (encoder.getPointCount() >= chunkPoints || encoder.size() >= chunkSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands over what is left after the last point was generated.
+     */
+    public void finish() {
+        if (encoder.size() > 0) {
+            flush();
+        }
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Tags which were not written as they are, as measurement and tag key separated by a dot.
+     */
+    public Set<String> getFilteredTags() {
+        return Collections.unmodifiableSet(filteredTags);
+    }
+
+    private void flush() {
+        byte[] chunk = encoder.toByteArray();
+        encoder.reset();
+        chunkConsumer.accept(chunk);
+    }
+}
@@ -0,0 +1,44 @@
+package jenkinsci.plugins.influxdb.publication;
+
+/**
+ * What to do with a publication when the asynchronous publication queue is full.
+ */
+public enum QueueFullPolicy {
+
+    /**
+     * Wait on the build thread until the queue has room again.
+     */
+    BLOCK("Block until space is available"),
+
+    /**
+     * Discard the publication which could not be queued.
+     */
+    DROP_NEWEST("Drop the newest publication"),
+
+    /**
+     * Discard the oldest queued publication to make room for the new one.
+     */
+    DROP_OLDEST("Drop the oldest publication");
+
+    private final String displayName;
+
+    QueueFullPolicy(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Resolves a policy from its name, falling back to {@link #BLOCK} for unknown or empty names.
+     */
+    public static QueueFullPolicy fromName(String name) {
+        for (QueueFullPolicy policy : values()) {
+            if (policy.name().equals(name)) {
+                return policy;
+            }
+        }
+        return BLOCK;
+    }
+}
@@ -0,0 +1,156 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Chunks of line protocol of an asynchronous publication, waiting in the publication queue.
+ * <p>
+ * Chunks are kept in memory up to the size of a chunk. Later chunks are spilled to a temporary file in the
+ * segment format of the {@link WriteSpool}, so that the memory used by a queued publication is bounded by the
+ * chunk size however many points it has. Only if the file cannot be written are the chunks kept in memory.
+ */
+public final class QueuedChunks implements Consumer<byte[]> {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(QueuedChunks.class.getName());
+
+    private final long memoryLimit;
+    private final File tempDir;
+    private final List<byte[]> chunks = new ArrayList<>();
+
+    private long memorySize;
+    private File spillFile;
+    private OutputStream spillOut;
+    private boolean inMemoryOnly;
+    private int readers;
+    private boolean discarded;
+
+    /**
+     * @param memoryLimit size in bytes of the chunks kept in memory, the size of a chunk
+     */
+    public QueuedChunks(long memoryLimit) {
+        this(memoryLimit, null);
+    }
+
+    /**
+     * @param tempDir directory of the temporary file, {@code null} for the default temporary directory
+     */
+    QueuedChunks(long memoryLimit, File tempDir) {
+        this.memoryLimit = memoryLimit > 0 ? memoryLimit : PublicationSink.DEFAULT_CHUNK_SIZE_KB * 1024L;
+        this.tempDir = tempDir;
+    }
+
+    @Override
+    public synchronized void accept(byte[] chunk) {
+        if (inMemoryOnly || spillFile == null && (chunks.isEmpty() || memorySize + chunk.length <= memoryLimit)) {
+            chunks.add(chunk);
+            memorySize += chunk.length;
+            return;
+        }
+        try {
+            if (spillFile == null) {
+                spillFile = File.createTempFile("influxdb-publication", ".seg", tempDir);
+                spillOut = new BufferedOutputStream(new FileOutputStream(spillFile));
+            }
+            spillOut.write(WriteSpool.encodeRecord(System.currentTimeMillis(), chunk).array());
+        } catch (IOException e) {
+            // Records written so far stay readable, a truncated one at the end is ignored
+            logger.log(Level.WARNING, "Could not spill queued InfluxDB data to " + spillFile + ", keeping it in memory", e);
+            inMemoryOnly = true;
+            chunks.add(chunk);
+            memorySize += chunk.length;
+        }
+    }
+
+    /**
+     * Hands the chunks over in the order they were added, reading the spilled ones one by one. The publication
+     * and its fallback may do so at the same time.
+     */
+    public void forEach(Consumer<byte[]> action) {
+        List<byte[]> inMemory;
+        File spilled;
+        synchronized (this) {
+            closeSpill();
+            inMemory = new ArrayList<>(chunks);
+            spilled = discarded ? null : spillFile;
+            readers++;
+        }
+        try {
+            inMemory.forEach(action);
+            if (spilled != null) {
+                readSpilled(spilled, action);
+            }
+        } finally {
+            synchronized (this) {
+                readers--;
+                deleteIfUnused();
+            }
+        }
+    }
+
+    /**
+     * Releases the chunks. The temporary file is deleted as soon as no one reads it anymore.
+     */
+    public synchronized void discard() {
+        closeSpill();
+        discarded = true;
+        chunks.clear();
+        deleteIfUnused();
+    }
+
+    synchronized File getSpillFile() {
+        return spillFile;
+    }
+
+    private static void readSpilled(File spilled, Consumer<byte[]> action) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spilled)))) {
+            WriteSpool.Record record;
+            while ((record = WriteSpool.readRecord(in)) != null) {
+                action.accept(record.payload);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read queued InfluxDB data from " + spilled, e);
+        }
+    }
+
+    private void closeSpill() {
+        if (spillOut == null) {
+            return;
+        }
+        try {
+            spillOut.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not spill queued InfluxDB data to " + spillFile, e);
+        }
+        spillOut = null;
+        // Chunks added from now on cannot be appended to the closed file
+        inMemoryOnly = true;
+    }
+
+    private void deleteIfUnused() {
+        if (!discarded || readers > 0 || spillFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spillFile.toPath());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not delete queued InfluxDB data " + spillFile, e);
+        }
+        spillFile = null;
+    }
+}
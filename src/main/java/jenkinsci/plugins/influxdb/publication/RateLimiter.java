@@ -0,0 +1,232 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.models.Target;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the points and requests written to each target per second, keyed by target URL.
+ * <p>
+ * Each limit is a token bucket holding up to one second of tokens. A write waits until the bucket holds its
+ * tokens, or is full for a chunk larger than a second's worth of points. It then takes all its tokens, and the
+ * writes after it wait until the debt is paid off. A write whose wait would exceed the bounded wait is not sent
+ * at all, but fails with a {@link ThrottledException}, which diverts it to the spool like a write to an
+ * unreachable target. Asynchronous publications wait on the worker of the publication queue, so a burst of builds
+ * fills the queue, and the policy of the full queue applies, instead of holding up the builds.
+ */
+public final class RateLimiter {
+
+    public static final int DEFAULT_MAX_WAIT_SECONDS = 10;
+
+    private static final RateLimiter INSTANCE = new RateLimiter(System::nanoTime);
+
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+    private final AtomicLong admittedPointCount = new AtomicLong();
+    private final AtomicLong admittedRequestCount = new AtomicLong();
+    private final AtomicLong throttledWriteCount = new AtomicLong();
+    private final AtomicLong rejectedWriteCount = new AtomicLong();
+
+    private volatile long maxWaitNanos = TimeUnit.SECONDS.toNanos(DEFAULT_MAX_WAIT_SECONDS);
+
+    RateLimiter(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    public static RateLimiter get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param maxWaitSeconds longest time a write waits for its tokens
+     */
+    public void configure(int maxWaitSeconds) {
+        this.maxWaitNanos = TimeUnit.SECONDS.toNanos(Math.max(maxWaitSeconds, 0));
+    }
+
+    /**
+     * Waits until the target may be sent a request with the points, if the target has limits.
+     *
+     * @throws ThrottledException     if the write would have to wait longer than the bounded wait
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire(Target target, int pointCount) throws IOException {
+        long waitNanos = reserve(target, pointCount);
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limit of " + target.getUrl());
+            }
+        }
+    }
+
+    /**
+     * Takes the tokens of a write.
+     *
+     * @return nanoseconds to wait before sending the write
+     * @throws ThrottledException if the write would have to wait longer than the bounded wait
+     */
+    long reserve(Target target, int pointCount) throws ThrottledException {
+        int pointsPerSecond = target.getMaxPointsPerSecond();
+        int requestsPerSecond = target.getMaxRequestsPerSecond();
+        if (pointsPerSecond <= 0 && requestsPerSecond <= 0) {
+            return 0;
+        }
+        Limit limit = limits.computeIfAbsent(target.getUrl(), url -> new Limit());
+        long waitNanos = limit.reserve(pointsPerSecond, requestsPerSecond, pointCount, nanoClock.getAsLong(), maxWaitNanos);
+        if (waitNanos < 0) {
+            rejectedWriteCount.incrementAndGet();
+            throw new ThrottledException(target, maxWaitNanos);
+        }
+        admittedPointCount.addAndGet(pointCount);
+        admittedRequestCount.incrementAndGet();
+        if (waitNanos > 0) {
+            throttledWriteCount.incrementAndGet();
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Describes how much of the limits of the target URL is in use, {@code null} if it has no limits.
+     */
+    public String describe(String url) {
+        Limit limit = limits.get(url);
+        return limit != null ? limit.describe(nanoClock.getAsLong()) : null;
+    }
+
+    /**
+     * Number of points sent to targets with limits.
+     */
+    public long getAdmittedPointCount() {
+        return admittedPointCount.get();
+    }
+
+    /**
+     * Number of requests sent to targets with limits.
+     */
+    public long getAdmittedRequestCount() {
+        return admittedRequestCount.get();
+    }
+
+    /**
+     * Number of writes which waited for their tokens.
+     */
+    public long getThrottledWriteCount() {
+        return throttledWriteCount.get();
+    }
+
+    /**
+     * Number of writes which were not sent because they would have waited too long.
+     */
+    public long getRejectedWriteCount() {
+        return rejectedWriteCount.get();
+    }
+
+    /**
+     * Point and request buckets of one target, updated together so that a write takes the tokens of both or none.
+     */
+    private static final class Limit {
+
+        private final Bucket points = new Bucket();
+        private final Bucket requests = new Bucket();
+        private long throttledWrites;
+
+        synchronized long reserve(int pointsPerSecond, int requestsPerSecond, int pointCount, long now, long maxWaitNanos) {
+            points.refill(pointsPerSecond, now);
+            requests.refill(requestsPerSecond, now);
+            long waitNanos = Math.max(points.waitNanos(pointCount), requests.waitNanos(1));
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            points.take(pointCount);
+            requests.take(1);
+            if (waitNanos > 0) {
+                throttledWrites++;
+            }
+            return waitNanos;
+        }
+
+        synchronized String describe(long now) {
+            StringBuilder description = new StringBuilder("Rate limit:");
+            if (points.rate > 0) {
+                points.refill(points.rate, now);
+                description.append(' ').append(points.usage()).append("% of ").append((long) points.rate).append(" points/s");
+            }
+            if (requests.rate > 0) {
+                requests.refill(requests.rate, now);
+                description.append(points.rate > 0 ? "," : "").append(' ').append(requests.usage()).append("% of ")
+                        .append((long) requests.rate).append(" requests/s");
+            }
+            if (points.rate <= 0 && requests.rate <= 0) {
+                return null;
+            }
+            return description.append(" in use, ").append(throttledWrites).append(" writes throttled").toString();
+        }
+    }
+
+    /**
+     * Token bucket holding up to a second of tokens. Its balance goes below zero while writes wait for the tokens
+     * they took.
+     */
+    private static final class Bucket {
+
+        private double rate;
+        private double tokens;
+        private long refilledNanos;
+
+        void refill(double rate, long now) {
+            if (rate != this.rate) {
+                // New or changed limit, starts with a full second
+                this.rate = rate;
+                tokens = rate;
+            } else if (rate > 0) {
+                tokens = Math.min(rate, tokens + (now - refilledNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+            }
+            refilledNanos = now;
+        }
+
+        /**
+         * Time until the bucket holds the tokens, or is full if it cannot hold them all.
+         */
+        long waitNanos(int count) {
+            double missing = Math.min(count, rate) - tokens;
+            return rate > 0 && missing > 0 ? (long) Math.ceil(missing * TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        }
+
+        void take(int count) {
+            if (rate > 0) {
+                tokens -= count;
+            }
+        }
+
+        /**
+         * Share of the last second of tokens which was taken, above 100 while writes wait.
+         */
+        long usage() {
+            return Math.round((rate - tokens) * 100 / rate);
+        }
+    }
+
+    /**
+     * Thrown instead of writing to a target whose rate limit would hold the write back for too long. It is an
+     * {@link IOException} like the failure to reach the target, so the write is spooled like that failure.
+     */
+    public static final class ThrottledException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        ThrottledException(Target target, long maxWaitNanos) {
+            super("Rate limit of " + target.getUrl() + " exceeded, the write would wait longer than "
+                    + TimeUnit.NANOSECONDS.toSeconds(maxWaitNanos) + " seconds");
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.models.Target;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gzip compression of the write requests of targets which have compression enabled.
+ * <p>
+ * Payloads smaller than the threshold of the target are sent as they are, compressing them costs more CPU
+ * than it saves on the wire. The threshold adapts to the data of each target: when compression does not save
+ * at least a tenth of a payload, the threshold of the target is doubled, and it is halved again down to the
+ * configured threshold whenever compression pays off. The bytes before and after compression are recorded
+ * per target URL.
+ */
+public final class RequestCompression {
+
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    /**
+     * Compressed payloads larger than this share of the original do not pay off.
+     */
+    private static final double MAX_RATIO = 0.9;
+    private static final int MAX_THRESHOLD = 16 * 1024 * 1024;
+
+    private static final RequestCompression INSTANCE = new RequestCompression();
+
+    private final ConcurrentMap<String, CompressionStats> stats = new ConcurrentHashMap<>();
+
+    RequestCompression() {
+        //nop
+    }
+
+    public static RequestCompression get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Compresses a payload for the target, if compression is enabled and the payload is large enough.
+     *
+     * @return the gzip compressed payload, or {@code null} if the payload is to be sent uncompressed
+     */
+    public byte[] compress(Target target, byte[] payload, int offset, int length) throws IOException {
+        return compress(target, new EncodedPayload(payload, offset, length));
+    }
+
+    /**
+     * Compresses a payload shared by several targets. The payload is compressed once for all of them, the
+     * threshold and statistics are still kept per target.
+     *
+     * @return the gzip compressed payload, or {@code null} if the payload is to be sent uncompressed
+     */
+    public byte[] compress(Target target, EncodedPayload payload) throws IOException {
+        if (!target.isCompressWrites()) {
+            return null;
+        }
+        int length = payload.getLength();
+        int configuredThreshold = target.getCompressionThreshold() > 0 ? target.getCompressionThreshold() : DEFAULT_THRESHOLD;
+        CompressionStats targetStats = stats.computeIfAbsent(target.getUrl(), url -> new CompressionStats());
+        if (length < Math.max(configuredThreshold, targetStats.threshold)) {
+            targetStats.record(length, length, false);
+            return null;
+        }
+
+        byte[] compressed = payload.gzipped();
+        if (compressed.length > length * MAX_RATIO) {
+            targetStats.threshold = (int) Math.min(Math.max(configuredThreshold, length) * 2L, MAX_THRESHOLD);
+        } else {
+            targetStats.threshold = Math.max(configuredThreshold, targetStats.threshold / 2);
+        }
+        targetStats.record(length, compressed.length, true);
+        return compressed;
+    }
+
+    /**
+     * Statistics of the write requests of each target, keyed by target URL.
+     */
+    public Map<String, CompressionStats> getStats() {
+        return new HashMap<>(stats);
+    }
+
+    public long getUncompressedBytes() {
+        return stats.values().stream().mapToLong(CompressionStats::getUncompressedBytes).sum();
+    }
+
+    public long getSentBytes() {
+        return stats.values().stream().mapToLong(CompressionStats::getSentBytes).sum();
+    }
+
+    public long getCompressedRequestCount() {
+        return stats.values().stream().mapToLong(CompressionStats::getCompressedRequestCount).sum();
+    }
+
+    public static final class CompressionStats {
+        private final AtomicLong uncompressedBytes = new AtomicLong();
+        private final AtomicLong sentBytes = new AtomicLong();
+        private final AtomicLong compressedRequestCount = new AtomicLong();
+        private final AtomicLong uncompressedRequestCount = new AtomicLong();
+
+        /**
+         * Payloads below this size are not compressed, never below the threshold configured for the target.
+         */
+        private volatile int threshold;
+
+        private void record(long before, long after, boolean compressed) {
+            uncompressedBytes.addAndGet(before);
+            sentBytes.addAndGet(after);
+            (compressed ? compressedRequestCount : uncompressedRequestCount).incrementAndGet();
+        }
+
+        /**
+         * Size of the payloads before compression.
+         */
+        public long getUncompressedBytes() {
+            return uncompressedBytes.get();
+        }
+
+        /**
+         * Size of the payloads as sent, after compression.
+         */
+        public long getSentBytes() {
+            return sentBytes.get();
+        }
+
+        public long getCompressedRequestCount() {
+            return compressedRequestCount.get();
+        }
+
+        public long getUncompressedRequestCount() {
+            return uncompressedRequestCount.get();
+        }
+
+        public int getThreshold() {
+            return threshold;
+        }
+    }
+}
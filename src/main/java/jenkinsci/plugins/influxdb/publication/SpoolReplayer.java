@@ -0,0 +1,71 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkinsci.plugins.influxdb.InfluxDbPublisher;
+import jenkinsci.plugins.influxdb.models.Target;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically resends the batches parked in the {@link WriteSpool} to targets which are healthy again. Replayed
+ * batches go through the {@link LineProtocolWriter}, so they are subject to the rate limit and circuit of their
+ * target like any other write.
+ */
+@Extension
+public class SpoolReplayer extends AsyncPeriodicWork {
+
+    public SpoolReplayer() {
+        super("InfluxDB spool replay");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(1);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        WriteSpool spool = WriteSpool.get();
+        spool.purgeExpired();
+        for (Target target : InfluxDbPublisher.DESCRIPTOR.getTargets()) {
+            // Targets with an open circuit get their trial write from the next publication
+            if (!spool.hasSpooledData(target) || TargetHealth.get().isOpen(target)) {
+                continue;
+            }
+            int replayed = spool.replay(target, new WriteSpool.Destination() {
+                @Override
+                public boolean isHealthy() {
+                    return ping(target);
+                }
+
+                @Override
+                public void write(byte[] lineProtocol) throws IOException {
+                    LineProtocolWriter.write(target, new EncodedPayload(lineProtocol));
+                }
+            });
+            listener.getLogger().println("Replayed " + replayed + " spooled batches to " + target);
+        }
+    }
+
+    /**
+     * Sends a {@code GET /ping} to the target, which InfluxDB answers with 204 when it is up.
+     */
+    private static boolean ping(Target target) {
+        HttpUrl url = HttpUrl.parse(target.getUrl());
+        if (url == null) {
+            return false;
+        }
+        Request request = new Request.Builder().url(url.newBuilder().addPathSegment("ping").build()).get().build();
+        try (Response response = InfluxDbClientRegistry.get().getHttpClient(target).newCall(request).execute()) {
+            return response.isSuccessful();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkinsci.plugins.influxdb.InfluxReportException;
+import jenkinsci.plugins.influxdb.models.Target;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes one publication to several targets concurrently, so that one slow or unreachable
+ * target does not delay the targets after it.
+ * <p>
+ * Each target gets the same deadline, counted from the moment the fan-out starts. When all writer
+ * threads are busy, target writes wait in the queue of the writers, which counts against their deadline.
+ * Background fan-outs are coordinated on threads of their own, so that they never take a writer thread
+ * and never run target writes outside of a deadline.
+ */
+public final class TargetFanOut {
+
+    public static final int DEFAULT_TIMEOUT_SECONDS = 30;
+
+    private static final int MAX_WRITER_THREADS = 32;
+
+    private static final ExecutorService executor = createWriterExecutor();
+
+    /**
+     * Threads which only wait for the target writes of a background fan-out.
+     */
+    private static final ExecutorService coordinator = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "InfluxDB target fan-out"));
+
+    private TargetFanOut() {
+        //nop
+    }
+
+    /**
+     * Write of a publication to a single target.
+     */
+    @FunctionalInterface
+    public interface TargetWrite {
+        void write(Target target) throws Exception;
+    }
+
+    /**
+     * Starts {@link #writeAll} in the background, so that the caller can prepare the next write meanwhile.
+     */
+    public static Future<PublicationResult> writeAllAsync(List<Target> targets, long timeoutMillis, TargetWrite write) {
+        return coordinator.submit(() -> writeAll(targets, timeoutMillis, write));
+    }
+
+    /**
+     * Runs the write for every target and waits until all of them completed or ran into the deadline.
+     *
+     * @param timeoutMillis deadline of each target write, not positive for no deadline
+     */
+    public static PublicationResult writeAll(List<Target> targets, long timeoutMillis, TargetWrite write) {
+        Map<Target, Future<?>> writes = new LinkedHashMap<>();
+        for (Target target : targets) {
+            writes.put(target, executor.submit(() -> {
+                write.write(target);
+                return null;
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Map<Target, Exception> failures = new LinkedHashMap<>();
+        for (Map.Entry<Target, Future<?>> entry : writes.entrySet()) {
+            Future<?> future = entry.getValue();
+            try {
+                if (timeoutMillis > 0) {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } else {
+                    future.get();
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                failures.put(entry.getKey(), new InfluxReportException("Write timed out after " + timeoutMillis + " ms", e));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                failures.put(entry.getKey(), cause instanceof Exception ? (Exception) cause : e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                failures.put(entry.getKey(), e);
+            }
+        }
+        return new PublicationResult(targets.size(), failures);
+    }
+
+    private static ExecutorService createWriterExecutor() {
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(MAX_WRITER_THREADS, MAX_WRITER_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "InfluxDB target writer"));
+        writers.allowCoreThreadTimeOut(true);
+        return writers;
+    }
+}
@@ -0,0 +1,297 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.models.Target;
+import org.influxdb.InfluxDBException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retries and circuit breaker of the writes to each target, keyed by target URL.
+ * <p>
+ * Writes which failed because the target could not be reached, timed out or reported a transient error are
+ * retried after a backoff with full jitter, doubling with each attempt. Writes rejected by InfluxDB are not
+ * retried. Once the writes to a target failed a number of times in a row, its circuit opens: writes fail fast
+ * with a {@link CircuitOpenException} instead of waiting for the connect timeout, and go to the spool when
+ * spooling is enabled. After the cool-down, a single trial write is let through, which closes the circuit again
+ * when it succeeds.
+ */
+public final class TargetHealth {
+
+    public static final int DEFAULT_RETRIES = 2;
+    public static final int DEFAULT_BACKOFF_MILLIS = 200;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_COOLDOWN_SECONDS = 60;
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(TargetHealth.class.getName());
+
+    private static final TargetHealth INSTANCE = new TargetHealth(System::nanoTime);
+
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong rejectedWriteCount = new AtomicLong();
+    private final AtomicLong openCount = new AtomicLong();
+
+    private volatile int retries = DEFAULT_RETRIES;
+    private volatile long backoffMillis = DEFAULT_BACKOFF_MILLIS;
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long cooldownNanos = TimeUnit.SECONDS.toNanos(DEFAULT_COOLDOWN_SECONDS);
+
+    TargetHealth(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    public static TargetHealth get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param retries          number of retries of a failed write, not positive for none
+     * @param backoffMillis    backoff before the first retry, doubled for each further retry
+     * @param failureThreshold failed writes in a row which open the circuit of a target, not positive to never
+     *                         open it
+     * @param cooldownSeconds  time the circuit stays open before a trial write is let through
+     */
+    public void configure(int retries, int backoffMillis, int failureThreshold, int cooldownSeconds) {
+        this.retries = Math.max(retries, 0);
+        this.backoffMillis = Math.max(backoffMillis, 0);
+        this.failureThreshold = failureThreshold;
+        this.cooldownNanos = TimeUnit.SECONDS.toNanos(Math.max(cooldownSeconds, 0));
+    }
+
+    /**
+     * Single attempt of a write.
+     */
+    @FunctionalInterface
+    public interface Attempt {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs the write, retrying it when it failed with a transient error.
+     *
+     * @throws CircuitOpenException if the circuit of the target is open
+     * @throws IOException          if the last attempt could not reach the target
+     * @throws InfluxDBException    if InfluxDB rejected the write
+     */
+    public void write(Target target, Attempt attempt) throws IOException {
+        Breaker breaker = breakerOf(target);
+        if (!breaker.tryAcquire()) {
+            rejectedWriteCount.incrementAndGet();
+            throw new CircuitOpenException(target, breaker.getOpenRemainingMillis());
+        }
+        Exception failure = null;
+        for (int retry = 0; ; retry++) {
+            try {
+                attempt.run();
+                breaker.onSuccess();
+                return;
+            } catch (RateLimiter.ThrottledException e) {
+                // This attempt was not sent, so only a previous attempt tells about the target
+                if (failure != null) {
+                    breaker.onFailure(failure);
+                } else {
+                    breaker.release();
+                }
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                if (!isTransient(e)) {
+                    // InfluxDB answered, so the target is up
+                    breaker.onSuccess();
+                    throw e;
+                }
+                if (retry >= retries || breaker.isOpen() || Thread.currentThread().isInterrupted()) {
+                    breaker.onFailure(e);
+                    throw e;
+                }
+                failure = e;
+            }
+            retryCount.incrementAndGet();
+            try {
+                Thread.sleep(backoffMillis(retry));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                breaker.onFailure(e);
+                throw new InterruptedIOException("Interrupted while waiting to retry the write to " + target.getUrl());
+            }
+        }
+    }
+
+    /**
+     * Backoff before a retry, drawn evenly between 0 and the doubled backoff so that writes failing together
+     * do not come back together.
+     */
+    long backoffMillis(int retry) {
+        long ceiling = Math.min(backoffMillis << Math.min(retry, 20), MAX_BACKOFF_MILLIS);
+        return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+    }
+
+    /**
+     * Whether a failed write may succeed when it is tried again.
+     */
+    static boolean isTransient(Exception e) {
+        if (e instanceof CircuitOpenException || e instanceof RateLimiter.ThrottledException) {
+            return false;
+        }
+        return e instanceof IOException || e instanceof InfluxDBException && ((InfluxDBException) e).isRetryWorth();
+    }
+
+    /**
+     * Whether the circuit of the target is open, i.e. writes to it currently fail fast.
+     */
+    public boolean isOpen(Target target) {
+        Breaker breaker = breakers.get(target.getUrl());
+        return breaker != null && breaker.isOpen();
+    }
+
+    /**
+     * Describes the state of the circuit of the target URL, {@code null} if it is closed.
+     */
+    public String describe(String url) {
+        Breaker breaker = breakers.get(url);
+        return breaker != null ? breaker.describe() : null;
+    }
+
+    public int getOpenCircuitCount() {
+        int count = 0;
+        for (Breaker breaker : breakers.values()) {
+            if (breaker.isOpen()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * Number of writes which failed fast because the circuit of their target was open.
+     */
+    public long getRejectedWriteCount() {
+        return rejectedWriteCount.get();
+    }
+
+    /**
+     * Number of times a circuit opened.
+     */
+    public long getOpenCount() {
+        return openCount.get();
+    }
+
+    private Breaker breakerOf(Target target) {
+        return breakers.computeIfAbsent(target.getUrl(), Breaker::new);
+    }
+
+    /**
+     * Circuit of one target. Once open, it stays open until the cool-down passed, then half open until the trial
+     * write completes.
+     */
+    private final class Breaker {
+
+        private final String url;
+
+        private int consecutiveFailures;
+        private boolean open;
+        private long openedNanos;
+        private boolean trialRunning;
+        private String lastFailure;
+
+        private Breaker(String url) {
+            this.url = url;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (!open || failureThreshold <= 0) {
+                return true;
+            }
+            if (trialRunning || nanoClock.getAsLong() - openedNanos < cooldownNanos) {
+                return false;
+            }
+            trialRunning = true;
+            return true;
+        }
+
+        synchronized boolean isOpen() {
+            return open && failureThreshold > 0;
+        }
+
+        synchronized long getOpenRemainingMillis() {
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(cooldownNanos - (nanoClock.getAsLong() - openedNanos)));
+        }
+
+        synchronized void onSuccess() {
+            if (open) {
+                logger.log(Level.INFO, "Circuit of InfluxDB target " + url + " closed, writes succeed again");
+            }
+            consecutiveFailures = 0;
+            open = false;
+            trialRunning = false;
+            lastFailure = null;
+        }
+
+        /**
+         * Ends an attempt which was not sent, letting the next write be the trial.
+         */
+        synchronized void release() {
+            trialRunning = false;
+        }
+
+        synchronized void onFailure(Exception e) {
+            consecutiveFailures++;
+            lastFailure = e.toString();
+            boolean trial = trialRunning;
+            trialRunning = false;
+            if (trial || !open && failureThreshold > 0 && consecutiveFailures >= failureThreshold) {
+                // A failed trial keeps the circuit open for another cool-down
+                open = true;
+                openedNanos = nanoClock.getAsLong();
+                if (!trial) {
+                    openCount.incrementAndGet();
+                    logger.log(Level.WARNING, "Circuit of InfluxDB target " + url + " opened after " + consecutiveFailures
+                            + " failed writes, writes fail fast for " + TimeUnit.NANOSECONDS.toSeconds(cooldownNanos) + " seconds: " + lastFailure);
+                }
+            }
+        }
+
+        synchronized String describe() {
+            if (isOpen()) {
+                return "Circuit open after " + consecutiveFailures + " failed writes, writes fail fast for another "
+                        + TimeUnit.MILLISECONDS.toSeconds(getOpenRemainingMillis()) + " seconds. Last failure: " + lastFailure;
+            }
+            if (consecutiveFailures > 0) {
+                return consecutiveFailures + " failed writes in a row. Last failure: " + lastFailure;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Thrown instead of writing to a target whose circuit is open. It is an {@link IOException} like the failure
+     * to reach the target it stands for, so the write is spooled like that failure.
+     */
+    public static final class CircuitOpenException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException(Target target, long remainingMillis) {
+            super("Circuit of " + target.getUrl() + " is open, not writing for another " + remainingMillis + " ms");
+        }
+    }
+}
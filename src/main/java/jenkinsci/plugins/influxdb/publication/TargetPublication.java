@@ -0,0 +1,218 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import hudson.model.TaskListener;
+import jenkinsci.plugins.influxdb.InfluxDbPublisher;
+import jenkinsci.plugins.influxdb.models.Target;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the chunks of line protocol of one publication to its targets as they come in.
+ * <p>
+ * Each chunk is written to all targets concurrently, in the background while the next chunk is being
+ * generated. Chunks are written one after the other over the pooled connection of each target, so at most
+ * two chunks are held in memory. Failures are reported per chunk. A chunk rejected by InfluxDB does not stop
+ * the chunks after it. A target which could not be reached however is not written to again during the
+ * publication, its remaining chunks go to the spool right away when spooling is enabled, which keeps them
+ * in order behind the chunk which failed.
+ */
+public final class TargetPublication {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(TargetPublication.class.getName());
+
+    private final List<Target> targets = new ArrayList<>();
+    private final TaskListener listener;
+    private final boolean coalesce;
+    private final long timeoutMillis;
+    private final boolean spoolFailedWrites;
+
+    /**
+     * First failure of each target which failed.
+     */
+    private final Map<Target, Exception> failures = new LinkedHashMap<>();
+    private final Map<Target, Integer> failedChunkCounts = new HashMap<>();
+    private final Set<Target> unreachableTargets = new HashSet<>();
+    private final Set<Target> spooledTargets = new LinkedHashSet<>();
+
+    private int chunkCount;
+    private Future<PublicationResult> pendingWrite;
+    private List<Target> pendingTargets;
+    private byte[] pendingChunk;
+
+    /**
+     * Resolves the clients of the targets, targets with an invalid URL are skipped.
+     */
+    public TargetPublication(List<Target> targets, TaskListener listener) {
+        this.listener = listener;
+        for (Target target : targets) {
+            String logMessage = "[InfluxDB Plugin] Publishing data to: " + target;
+            logger.log(Level.FINE, logMessage);
+            listener.getLogger().println(logMessage);
+
+            try {
+                InfluxDbClientRegistry.get().getHttpClient(target);
+                this.targets.add(target);
+            } catch (MalformedURLException e) {
+                logger.log(Level.WARNING, "Skipping target due to invalid URL: " + target.getUrl());
+                listener.getLogger().println("[InfluxDB Plugin] Skipping target due to invalid URL: " + target.getUrl());
+            }
+        }
+        coalesce = InfluxDbPublisher.DESCRIPTOR.isCoalesceWrites();
+        timeoutMillis = TimeUnit.SECONDS.toMillis(InfluxDbPublisher.DESCRIPTOR.getTargetWriteTimeout());
+        spoolFailedWrites = WriteSpool.get().isEnabled();
+    }
+
+    /**
+     * Starts writing a chunk to the reachable targets, once the write of the previous chunk completed.
+     */
+    public void write(byte[] chunk) {
+        if (coalesce) {
+            // Written together with the points of other builds, failures are logged and spooled by the coalescer
+            for (Target target : targets) {
+                BatchCoalescer.get().add(target, chunk);
+            }
+            return;
+        }
+
+        awaitPendingWrite();
+        chunkCount++;
+        List<Target> reachableTargets = new ArrayList<>();
+        for (Target target : targets) {
+            if (unreachableTargets.contains(target)) {
+                spoolIfWorth(target, failures.get(target), chunk);
+            } else {
+                reachableTargets.add(target);
+            }
+        }
+        if (reachableTargets.isEmpty()) {
+            return;
+        }
+
+        // Encoded once, and compressed at most once, for all targets
+        EncodedPayload payload = new EncodedPayload(chunk);
+        pendingWrite = TargetFanOut.writeAllAsync(reachableTargets, timeoutMillis,
+                target -> LineProtocolWriter.write(target, payload));
+        pendingTargets = reachableTargets;
+        pendingChunk = chunk;
+    }
+
+    private void awaitPendingWrite() {
+        if (pendingWrite == null) {
+            return;
+        }
+        Map<Target, Exception> chunkFailures = new LinkedHashMap<>();
+        try {
+            chunkFailures.putAll(pendingWrite.get().getFailures());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingWrite.cancel(true);
+            pendingTargets.forEach(target -> chunkFailures.put(target, e));
+        } catch (ExecutionException e) {
+            Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            pendingTargets.forEach(target -> chunkFailures.put(target, cause));
+        }
+
+        for (Map.Entry<Target, Exception> failure : chunkFailures.entrySet()) {
+            Target target = failure.getKey();
+            Exception exception = failure.getValue();
+            listener.getLogger().println("[InfluxDB Plugin] Could not write chunk " + chunkCount + " (" + pendingChunk.length / 1024
+                    + " KB) to target: " + target.getDescription() + ". " + exception);
+            failures.putIfAbsent(target, exception);
+            failedChunkCounts.merge(target, 1, Integer::sum);
+            if (WriteSpool.isWorthSpooling(exception)) {
+                // Not rejected by InfluxDB, but not written at all, e.g. because the target is down
+                unreachableTargets.add(target);
+                spoolIfWorth(target, exception, pendingChunk);
+            }
+        }
+        pendingWrite = null;
+        pendingTargets = null;
+        pendingChunk = null;
+    }
+
+    /**
+     * Reports the outcome of the publication.
+     *
+     * @param exposeExceptions whether targets configured to expose exceptions may fail the publication.
+     *                         Asynchronous publications have no build left to fail, so they only log.
+     * @throws jenkinsci.plugins.influxdb.InfluxReportException if a target exposing exceptions failed
+     */
+    public void finish(boolean exposeExceptions) {
+        if (coalesce) {
+            for (Target target : targets) {
+                listener.getLogger().println("[InfluxDB Plugin] Data buffered for a coalesced write to: " + target.getDescription());
+            }
+            return;
+        }
+
+        awaitPendingWrite();
+        for (Map.Entry<Target, Exception> failure : failures.entrySet()) {
+            Target target = failure.getKey();
+            String notWritten = unreachableTargets.contains(target) ? "target not reachable" : failedChunkCounts.get(target) + " of " + chunkCount + " chunks rejected";
+            listener.getLogger().println("[InfluxDB Plugin] Could not report to target: " + target.getDescription() + " (" + notWritten + "). " + failure.getValue());
+            if (!exposeExceptions || !target.isExposeExceptions()) {
+                //Exceptions not exposed by configuration. Just log and ignore.
+                logger.log(Level.WARNING, "Could not report to InfluxDB. Ignoring Exception.", failure.getValue());
+            }
+            if (spooledTargets.contains(target)) {
+                listener.getLogger().println("[InfluxDB Plugin] Data spooled for later replay to: " + target.getDescription());
+            }
+        }
+        if (exposeExceptions) {
+            new PublicationResult(targets.size(), failures).throwIfExposed();
+        }
+    }
+
+    /**
+     * Parks the chunks in the spool of every target, used when the publication cannot be performed at all.
+     */
+    public static void spool(List<Target> targets, QueuedChunks chunks) {
+        for (Target target : targets) {
+            AtomicBoolean spooling = new AtomicBoolean(true);
+            chunks.forEach(chunk -> {
+                if (spooling.get() && !spool(target, chunk)) {
+                    spooling.set(false);
+                }
+            });
+        }
+    }
+
+    private void spoolIfWorth(Target target, Exception failure, byte[] chunk) {
+        if (spoolFailedWrites && WriteSpool.isWorthSpooling(failure) && spool(target, chunk)) {
+            spooledTargets.add(target);
+        }
+    }
+
+    /**
+     * Parks the chunk in the spool, from where it is replayed once the target is healthy again.
+     *
+     * @return whether the chunk could be spooled
+     */
+    private static boolean spool(Target target, byte[] chunk) {
+        try {
+            WriteSpool.get().append(target, chunk);
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not spool data for InfluxDB target " + target, e);
+            return false;
+        }
+    }
+}
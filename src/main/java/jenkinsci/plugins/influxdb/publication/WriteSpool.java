@@ -0,0 +1,408 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import hudson.Util;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.influxdb.models.Target;
+import org.influxdb.InfluxDBException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-ahead spool for line protocol batches which could not be written to their target.
+ * <p>
+ * Every destination (url, database and retention policy) gets its own directory of append-only
+ * segment files. A segment holds records made of a header (magic, creation time, length) followed
+ * by the line protocol of one batch. Batches are replayed in the order they were spooled. Replaying
+ * a batch more than once is harmless, since InfluxDB overwrites points with the same series and timestamp.
+ */
+public final class WriteSpool {
+
+    /**
+     * The logger.
+     **/
+    private static final Logger logger = Logger.getLogger(WriteSpool.class.getName());
+
+    public static final int DEFAULT_MAX_SIZE_MB = 100;
+    public static final int DEFAULT_MAX_AGE_HOURS = 24;
+
+    static final long SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECORD_MAGIC = 0x4C505331;
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 4;
+
+    private static WriteSpool instance;
+
+    private final File rootDir;
+    private final ConcurrentMap<String, TargetSpool> spools = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+    private volatile long maxBytes = DEFAULT_MAX_SIZE_MB * 1024L * 1024L;
+    private volatile long maxAgeMillis = TimeUnit.HOURS.toMillis(DEFAULT_MAX_AGE_HOURS);
+
+    WriteSpool(File rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    public static synchronized WriteSpool get() {
+        if (instance == null) {
+            instance = new WriteSpool(new File(Jenkins.getInstance().getRootDir(), "influxdb-spool"));
+        }
+        return instance;
+    }
+
+    /**
+     * @param enabled      whether failed writes should be spooled, replay of already spooled batches goes on regardless
+     * @param maxBytes     maximum size of the spool of a single destination, the oldest segments are dropped beyond it
+     * @param maxAgeMillis age after which spooled batches are dropped instead of replayed
+     */
+    public void configure(boolean enabled, long maxBytes, long maxAgeMillis) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes > 0 ? maxBytes : DEFAULT_MAX_SIZE_MB * 1024L * 1024L;
+        this.maxAgeMillis = maxAgeMillis > 0 ? maxAgeMillis : TimeUnit.HOURS.toMillis(DEFAULT_MAX_AGE_HOURS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether a failed write may succeed later. Rejected data, e.g. conflicting field types, is not worth spooling.
+     */
+    public static boolean isWorthSpooling(Exception e) {
+        return !(e instanceof InfluxDBException) || ((InfluxDBException) e).isRetryWorth();
+    }
+
+    /**
+     * Appends a batch to the spool of the target's destination.
+     */
+    public void append(Target target, String lineProtocol) throws IOException {
+        append(target, lineProtocol.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends a batch of UTF-8 encoded line protocol to the spool of the target's destination.
+     */
+    public void append(Target target, byte[] lineProtocol) throws IOException {
+        spoolOf(target).append(lineProtocol, System.currentTimeMillis());
+    }
+
+    public boolean hasSpooledData(Target target) {
+        return spoolOf(target).size() > 0;
+    }
+
+    /**
+     * Size in bytes of everything spooled for the target's destination.
+     */
+    public long getSpooledBytes(Target target) {
+        return spoolOf(target).size();
+    }
+
+    /**
+     * Size in bytes of everything spooled, for all destinations.
+     */
+    public long getSpooledBytes() {
+        long size = 0;
+        for (File dir : listDirectories()) {
+            size += spoolOf(dir.getName()).size();
+        }
+        return size;
+    }
+
+    /**
+     * Resends the spooled batches of the target in order, as long as the destination is healthy. Batches the
+     * destination rejects are dropped, replay stops at the first batch which failed for a transient reason.
+     *
+     * @return the number of batches written
+     */
+    public int replay(Target target, Destination destination) {
+        return spoolOf(target).replay(destination);
+    }
+
+    /**
+     * Drops expired segments of all destinations, including destinations no target points to anymore.
+     */
+    public void purgeExpired() {
+        for (File dir : listDirectories()) {
+            spoolOf(dir.getName()).purgeExpired();
+        }
+    }
+
+    private File[] listDirectories() {
+        File[] dirs = rootDir.listFiles(File::isDirectory);
+        return dirs != null ? dirs : new File[0];
+    }
+
+    private TargetSpool spoolOf(Target target) {
+        return spoolOf(Util.getDigestOf(target.getUrl() + '\n' + target.getDatabase() + '\n' + target.getRetentionPolicy()));
+    }
+
+    private TargetSpool spoolOf(String name) {
+        return spools.computeIfAbsent(name, n -> new TargetSpool(new File(rootDir, n)));
+    }
+
+    /**
+     * Destination spooled batches are replayed to.
+     */
+    public interface Destination {
+
+        /**
+         * Whether the destination is reachable, replay is skipped otherwise.
+         */
+        boolean isHealthy();
+
+        /**
+         * Writes a batch of UTF-8 encoded line protocol.
+         */
+        void write(byte[] lineProtocol) throws Exception;
+    }
+
+    private final class TargetSpool {
+
+        private final File dir;
+
+        /**
+         * Segment new batches are appended to, {@code null} to start a new one on the next append.
+         */
+        private File currentSegment;
+
+        TargetSpool(File dir) {
+            this.dir = dir;
+        }
+
+        synchronized void append(byte[] payload, long createdAt) throws IOException {
+            if (currentSegment == null || currentSegment.length() >= SEGMENT_SIZE) {
+                currentSegment = newSegment();
+            }
+            ByteBuffer record = encodeRecord(createdAt, payload);
+            try (FileChannel channel = FileChannel.open(currentSegment.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                channel.force(false);
+            }
+            enforceSizeLimit();
+        }
+
+        synchronized long size() {
+            long size = 0;
+            for (File segment : listSegments()) {
+                size += segment.length();
+            }
+            return size;
+        }
+
+        int replay(Destination destination) {
+            List<File> segments;
+            synchronized (this) {
+                segments = listSegments();
+                // Seal the existing segments, batches spooled from now on go to a new one
+                currentSegment = null;
+            }
+            if (segments.isEmpty() || !destination.isHealthy()) {
+                return 0;
+            }
+
+            int replayed = 0;
+            long expiry = System.currentTimeMillis() - maxAgeMillis;
+            for (File segment : segments) {
+                List<Record> records;
+                try {
+                    records = readRecords(segment);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not read spooled InfluxDB segment " + segment, e);
+                    continue;
+                }
+                for (int i = 0; i < records.size(); i++) {
+                    Record record = records.get(i);
+                    if (record.createdAt < expiry) {
+                        continue;
+                    }
+                    try {
+                        destination.write(record.payload);
+                        replayed++;
+                    } catch (Exception e) {
+                        if (!isWorthSpooling(e)) {
+                            logger.log(Level.WARNING, "Dropping spooled InfluxDB batch rejected by the target", e);
+                            continue;
+                        }
+                        logger.log(Level.FINE, "Replay of spooled InfluxDB batches interrupted", e);
+                        keepRemaining(segment, records.subList(i, records.size()));
+                        return replayed;
+                    }
+                }
+                delete(segment);
+            }
+            return replayed;
+        }
+
+        synchronized void purgeExpired() {
+            long expiry = System.currentTimeMillis() - maxAgeMillis;
+            for (File segment : listSegments()) {
+                if (segment.lastModified() < expiry && !segment.equals(currentSegment)) {
+                    logger.log(Level.WARNING, "Dropping expired spooled InfluxDB segment {0}", segment);
+                    delete(segment);
+                }
+            }
+        }
+
+        private void enforceSizeLimit() {
+            List<File> segments = listSegments();
+            long size = 0;
+            for (File segment : segments) {
+                size += segment.length();
+            }
+            for (int i = 0; size > maxBytes && i < segments.size() - 1; i++) {
+                File oldest = segments.get(i);
+                logger.log(Level.WARNING, "InfluxDB spool {0} exceeds its size limit, dropping segment {1}",
+                        new Object[]{dir, oldest.getName()});
+                size -= oldest.length();
+                delete(oldest);
+            }
+        }
+
+        /**
+         * Replaces the segment by the records not replayed yet, unless the segment was dropped meanwhile because
+         * of the size limit or its age.
+         */
+        private synchronized void keepRemaining(File segment, List<Record> remaining) {
+            if (!segment.exists()) {
+                return;
+            }
+            File temp = new File(dir, segment.getName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Record record : remaining) {
+                    ByteBuffer buffer = encodeRecord(record.createdAt, record.payload);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not rewrite spooled InfluxDB segment " + segment, e);
+                return;
+            }
+            try {
+                Files.move(temp.toPath(), segment.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not rewrite spooled InfluxDB segment " + segment, e);
+            }
+        }
+
+        private synchronized void delete(File segment) {
+            try {
+                Files.deleteIfExists(segment.toPath());
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not delete spooled InfluxDB segment " + segment, e);
+            }
+        }
+
+        private File newSegment() throws IOException {
+            List<File> segments = listSegments();
+            long sequence = segments.isEmpty() ? 1 : sequenceOf(segments.get(segments.size() - 1)) + 1;
+            Files.createDirectories(dir.toPath());
+            return new File(dir, String.format("%016d%s", sequence, SEGMENT_SUFFIX));
+        }
+
+        private List<File> listSegments() {
+            File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+            if (files == null) {
+                return Collections.emptyList();
+            }
+            // Names are zero-padded sequence numbers, so the natural order is the spooling order
+            Arrays.sort(files);
+            return new ArrayList<>(Arrays.asList(files));
+        }
+
+        private long sequenceOf(File segment) {
+            String name = segment.getName();
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        }
+    }
+
+    /**
+     * Reads the records of a segment. A truncated record at the end, left over by a crash while appending, is ignored.
+     */
+    static List<Record> readRecords(File segment) throws IOException {
+        List<Record> records = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment.toPath()));
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            if (buffer.getInt() != RECORD_MAGIC) {
+                logger.log(Level.WARNING, "Corrupt spooled InfluxDB segment {0}, ignoring its remainder", segment);
+                break;
+            }
+            long createdAt = buffer.getLong();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            records.add(new Record(createdAt, payload));
+        }
+        return records;
+    }
+
+    /**
+     * Reads the next record of a segment.
+     *
+     * @return the record, {@code null} at the end of the segment or if the remainder is truncated or corrupt
+     */
+    static Record readRecord(DataInputStream in) throws IOException {
+        try {
+            if (in.readInt() != RECORD_MAGIC) {
+                return null;
+            }
+            long createdAt = in.readLong();
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            return new Record(createdAt, payload);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Encodes a record, ready to be written.
+     */
+    static ByteBuffer encodeRecord(long createdAt, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(RECORD_MAGIC).putLong(createdAt).putInt(payload.length).put(payload);
+        record.flip();
+        return record;
+    }
+
+    static final class Record {
+        final long createdAt;
+        final byte[] payload;
+
+        Record(long createdAt, byte[] payload) {
+            this.createdAt = createdAt;
+            this.payload = payload;
+        }
+    }
+}
@@ -31,6 +31,6 @@ public class ProjectNameRenderer implements MeasurementRenderer<Run<?, ?>> {
 
     protected String measurementName(String measurement) {
         //influx disallows "-" in measurement names.
-        return measurement.replaceAll("-", "_");
+        return measurement.replace('-', '_');
     }
 }
@@ -1,6 +1,7 @@
 package jenkinsci.plugins.influxdb;
 
 import io.jenkins.plugins.casc.ConfigurationAsCode;
+import jenkinsci.plugins.influxdb.models.LogMetricRule;
 import jenkinsci.plugins.influxdb.models.Target;
 import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
@@ -43,6 +44,41 @@ public class ConfigurationAsCodeTest {
         assertThat(target.isUsingJenkinsProxy(), equalTo(true));
         assertThat(target.isGlobalListener(), equalTo(true));
         assertThat(target.getGlobalListenerFilter(), equalTo("some filter"));
+        assertThat(target.isCompressWrites(), equalTo(true));
+        assertThat(target.getCompressionThreshold(), equalTo(2048));
+        assertThat(target.getMaxPointsPerSecond(), equalTo(20000));
+        assertThat(target.getMaxRequestsPerSecond(), equalTo(50));
+
+        assertThat(globalConfig.isAsyncPublication(), equalTo(true));
+        assertThat(globalConfig.getAsyncQueueFullPolicy(), equalTo("DROP_OLDEST"));
+        assertThat(globalConfig.getAsyncQueueSize(), equalTo(500));
+        assertThat(globalConfig.getAsyncWorkerCount(), equalTo(4));
+        assertThat(globalConfig.getChunkMaxPoints(), equalTo(1000));
+        assertThat(globalConfig.getChunkMaxSize(), equalTo(256));
+        assertThat(globalConfig.getCircuitBreakerCooldown(), equalTo(120));
+        assertThat(globalConfig.getCircuitBreakerThreshold(), equalTo(3));
+        assertThat(globalConfig.getCoalesceMaxLinger(), equalTo(500));
+        assertThat(globalConfig.getCoalesceMaxPoints(), equalTo(2000));
+        assertThat(globalConfig.getCoalesceMaxSize(), equalTo(256));
+        assertThat(globalConfig.isCoalesceWrites(), equalTo(true));
+        assertThat(globalConfig.isCollectOnAgent(), equalTo(true));
+        assertThat(globalConfig.getGeneratorTimeout(), equalTo(120));
+        assertThat(globalConfig.isLeanSchema(), equalTo(true));
+        assertThat(globalConfig.getLogMetricRules(), arrayWithSize(1));
+        assertThat(globalConfig.getLogMetricRules()[0].getName(), equalTo("warnings"));
+        assertThat(globalConfig.getLogMetricRules()[0].getPattern(), equalTo("\\[WARNING\\]"));
+        assertThat(globalConfig.getLogScanMaxSize(), equalTo(20));
+        assertThat(globalConfig.getRateLimitMaxWait(), equalTo(5));
+        assertThat(globalConfig.getRobotCaseSampleRate(), equalTo(25));
+        assertThat(globalConfig.getRobotDetailLevel(), equalTo("FAILED_CASES"));
+        assertThat(globalConfig.isSpoolFailedWrites(), equalTo(true));
+        assertThat(globalConfig.getSpoolMaxAge(), equalTo(12));
+        assertThat(globalConfig.getSpoolMaxSize(), equalTo(50));
+        assertThat(globalConfig.getTagCardinalityAction(), equalTo("HASH"));
+        assertThat(globalConfig.getTagCardinalityLimit(), equalTo(10000));
+        assertThat(globalConfig.getTargetWriteTimeout(), equalTo(10));
+        assertThat(globalConfig.getWriteRetries(), equalTo(4));
+        assertThat(globalConfig.getWriteRetryBackoff(), equalTo(500));
     }
 
     @Test
@@ -61,8 +97,40 @@ public class ConfigurationAsCodeTest {
         target.setUsingJenkinsProxy(true);
         target.setGlobalListener(true);
         target.setGlobalListenerFilter("some filter");
+        target.setCompressWrites(true);
+        target.setCompressionThreshold(2048);
+        target.setMaxPointsPerSecond(20000);
+        target.setMaxRequestsPerSecond(50);
 
         globalConfig.setTargets(Collections.singletonList(target));
+        globalConfig.setAsyncPublication(true);
+        globalConfig.setAsyncQueueFullPolicy("DROP_OLDEST");
+        globalConfig.setAsyncQueueSize(500);
+        globalConfig.setAsyncWorkerCount(4);
+        globalConfig.setChunkMaxPoints(1000);
+        globalConfig.setChunkMaxSize(256);
+        globalConfig.setCircuitBreakerCooldown(120);
+        globalConfig.setCircuitBreakerThreshold(3);
+        globalConfig.setCoalesceMaxLinger(500);
+        globalConfig.setCoalesceMaxPoints(2000);
+        globalConfig.setCoalesceMaxSize(256);
+        globalConfig.setCoalesceWrites(true);
+        globalConfig.setCollectOnAgent(true);
+        globalConfig.setGeneratorTimeout(120);
+        globalConfig.setLeanSchema(true);
+        globalConfig.setLogMetricRules(Collections.singletonList(new LogMetricRule("warnings", "\\[WARNING\\]")));
+        globalConfig.setLogScanMaxSize(20);
+        globalConfig.setRateLimitMaxWait(5);
+        globalConfig.setRobotCaseSampleRate(25);
+        globalConfig.setRobotDetailLevel("FAILED_CASES");
+        globalConfig.setSpoolFailedWrites(true);
+        globalConfig.setSpoolMaxAge(12);
+        globalConfig.setSpoolMaxSize(50);
+        globalConfig.setTagCardinalityAction("HASH");
+        globalConfig.setTagCardinalityLimit(10000);
+        globalConfig.setTargetWriteTimeout(10);
+        globalConfig.setWriteRetries(4);
+        globalConfig.setWriteRetryBackoff(500);
 
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         ConfigurationAsCode.get().export(outputStream);
@@ -0,0 +1,73 @@
+package jenkinsci.plugins.influxdb;
+
+import hudson.model.User;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.security.AccessDeniedException2;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.influxdb.models.Target;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockAuthorizationStrategy;
+
+import java.util.Collections;
+import java.util.List;
+
+public class TargetStatusLinkTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private DescriptorImpl globalConfig;
+
+    @Before
+    public void before() {
+        j.jenkins.setSecurityRealm(j.createDummySecurityRealm());
+        j.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy()
+                .grant(Jenkins.ADMINISTER).everywhere().to("admin")
+                .grant(Jenkins.READ).everywhere().to("reader"));
+        globalConfig = j.jenkins.getDescriptorByType(DescriptorImpl.class);
+        Target target = new Target();
+        target.setDescription("some description");
+        target.setUrl("http://influxdb:8086");
+        target.setMaxPointsPerSecond(100);
+        globalConfig.setTargets(Collections.singletonList(target));
+    }
+
+    @Test
+    public void administrators_see_the_state_of_the_targets() {
+        TargetStatusLink link = new TargetStatusLink();
+        try (ACLContext ignored = ACL.as(User.get("admin"))) {
+            List<TargetStatusLink.TargetStatus> statuses = link.getTargetStatuses();
+
+            Assert.assertEquals(1, statuses.size());
+            Assert.assertEquals("http://influxdb:8086", statuses.get(0).getUrl());
+            Assert.assertNull(statuses.get(0).getCircuitState());
+            Assert.assertNotNull(link.getIconFileName());
+        }
+    }
+
+    @Test
+    public void other_users_do_not_see_the_state_of_the_targets() {
+        TargetStatusLink link = new TargetStatusLink();
+        try (ACLContext ignored = ACL.as(User.get("reader"))) {
+            Assert.assertNull(link.getIconFileName());
+            try {
+                link.getTargetStatuses();
+                Assert.fail("Expected the statuses to require the administer permission");
+            } catch (AccessDeniedException2 expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void url_check_only_checks_the_syntax() {
+        Assert.assertEquals(FormValidation.Kind.OK, globalConfig.doCheckUrl("http://influxdb:8086").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, globalConfig.doCheckUrl("not a url").kind);
+    }
+}
@@ -0,0 +1,159 @@
+package jenkinsci.plugins.influxdb.encoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class LineProtocolEncoderTest {
+
+    @Test
+    public void encodes_points_like_point_line_protocol() {
+        PointBuilder point = PointBuilder.measurement("jenkins_data")
+                .tag("project_name", "my project")
+                .tag("prefix", "a,b=c")
+                .addField("build_number", 42)
+                .addField("build_time", 1234L)
+                .addField("build_result", "SUCCESS \"quoted\" back\\slash")
+                .addField("build_successful", true)
+                .addField("tests_passed_percentage", 98.5)
+                .addField("build_agent_name", "agent-\u00fc-\u20ac-\ud83d\ude00")
+                .time(1500000000000L, TimeUnit.MILLISECONDS);
+
+        String encoded = new LineProtocolEncoder().encode(point).toString();
+
+        Assert.assertEquals(point.toPoint().lineProtocol() + '\n', encoded);
+    }
+
+    @Test
+    public void encodes_measurement_and_keys_with_special_characters() {
+        PointBuilder point = PointBuilder.measurement("custom data,x")
+                .tag("tag key", "tag=value")
+                .addField("field,key", 1.0)
+                .time(1, TimeUnit.NANOSECONDS);
+
+        Assert.assertEquals(point.toPoint().lineProtocol() + '\n', new LineProtocolEncoder().encode(point).toString());
+    }
+
+    @Test
+    public void encodes_points_one_per_line() {
+        PointBuilder first = PointBuilder.measurement("a").addField("value", 1).time(1, TimeUnit.SECONDS);
+        PointBuilder second = PointBuilder.measurement("b").addField("value", 2.25).time(2, TimeUnit.SECONDS);
+
+        LineProtocolEncoder encoder = new LineProtocolEncoder().encode(Arrays.asList(first, second));
+
+        Assert.assertEquals("a value=1i 1000000000\nb value=2.25 2000000000\n", encoder.toString());
+        Assert.assertEquals(2, encoder.getPointCount());
+    }
+
+    @Test
+    public void formats_doubles_without_scientific_notation() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder();
+        encoder.startPoint("m").field("big", 1e20).field("small", 0.00001).field("negative", -3.0).endPoint();
+
+        Assert.assertEquals("m big=100000000000000000000.0,small=0.00001,negative=-3.0\n", encoder.toString());
+    }
+
+    @Test
+    public void leaves_out_values_influxdb_rejects() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder();
+        encoder.startPoint("m").tag("empty", "").field("nan", Double.NaN).field("value", 1L).endPoint(5, TimeUnit.NANOSECONDS);
+        encoder.startPoint("no_fields").field("infinite", Double.POSITIVE_INFINITY).endPoint();
+
+        Assert.assertEquals("m value=1i 5\n", encoder.toString());
+        Assert.assertEquals(1, encoder.getPointCount());
+    }
+
+    @Test
+    public void reset_empties_the_encoder() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder();
+        encoder.startPoint("m").field("value", Long.MIN_VALUE).endPoint();
+        encoder.reset();
+        encoder.startPoint("m").field("value", Long.MAX_VALUE).endPoint();
+
+        Assert.assertEquals("m value=" + Long.MAX_VALUE + "i\n", encoder.toString());
+        Assert.assertEquals(encoder.toString().length(), encoder.size());
+    }
+
+    @Test
+    public void reuses_series_key_prefix_of_project_tags() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder();
+        for (String caseName : Arrays.asList("first case", "second,case", "first case")) {
+            PointBuilder point = PointBuilder.measurement("testcase_point")
+                    .tag("prefix", "my prefix")
+                    .tag("project_name", "my=project")
+                    .tag("rf_name", caseName)
+                    .addField("rf_passed", 1)
+                    .time(1, TimeUnit.NANOSECONDS);
+            String expected = point.toPoint().lineProtocol() + '\n';
+
+            Assert.assertEquals(expected, new LineProtocolEncoder().encode(point).toString());
+            Assert.assertEquals(expected, encoder.reset().encode(point).toString());
+        }
+    }
+
+    @Test
+    public void encodes_points_whose_tags_sort_before_project_tags() {
+        PointBuilder withoutPrefix = PointBuilder.measurement("jenkins_data")
+                .tag("project_name", "project")
+                .addField("build_number", 1);
+        PointBuilder otherTagFirst = PointBuilder.measurement("jenkins_data")
+                .tag("build_result", "SUCCESS")
+                .tag("prefix", "prefix")
+                .tag("project_name", "project")
+                .addField("build_number", 1);
+        PointBuilder prefixOnly = PointBuilder.measurement("jenkins_data")
+                .tag("prefix", "prefix")
+                .tag("test_name", "test")
+                .addField("build_number", 1);
+
+        LineProtocolEncoder encoder = new LineProtocolEncoder().encode(Arrays.asList(withoutPrefix, otherTagFirst, prefixOnly));
+
+        Assert.assertEquals(withoutPrefix.toPoint().lineProtocol() + '\n' + otherTagFirst.toPoint().lineProtocol() + '\n' + prefixOnly.toPoint().lineProtocol() + '\n',
+                encoder.toString());
+    }
+
+    @Test
+    public void encodes_builders_reused_for_the_next_point() {
+        PointBuilder builder = PointBuilder.measurement("testcase_point")
+                .tag("rf_name", "first")
+                .tag("project_name", "project")
+                .addField("rf_passed", 1)
+                .addField("rf_duration", 0.25)
+                .time(1, TimeUnit.SECONDS);
+        LineProtocolEncoder encoder = new LineProtocolEncoder().encode(builder);
+        PointBuilder copy = builder.copy();
+
+        builder.reset("suite_result")
+                .tag("project_name", "project")
+                .addField("rf_total", 2L)
+                .addField("rf_total", 3L)
+                .addField("rf_missing", (Number) null);
+        encoder.encode(builder);
+
+        Assert.assertEquals("testcase_point,project_name=project,rf_name=first rf_duration=0.25,rf_passed=1i 1000000000\n"
+                + "suite_result,project_name=project rf_total=3i\n", encoder.toString());
+        Assert.assertEquals(copy.toPoint().lineProtocol(), copy.lineProtocol());
+        Assert.assertEquals(builder.toPoint().lineProtocol(), builder.lineProtocol());
+    }
+
+    @Test
+    public void writes_tags_as_the_filter_decides() {
+        PointBuilder point = PointBuilder.measurement("testcase_point")
+                .tag("prefix", "prefix")
+                .tag("project_name", "project")
+                .tag("rf_name", "my case")
+                .tag("rf_suite_name", "suite")
+                .addField("rf_passed", 1)
+                .time(1, TimeUnit.NANOSECONDS);
+
+        Assert.assertEquals("testcase_point,prefix=prefix,project_name=project,rf_suite_name=suite rf_passed=1i,rf_name=\"my case\" 1\n",
+                new LineProtocolEncoder().encode(point, (measurement, key, value) -> key.equals("rf_name") ? TagFilter.Action.FIELD : TagFilter.Action.KEEP).toString());
+        Assert.assertEquals("testcase_point,prefix=prefix,project_name=project rf_passed=1i 1\n",
+                new LineProtocolEncoder().encode(point, (measurement, key, value) -> TagFilter.Action.DROP).toString());
+
+        String hashed = new LineProtocolEncoder().encode(point, (measurement, key, value) -> TagFilter.Action.HASH).toString();
+        Assert.assertTrue(hashed, hashed.matches("testcase_point,prefix=prefix,project_name=project,rf_name=h\\d+,rf_suite_name=h\\d+ rf_passed=1i 1\n"));
+    }
+}
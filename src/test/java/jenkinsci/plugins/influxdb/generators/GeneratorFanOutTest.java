@@ -0,0 +1,194 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import hudson.model.TaskListener;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GeneratorFanOutTest {
+
+    @Test
+    public void points_are_merged_in_the_order_of_the_sources() {
+        CountDownLatch secondDone = new CountDownLatch(1);
+        List<String> points = new ArrayList<>();
+
+        GeneratorFanOut.generateAll(Arrays.asList(
+                GeneratorFanOut.source("first", null, () -> generator(() -> {
+                    // Completes after the second generator
+                    secondDone.await(10, TimeUnit.SECONDS);
+                    return new PointBuilder[]{point("first")};
+                })),
+                GeneratorFanOut.source("second", null, () -> generator(() -> {
+                    secondDone.countDown();
+                    return new PointBuilder[]{point("second"), point("third")};
+                }))), collect(points), 0, TaskListener.NULL);
+
+        Assert.assertEquals(Arrays.asList(line("first"), line("second"), line("third")), points);
+    }
+
+    @Test
+    public void slow_generators_are_left_out() {
+        List<String> points = new ArrayList<>();
+
+        GeneratorFanOut.generateAll(Arrays.asList(
+                GeneratorFanOut.source("slow", null, () -> generator(() -> {
+                    Thread.sleep(10000);
+                    return new PointBuilder[]{point("slow")};
+                })),
+                GeneratorFanOut.source("fast", null, () -> generator(() -> new PointBuilder[]{point("fast")}))),
+                collect(points), 200, TaskListener.NULL);
+
+        Assert.assertEquals(Arrays.asList(line("fast")), points);
+    }
+
+    @Test
+    public void generators_run_ahead_by_their_hand_off_queue_at_most() {
+        int pointCount = 10 * GeneratorFanOut.HAND_OFF_CAPACITY;
+        AtomicInteger generated = new AtomicInteger();
+        List<String> points = new ArrayList<>();
+        PointSink sink = point -> {
+            // Each generator holds its queue and the point it waits to put at most, the publishing thread what it holds back
+            Assert.assertTrue(generated.get() - points.size() <= 3 * GeneratorFanOut.HAND_OFF_CAPACITY + 2);
+            points.add(point.lineProtocol());
+        };
+
+        GeneratorFanOut.generateAll(Arrays.asList(
+                GeneratorFanOut.source("first", null, () -> streaming(pointCount, generated)),
+                GeneratorFanOut.source("second", null, () -> streaming(pointCount, generated))),
+                sink, 0, TaskListener.NULL);
+
+        Assert.assertEquals(2 * pointCount, points.size());
+        Assert.assertEquals(line("point0"), points.get(0));
+        Assert.assertEquals(line("point" + (pointCount - 1)), points.get(2 * pointCount - 1));
+    }
+
+    @Test
+    public void deadline_counts_from_the_start_of_each_generator() {
+        List<String> points = new ArrayList<>();
+        List<GeneratorFanOut.Source> sources = new ArrayList<>();
+        // The last generator only starts when the publishing thread is done with the first one
+        for (int i = 0; i <= GeneratorFanOut.MAX_GENERATORS_PER_PUBLICATION; i++) {
+            String name = "source" + i;
+            sources.add(GeneratorFanOut.source(name, null, () -> generator(() -> {
+                Thread.sleep(500);
+                return new PointBuilder[]{point(name)};
+            })));
+        }
+
+        GeneratorFanOut.generateAll(sources, collect(points), 800, TaskListener.NULL);
+
+        Assert.assertEquals(GeneratorFanOut.MAX_GENERATORS_PER_PUBLICATION + 1, points.size());
+    }
+
+    @Test
+    public void local_sources_are_generated_on_the_publishing_thread() {
+        Thread publishingThread = Thread.currentThread();
+        List<String> points = new ArrayList<>();
+
+        GeneratorFanOut.generateAll(Arrays.asList(
+                GeneratorFanOut.localSource("local", null, () -> generator(() -> {
+                    Assert.assertSame(publishingThread, Thread.currentThread());
+                    return new PointBuilder[]{point("local")};
+                })),
+                GeneratorFanOut.source("pooled", null, () -> generator(() -> {
+                    Assert.assertNotSame(publishingThread, Thread.currentThread());
+                    return new PointBuilder[]{point("pooled")};
+                }))), collect(points), 0, TaskListener.NULL);
+
+        Assert.assertEquals(Arrays.asList(line("local"), line("pooled")), points);
+    }
+
+    @Test
+    public void points_of_generators_failing_part_way_are_left_out() {
+        List<String> points = new ArrayList<>();
+
+        GeneratorFanOut.generateAll(Arrays.asList(
+                GeneratorFanOut.source("failing", null, () -> {
+                    PointGenerator generator = Mockito.mock(PointGenerator.class);
+                    Mockito.when(generator.hasReport()).thenReturn(true);
+                    Mockito.doAnswer(invocation -> {
+                        PointSink sink = invocation.getArgument(0);
+                        sink.accept(point("before failure"));
+                        throw new IllegalStateException("failing");
+                    }).when(generator).generate(Mockito.any(PointSink.class));
+                    return generator;
+                }),
+                GeneratorFanOut.source("working", null, () -> generator(() -> new PointBuilder[]{point("working")}))),
+                collect(points), 0, TaskListener.NULL);
+
+        Assert.assertEquals(Arrays.asList(line("working")), points);
+    }
+
+    @Test
+    public void failing_and_missing_generators_are_left_out() {
+        List<String> points = new ArrayList<>();
+
+        GeneratorFanOut.generateAll(Arrays.asList(
+                GeneratorFanOut.source("failing", null, () -> generator(() -> {
+                    throw new IllegalStateException("failing");
+                })),
+                GeneratorFanOut.source("missing", null, () -> {
+                    throw new NoClassDefFoundError("missing");
+                }),
+                GeneratorFanOut.source("empty", null, () -> Mockito.mock(PointGenerator.class)),
+                GeneratorFanOut.source("working", null, () -> generator(() -> new PointBuilder[]{point("working")}))),
+                collect(points), 0, TaskListener.NULL);
+
+        Assert.assertEquals(Arrays.asList(line("working")), points);
+    }
+
+    private interface Generation {
+        PointBuilder[] generate() throws Exception;
+    }
+
+    private static PointGenerator generator(Generation generation) {
+        PointGenerator generator = Mockito.mock(PointGenerator.class);
+        Mockito.when(generator.hasReport()).thenReturn(true);
+        Mockito.doAnswer(invocation -> {
+            PointSink sink = invocation.getArgument(0);
+            for (PointBuilder point : generation.generate()) {
+                sink.accept(point);
+            }
+            return null;
+        }).when(generator).generate(Mockito.any(PointSink.class));
+        return generator;
+    }
+
+    /**
+     * Generator passing its points on one by one, all written into the same builder, as the point generators do.
+     */
+    private static PointGenerator streaming(int pointCount, AtomicInteger generated) {
+        PointGenerator generator = Mockito.mock(PointGenerator.class);
+        Mockito.when(generator.hasReport()).thenReturn(true);
+        Mockito.doAnswer(invocation -> {
+            PointSink sink = invocation.getArgument(0);
+            PointBuilder builder = new PointBuilder();
+            for (int i = 0; i < pointCount; i++) {
+                generated.incrementAndGet();
+                sink.accept(builder.reset("point" + i).addField("value", 1).time(1, TimeUnit.MILLISECONDS));
+            }
+            return null;
+        }).when(generator).generate(Mockito.any(PointSink.class));
+        return generator;
+    }
+
+    private static PointBuilder point(String name) {
+        return PointBuilder.measurement(name).addField("value", 1).time(1, TimeUnit.MILLISECONDS);
+    }
+
+    private static String line(String name) {
+        return point(name).lineProtocol();
+    }
+
+    private static PointSink collect(List<String> points) {
+        return point -> points.add(point.lineProtocol());
+    }
+}
@@ -194,4 +194,22 @@ public class JenkinsBasePointGeneratorTest {
         assertThat(lineProtocol, containsString("jenkins_data,build_result=?,prefix=" + customPrefix + ",project_name=" + customPrefix+"_"+JOB_NAME));
 
     }
+
+    @Test
+    public void shared_context_resolves_environment_once() throws Exception {
+        BuildContext context = new BuildContext(measurementRenderer, CUSTOM_PREFIX, build, listener, true, false);
+
+        for (int i = 0; i < 2; i++) {
+            JenkinsBasePointGenerator jenkinsBasePointGenerator =
+                    new JenkinsBasePointGenerator(context, CUSTOM_PREFIX, build, currTime, listener, JENKINS_ENV_PARAMETER_FIELD, JENKINS_ENV_PARAMETER_TAG, MEASUREMENT_NAME, true);
+            String lineProtocol = jenkinsBasePointGenerator.generate()[0].lineProtocol();
+
+            assertThat(lineProtocol, containsString("jenkins_data,build_result=?,prefix=test_prefix,project_name=test_prefix_master"));
+            assertThat(lineProtocol, containsString("project_name=\"test_prefix_master\",project_path=\"folder/master\""));
+            assertThat(lineProtocol, containsString("testEnvKeyField1=\"" + JENKINS_ENV_RESOLVED_VALUE_FIELD + "\""));
+            assertThat(lineProtocol, containsString("testEnvKeyTag1=" + JENKINS_ENV_RESOLVED_VALUE_TAG));
+        }
+
+        Mockito.verify(build, Mockito.times(1)).getEnvironment(listener);
+    }
 }
@@ -0,0 +1,267 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.plugins.robot.RobotBuildAction;
+import hudson.plugins.robot.model.RobotCaseResult;
+import hudson.plugins.robot.model.RobotResult;
+import hudson.plugins.robot.model.RobotSuiteResult;
+import jenkins.model.Jenkins;
+import jenkinsci.plugins.influxdb.renderer.MeasurementRenderer;
+import jenkinsci.plugins.influxdb.renderer.ProjectNameRenderer;
+import org.influxdb.dto.Point;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RobotFrameworkPointGeneratorTest {
+
+    private static final String JOB_NAME = "master";
+    private static final int BUILD_NUMBER = 11;
+    private static final String CUSTOM_PREFIX = "test_prefix";
+
+    private static final int SUITES = 100;
+    private static final int CASES_PER_SUITE = 250;
+    private static final int TAGS = 10;
+
+    private Run<?, ?> build;
+    private MeasurementRenderer<Run<?, ?>> measurementRenderer;
+    private long currTime;
+
+    @Before
+    public void before() {
+        build = Mockito.mock(Run.class);
+        Job job = Mockito.mock(Job.class);
+        measurementRenderer = new ProjectNameRenderer(CUSTOM_PREFIX, null);
+
+        Mockito.when(build.getNumber()).thenReturn(BUILD_NUMBER);
+        Mockito.doReturn(job).when(build).getParent();
+        Mockito.when(job.getName()).thenReturn(JOB_NAME);
+        Mockito.when(job.getRelativeNameFrom(Mockito.nullable(Jenkins.class))).thenReturn("folder/" + JOB_NAME);
+
+        currTime = System.currentTimeMillis();
+    }
+
+    @Test(timeout = 30000)
+    public void largeSuiteDeduplicatesCases() {
+        List<RobotSuiteResult> suites = new ArrayList<>();
+        for (int s = 0; s < SUITES; s++) {
+            RobotSuiteResult suite = Mockito.mock(RobotSuiteResult.class, Mockito.withSettings().stubOnly());
+            Mockito.when(suite.getName()).thenReturn("suite" + s);
+            List<RobotCaseResult> cases = new ArrayList<>();
+            for (int c = 0; c < CASES_PER_SUITE; c++) {
+                String name = "case" + c;
+                cases.add(caseResult(suite, name, "suite" + s + "." + name, Collections.singletonList("tag" + (c % TAGS)), true));
+            }
+            // The same case reported twice within its suite
+            cases.add(caseResult(suite, "case0", "suite" + s + ".case0", Collections.singletonList("tag0"), true));
+            Mockito.doReturn(cases).when(suite).getAllCases();
+            suites.add(suite);
+        }
+        mockRobotResult(suites);
+
+        RobotFrameworkPointGenerator generator = new RobotFrameworkPointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, false, RobotDetailLevel.ALL_CASES, 100);
+        Point[] points = generator.generate();
+
+        Assert.assertEquals(1 + SUITES + SUITES * CASES_PER_SUITE + TAGS, points.length);
+
+        int casePoints = 0;
+        for (Point point : points) {
+            String lineProtocol = point.lineProtocol();
+            if (lineProtocol.startsWith("testcase_point,")) {
+                casePoints++;
+            } else if (lineProtocol.startsWith("tag_point,")) {
+                // Every case counted once per tag, the duplicates of case0 included
+                Assert.assertTrue(lineProtocol, lineProtocol.contains("rf_passed=" + SUITES * CASES_PER_SUITE / TAGS + "i"));
+            }
+        }
+        Assert.assertEquals(SUITES * CASES_PER_SUITE, casePoints);
+    }
+
+    @Test
+    public void casesWithSameNameInDifferentSuitesAreKept() {
+        RobotSuiteResult first = Mockito.mock(RobotSuiteResult.class);
+        RobotSuiteResult second = Mockito.mock(RobotSuiteResult.class);
+        Mockito.when(first.getName()).thenReturn("first");
+        Mockito.when(second.getName()).thenReturn("second");
+        Mockito.doReturn(Arrays.asList(caseResult(first, "login", "first.login", Collections.emptyList(), true)))
+                .when(first).getAllCases();
+        Mockito.doReturn(Arrays.asList(caseResult(second, "login", "second.login", Collections.emptyList(), true)))
+                .when(second).getAllCases();
+        mockRobotResult(Arrays.asList(first, second));
+
+        RobotFrameworkPointGenerator generator = new RobotFrameworkPointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, false, RobotDetailLevel.ALL_CASES, 100);
+        Point[] points = generator.generate();
+
+        Assert.assertEquals(5, points.length);
+    }
+
+    @Test
+    public void summaryLevelWritesOverviewOnly() {
+        mockSuiteWithFailures();
+
+        RobotFrameworkPointGenerator generator = new RobotFrameworkPointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, false, RobotDetailLevel.SUMMARY, 100);
+        Point[] points = generator.generate();
+
+        Assert.assertEquals(1, points.length);
+        Assert.assertTrue(points[0].lineProtocol().startsWith("rf_results,"));
+    }
+
+    @Test
+    public void suitesLevelWritesSuitesAndTags() {
+        mockSuiteWithFailures();
+
+        RobotFrameworkPointGenerator generator = new RobotFrameworkPointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, false, RobotDetailLevel.SUITES, 100);
+        Point[] points = generator.generate();
+
+        Assert.assertEquals(0, countPoints(points, "testcase_point,"));
+        Assert.assertEquals(1, countPoints(points, "suite_result,"));
+        Assert.assertEquals(1, countPoints(points, "tag_point,"));
+    }
+
+    @Test
+    public void failedCasesLevelSkipsPassedCases() {
+        mockSuiteWithFailures();
+
+        RobotFrameworkPointGenerator generator = new RobotFrameworkPointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, false, RobotDetailLevel.FAILED_CASES, 100);
+        Point[] points = generator.generate();
+
+        Assert.assertEquals(10, countPoints(points, "testcase_point,"));
+        for (Point point : points) {
+            if (point.lineProtocol().startsWith("tag_point,")) {
+                // Tags still count the passed cases
+                Assert.assertTrue(point.lineProtocol().contains("rf_passed=90i"));
+            }
+        }
+    }
+
+    @Test
+    public void passedCasesAreSampled() {
+        mockSuiteWithFailures();
+
+        RobotFrameworkPointGenerator generator = new RobotFrameworkPointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, false, RobotDetailLevel.ALL_CASES, 50);
+        int casePoints = countPoints(generator.generate(), "testcase_point,");
+
+        // All failed cases and about half of the passed ones
+        Assert.assertTrue(String.valueOf(casePoints), casePoints > 10 + 25 && casePoints < 10 + 65);
+
+        int sampled = 0;
+        for (int c = 0; c < 100; c++) {
+            if (c % 10 != 0 && RobotFrameworkPointGenerator.isSampled("suite.case" + c, 50)) {
+                sampled++;
+            }
+        }
+        Assert.assertEquals(10 + sampled, casePoints);
+    }
+
+    @Test
+    public void samplingIsDeterministic() {
+        for (int c = 0; c < 1000; c++) {
+            String name = "suite.case" + c;
+            Assert.assertEquals(RobotFrameworkPointGenerator.isSampled(name, 30), RobotFrameworkPointGenerator.isSampled(name, 30));
+            Assert.assertTrue(RobotFrameworkPointGenerator.isSampled(name, 100));
+            Assert.assertFalse(RobotFrameworkPointGenerator.isSampled(name, 0));
+            // Cases sampled at a lower rate are sampled at higher rates as well
+            if (RobotFrameworkPointGenerator.isSampled(name, 30)) {
+                Assert.assertTrue(RobotFrameworkPointGenerator.isSampled(name, 60));
+            }
+        }
+    }
+
+    @Test
+    public void leanSchemaLeavesOutStringFieldsOfDetailPoints() {
+        mockSuiteWithFailures();
+        BuildContext context = new BuildContext(measurementRenderer, CUSTOM_PREFIX, build, null, true, true);
+
+        RobotFrameworkPointGenerator generator = new RobotFrameworkPointGenerator(context, CUSTOM_PREFIX, build, currTime, true, RobotDetailLevel.ALL_CASES, 100);
+        Point[] points = generator.generate();
+
+        for (Point point : points) {
+            String lineProtocol = point.lineProtocol();
+            if (lineProtocol.startsWith("testcase_point,")) {
+                Assert.assertFalse(lineProtocol, lineProtocol.contains(",rf_suite_name=suite"));
+                Assert.assertTrue(lineProtocol, lineProtocol.contains("rf_suite_name=\"suite\""));
+                lineProtocol = lineProtocol.replace("rf_suite_name=\"suite\"", "");
+            }
+            if (lineProtocol.startsWith("rf_results,")) {
+                Assert.assertTrue(lineProtocol, lineProtocol.contains("project_path=\"folder/master\""));
+            } else {
+                Assert.assertFalse(lineProtocol, lineProtocol.contains("project_path="));
+                Assert.assertFalse(lineProtocol, lineProtocol.contains("=\""));
+                Assert.assertTrue(lineProtocol, lineProtocol.contains("build_number=11i"));
+            }
+        }
+    }
+
+    /**
+     * One suite of 100 cases with the same tag, every tenth case failed.
+     */
+    private void mockSuiteWithFailures() {
+        RobotSuiteResult suite = Mockito.mock(RobotSuiteResult.class);
+        Mockito.when(suite.getName()).thenReturn("suite");
+        List<RobotCaseResult> cases = new ArrayList<>();
+        for (int c = 0; c < 100; c++) {
+            cases.add(caseResult(suite, "case" + c, "suite.case" + c, Collections.singletonList("tag"), c % 10 != 0));
+        }
+        Mockito.doReturn(cases).when(suite).getAllCases();
+        mockRobotResult(Collections.singletonList(suite));
+    }
+
+    private static int countPoints(Point[] points, String prefix) {
+        int count = 0;
+        for (Point point : points) {
+            if (point.lineProtocol().startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void mockRobotResult(List<RobotSuiteResult> suites) {
+        RobotBuildAction action = Mockito.mock(RobotBuildAction.class);
+        RobotResult result = Mockito.mock(RobotResult.class);
+        Mockito.when(build.getAction(RobotBuildAction.class)).thenReturn(action);
+        Mockito.when(action.getResult()).thenReturn(result);
+        Mockito.doReturn(suites).when(result).getAllSuites();
+    }
+
+    /**
+     * Case answering its getters without stubbing, which keeps large suites cheap to set up.
+     */
+    private static RobotCaseResult caseResult(RobotSuiteResult suite, String name, String duplicateSafeName, List<String> tags, boolean passed) {
+        return Mockito.mock(RobotCaseResult.class, Mockito.withSettings().stubOnly().defaultAnswer(invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "getName":
+                    return name;
+                case "getDuplicateSafeName":
+                    return duplicateSafeName;
+                case "getParent":
+                    return suite;
+                case "getTags":
+                    return tags;
+                case "getPassed":
+                case "getCriticalPassed":
+                    return count(invocation, passed);
+                case "getFailed":
+                case "getCriticalFailed":
+                    return count(invocation, !passed);
+                default:
+                    return Answers.RETURNS_DEFAULTS.answer(invocation);
+            }
+        }));
+    }
+
+    private static Object count(InvocationOnMock invocation, boolean counted) {
+        int count = counted ? 1 : 0;
+        Class<?> type = invocation.getMethod().getReturnType();
+        return type == long.class ? (Object) (long) count : (Object) count;
+    }
+}
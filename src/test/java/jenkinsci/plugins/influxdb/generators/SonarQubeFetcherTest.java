@@ -0,0 +1,50 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SonarQubeFetcherTest {
+
+    @Test
+    public void getIssueCountsFromSeveritiesFacetTest() {
+        String output = "{\"total\":17,\"p\":1,\"ps\":1,\"issues\":[],\"facets\":[{\"property\":\"severities\",\"values\":["
+                + "{\"val\":\"MAJOR\",\"count\":10},{\"val\":\"MINOR\",\"count\":5},{\"val\":\"BLOCKER\",\"count\":2},"
+                + "{\"val\":\"CRITICAL\",\"count\":0},{\"val\":\"INFO\",\"count\":0}]}]}";
+
+        Map<String, Integer> issueCounts = SonarQubeFetcher.getIssueCounts(output);
+
+        assertEquals(Integer.valueOf(10), issueCounts.get("MAJOR"));
+        assertEquals(Integer.valueOf(5), issueCounts.get("MINOR"));
+        assertEquals(Integer.valueOf(2), issueCounts.get("BLOCKER"));
+        assertEquals(Integer.valueOf(0), issueCounts.get("CRITICAL"));
+    }
+
+    @Test
+    public void getMeasuresTest() {
+        String output = "{\"component\":{\"key\":\"project\",\"measures\":["
+                + "{\"metric\":\"ncloc\",\"value\":\"1234\"},{\"metric\":\"complexity\",\"value\":\"321\"},"
+                + "{\"metric\":\"coverage\",\"value\":\"85.3\"},{\"metric\":\"duplicated_lines_density\",\"value\":\"1.5\"},"
+                + "{\"metric\":\"sqale_index\",\"value\":\"480\"}]}}";
+
+        Map<String, Object> measures = SonarQubeFetcher.getMeasures(output);
+
+        assertEquals(1234, measures.get("lines_of_code"));
+        assertEquals(321, measures.get("complexity"));
+        assertEquals(85.3, measures.get("coverage"));
+        assertEquals(1.5, measures.get("duplicated_lines_density"));
+        assertEquals(480L, measures.get("technical_debt"));
+    }
+
+    @Test
+    public void getMeasuresWithoutValuesTest() {
+        String output = "{\"component\":{\"key\":\"project\",\"measures\":[{\"metric\":\"ncloc\",\"value\":\"10\"}]}}";
+
+        Map<String, Object> measures = SonarQubeFetcher.getMeasures(output);
+
+        assertEquals(1, measures.size());
+        assertEquals(10, measures.get("lines_of_code"));
+    }
+}
@@ -44,7 +44,7 @@ public class SonarQubePointGeneratorTest {
     public void getSonarProjectNameFromNewSonarQubeTest() throws URISyntaxException {
         String name = "org.namespace:feature%2Fmy-sub-project";
         String url = sonarUrl + "/dashboard?id=" + name;
-        SonarQubePointGenerator gen = new SonarQubePointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, null, true);
+        SonarQubePointGenerator gen = new SonarQubePointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, null, true, 0, null);
         assertEquals(name, gen.getSonarProjectName(url));
     }
 
@@ -52,7 +52,7 @@ public class SonarQubePointGeneratorTest {
     public void getSonarProjectNameTest() throws URISyntaxException {
         String name = "org.namespace:feature%2Fmy-sub-project";
         String url = sonarUrl + "/dashboard/index/" + name;
-        SonarQubePointGenerator gen = new SonarQubePointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, null, true);
+        SonarQubePointGenerator gen = new SonarQubePointGenerator(measurementRenderer, CUSTOM_PREFIX, build, currTime, null, true, 0, null);
         assertEquals(name, gen.getSonarProjectName(url));
     }
 }
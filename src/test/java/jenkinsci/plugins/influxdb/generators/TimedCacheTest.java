@@ -0,0 +1,83 @@
+package jenkinsci.plugins.influxdb.generators;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimedCacheTest {
+
+    @Test
+    public void values_are_loaded_once() throws IOException {
+        TimedCache<String> cache = new TimedCache<>(10, 1, TimeUnit.MINUTES);
+        AtomicInteger loads = new AtomicInteger();
+
+        Assert.assertEquals("value", cache.get("key", () -> {
+            loads.incrementAndGet();
+            return "value";
+        }));
+        Assert.assertEquals("value", cache.get("key", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void expired_values_are_loaded_again() throws IOException {
+        TimedCache<String> cache = new TimedCache<>(10, 0, TimeUnit.NANOSECONDS);
+
+        cache.get("key", () -> "first");
+
+        Assert.assertEquals("second", cache.get("key", () -> "second"));
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void least_recently_used_values_are_dropped() throws IOException {
+        TimedCache<String> cache = new TimedCache<>(2, 1, TimeUnit.MINUTES);
+
+        cache.get("a", () -> "a");
+        cache.get("b", () -> "b");
+        cache.get("a", () -> "not loaded");
+        cache.get("c", () -> "c");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("a", cache.get("a", () -> "reloaded"));
+        Assert.assertEquals("b reloaded", cache.get("b", () -> "b reloaded"));
+    }
+
+    @Test
+    public void failed_loads_are_not_cached() throws IOException {
+        TimedCache<String> cache = new TimedCache<>(10, 1, TimeUnit.MINUTES);
+
+        try {
+            cache.get("key", () -> {
+                throw new IOException("unreachable");
+            });
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            Assert.assertEquals("unreachable", e.getMessage());
+        }
+
+        Assert.assertEquals("value", cache.get("key", () -> "value"));
+        Assert.assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void null_values_are_not_cached() throws IOException {
+        TimedCache<String> cache = new TimedCache<>(10, 1, TimeUnit.MINUTES);
+
+        Assert.assertNull(cache.get("key", () -> null));
+
+        Assert.assertEquals("value", cache.get("key", () -> "value"));
+        Assert.assertEquals("value", cache.get("key", () -> "other"));
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,91 @@
+package jenkinsci.plugins.influxdb.global;
+
+import jenkinsci.plugins.influxdb.models.Target;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class TargetRouterTest {
+
+    @Test
+    public void routes_like_the_filters_match() {
+        Target[] targets = {
+                target("all", true, null),
+                target("folder", true, "folder/.*"),
+                target("sub folder", true, "folder/sub/.*"),
+                target("job", true, "folder/job"),
+                target("escaped", true, "my\\-folder/.*"),
+                target("regex", true, "(team-a|team-b)/.*-release"),
+                target("not global", false, ".*"),
+                target("everything", true, ".*"),
+        };
+        TargetRouter router = new TargetRouter(targets);
+
+        for (String path : Arrays.asList("folder/job", "folder/sub/job", "folder", "my-folder/x", "team-b/app-release",
+                "team-c/app-release", "other", "folder/job/nested", "")) {
+            Assert.assertEquals(path, matching(targets, path), descriptions(router.route(path)));
+        }
+    }
+
+    @Test
+    public void invalid_filters_never_match() {
+        TargetRouter router = new TargetRouter(new Target[]{target("invalid", true, "folder/(.*"), target("valid", true, "folder/.*")});
+
+        Assert.assertEquals(Collections.singletonList("valid"), descriptions(router.route("folder/(job")));
+    }
+
+    @Test
+    public void finds_targets_by_description() {
+        Target first = target("first", false, null);
+        Target second = target("second", false, null);
+        TargetRouter router = new TargetRouter(new Target[]{first, second, target("second", false, null)});
+
+        Assert.assertSame(first, router.getDefaultTarget());
+        Assert.assertSame(second, router.getTarget("second"));
+        Assert.assertNull(router.getTarget("third"));
+        Assert.assertNull(TargetRouter.empty().getDefaultTarget());
+        Assert.assertTrue(TargetRouter.empty().route("folder/job").isEmpty());
+    }
+
+    @Test
+    public void recognizes_literal_patterns() {
+        Assert.assertEquals("folder/sub", TargetRouter.literalOf("folder/sub"));
+        Assert.assertEquals("a.b-c", TargetRouter.literalOf("a\\.b\\-c"));
+        Assert.assertNull(TargetRouter.literalOf("folder/.+"));
+        Assert.assertNull(TargetRouter.literalOf("\\d+"));
+        Assert.assertNull(TargetRouter.literalOf("(?i)folder"));
+        Assert.assertNull(TargetRouter.literalOf("folder\\"));
+    }
+
+    private static List<String> matching(Target[] targets, String path) {
+        List<String> matching = new ArrayList<>();
+        for (Target target : targets) {
+            String filter = target.getGlobalListenerFilter();
+            if (target.isGlobalListener() && (filter == null || Pattern.matches(filter, path))) {
+                matching.add(target.getDescription());
+            }
+        }
+        return matching;
+    }
+
+    private static List<String> descriptions(List<Target> targets) {
+        List<String> descriptions = new ArrayList<>();
+        for (Target target : targets) {
+            descriptions.add(target.getDescription());
+        }
+        return descriptions;
+    }
+
+    private static Target target(String description, boolean globalListener, String filter) {
+        Target target = new Target();
+        target.setDescription(description);
+        target.setGlobalListener(globalListener);
+        target.setGlobalListenerFilter(filter);
+        return target;
+    }
+}
@@ -0,0 +1,93 @@
+package jenkinsci.plugins.influxdb.logs;
+
+import jenkinsci.plugins.influxdb.models.LogMetricRule;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+
+public class LogMetricsScannerTest {
+
+    private static final String LOG = "[WARNING] first warning\n"
+            + "[INFO] Tests run: 5, Failures: 1\n"
+            + "[WARNING] second warning\n"
+            + "[ERROR] something failed\n"
+            + "[INFO] Tests run: 7, Failures: 0\n"
+            + "Total time: 12.5 s\n";
+
+    @Test
+    public void counts_matching_lines_and_captures_named_groups() throws IOException {
+        LogMetricsScanner scanner = new LogMetricsScanner(Arrays.asList(
+                new LogMetricRule("warnings", "\\[WARNING\\]"),
+                new LogMetricRule("errors", "(?i)\\[error\\]"),
+                new LogMetricRule("tests", "Tests run: (?<run>\\d+), Failures: (?<failures>\\d+)"),
+                new LogMetricRule("build", "Total time: (?<time>[0-9.]+) (?<unit>\\w+)")));
+
+        Map<String, Object> fields = scanner.scan(new StringReader(LOG));
+
+        Assert.assertEquals(2, fields.get("warnings"));
+        Assert.assertEquals(1, fields.get("errors"));
+        Assert.assertEquals(2, fields.get("tests"));
+        Assert.assertEquals(7.0, fields.get("tests_run"));
+        Assert.assertEquals(0.0, fields.get("tests_failures"));
+        Assert.assertEquals(12.5, fields.get("build_time"));
+        Assert.assertEquals("s", fields.get("build_unit"));
+    }
+
+    @Test
+    public void rules_without_matches_count_zero() throws IOException {
+        LogMetricsScanner scanner = new LogMetricsScanner(Arrays.asList(new LogMetricRule("deprecations", "DEPRECATED: (?<api>.*)")));
+
+        Map<String, Object> fields = scanner.scan(new StringReader(LOG));
+
+        Assert.assertEquals(1, fields.size());
+        Assert.assertEquals(0, fields.get("deprecations"));
+    }
+
+    @Test
+    public void invalid_rules_are_skipped() {
+        LogMetricsScanner scanner = new LogMetricsScanner(Arrays.asList(new LogMetricRule("invalid", "(("), new LogMetricRule("", "x")));
+
+        Assert.assertTrue(scanner.isEmpty());
+    }
+
+    @Test
+    public void required_literals_are_found_where_safe() {
+        Assert.assertEquals("[WARNING]", LogMetricsScanner.requiredLiteral("\\[WARNING\\]"));
+        Assert.assertEquals(", Failures: ", LogMetricsScanner.requiredLiteral("Tests run: (?<run>\\d+), Failures: (?<failures>\\d+)"));
+        Assert.assertEquals("warn", LogMetricsScanner.requiredLiteral("warn(ing)?s?"));
+        Assert.assertEquals("def", LogMetricsScanner.requiredLiteral("abc?def"));
+        Assert.assertEquals("foo.bar baz", LogMetricsScanner.requiredLiteral("\\Qfoo.bar\\E baz"));
+        Assert.assertNull(LogMetricsScanner.requiredLiteral("(?i)error"));
+        Assert.assertNull(LogMetricsScanner.requiredLiteral("warning|error"));
+        Assert.assertNull(LogMetricsScanner.requiredLiteral("^\\s*$"));
+    }
+
+    @Test
+    public void arguments_of_escapes_are_no_required_literals() {
+        Assert.assertEquals("bc", LogMetricsScanner.requiredLiteral("\\x41bc"));
+        Assert.assertEquals("emoji", LogMetricsScanner.requiredLiteral("\\x{1F600}emoji"));
+        Assert.assertEquals("xyz", LogMetricsScanner.requiredLiteral("\\u0041xyz"));
+        Assert.assertEquals("abc", LogMetricsScanner.requiredLiteral("\\0101abc"));
+        Assert.assertEquals("foo", LogMetricsScanner.requiredLiteral("\\cAfoo"));
+        Assert.assertEquals("foo", LogMetricsScanner.requiredLiteral("\\pLfoo"));
+        Assert.assertEquals("bar", LogMetricsScanner.requiredLiteral("\\p{Lu}bar"));
+        Assert.assertEquals(" again", LogMetricsScanner.requiredLiteral("(?<word>\\w+) \\k<word> again"));
+        Assert.assertNull(LogMetricsScanner.requiredLiteral("\\x{263A}"));
+    }
+
+    @Test
+    public void field_types_follow_from_the_group_expressions() throws IOException {
+        LogMetricsScanner scanner = new LogMetricsScanner(Arrays.asList(
+                new LogMetricRule("version", "Version: (?<number>-?[0-9.]+) \\((?<name>[^)]+)\\)")));
+
+        Map<String, Object> fields = scanner.scan(new StringReader("Version: 12 (next)\nVersion: 1.2.3 (12)\n"));
+
+        Assert.assertEquals(2, fields.get("version"));
+        Assert.assertEquals(12.0, fields.get("version_number"));
+        Assert.assertEquals("12", fields.get("version_name"));
+    }
+}
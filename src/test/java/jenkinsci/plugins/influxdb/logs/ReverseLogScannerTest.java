@@ -0,0 +1,78 @@
+package jenkinsci.plugins.influxdb.logs;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Pattern;
+
+public class ReverseLogScannerTest {
+
+    private static final String LITERAL = "you can browse ";
+    private static final Pattern PATTERN = Pattern.compile(Pattern.quote(LITERAL) + "(.*)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void finds_the_last_matching_line() throws IOException {
+        StringBuilder log = new StringBuilder();
+        log.append("you can browse http://first\n");
+        for (int i = 0; i < 20000; i++) {
+            log.append("some build output line ").append(i).append('\n');
+        }
+        log.append("you can browse http://last\r\n");
+        log.append("Finished: SUCCESS\n");
+
+        Assert.assertEquals("http://last", new ReverseLogScanner(LITERAL, PATTERN, 0).findLast(write(log.toString())));
+    }
+
+    @Test
+    public void finds_lines_spanning_blocks_and_the_first_line() throws IOException {
+        StringBuilder log = new StringBuilder("you can browse http://first");
+        for (int i = 0; i < 10000; i++) {
+            log.append(" padding");
+        }
+        log.append('\n');
+        for (int i = 0; i < 20000; i++) {
+            log.append("some build output line ").append(i).append('\n');
+        }
+
+        String result = new ReverseLogScanner(LITERAL, PATTERN, 0).findLast(write(log.toString()));
+
+        Assert.assertNotNull(result);
+        Assert.assertTrue(result.startsWith("http://first padding"));
+        Assert.assertTrue(result.endsWith("padding"));
+    }
+
+    @Test
+    public void gives_up_after_the_maximum_number_of_bytes() throws IOException {
+        StringBuilder log = new StringBuilder("you can browse http://early\n");
+        for (int i = 0; i < 1000; i++) {
+            log.append("some build output line ").append(i).append('\n');
+        }
+        File file = write(log.toString());
+
+        Assert.assertNull(new ReverseLogScanner(LITERAL, PATTERN, 1024).findLast(file));
+        Assert.assertEquals("http://early", new ReverseLogScanner(LITERAL, PATTERN, file.length()).findLast(file));
+    }
+
+    @Test
+    public void scans_readers_from_the_start() throws IOException {
+        String log = "you can browse http://first\nother\nyou can browse http://last\nend\n";
+
+        Assert.assertEquals("http://last", new ReverseLogScanner(LITERAL, PATTERN, 0).findLast(new StringReader(log)));
+    }
+
+    private File write(String log) throws IOException {
+        File file = folder.newFile("log");
+        Files.write(file.toPath(), log.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
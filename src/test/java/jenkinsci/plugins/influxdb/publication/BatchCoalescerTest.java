@@ -0,0 +1,166 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.encoder.LineProtocolEncoder;
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
+import jenkinsci.plugins.influxdb.models.Target;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class BatchCoalescerTest {
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService writeExecutor;
+    private BlockingQueue<String> written;
+    private BatchCoalescer coalescer;
+    private Target target;
+
+    @Before
+    public void before() {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        writeExecutor = Executors.newSingleThreadExecutor();
+        written = new LinkedBlockingQueue<>();
+        coalescer = new BatchCoalescer((t, lineProtocol) -> written.add(new String(lineProtocol, StandardCharsets.UTF_8)),
+                scheduler, writeExecutor);
+        target = new Target();
+        target.setUrl("http://localhost:8086");
+        target.setDatabase("jenkins");
+        target.setRetentionPolicy("autogen");
+    }
+
+    @After
+    public void after() {
+        scheduler.shutdownNow();
+        writeExecutor.shutdownNow();
+    }
+
+    @Test
+    public void points_of_many_builds_are_written_at_once() throws Exception {
+        coalescer.configure(3, 1024 * 1024, 60000);
+
+        coalescer.add(target, lines(point("a")));
+        coalescer.add(target, lines(point("b"), point("c")));
+
+        String lineProtocol = written.poll(10, TimeUnit.SECONDS);
+        Assert.assertEquals(point("a").toPoint().lineProtocol() + '\n' + point("b").toPoint().lineProtocol() + '\n' + point("c").toPoint().lineProtocol() + '\n',
+                lineProtocol);
+        Assert.assertEquals(0, coalescer.getBufferedPointCount());
+        Assert.assertEquals(1, coalescer.getFlushCount());
+    }
+
+    @Test
+    public void buffer_is_written_after_linger_time_by_a_writer_thread() throws Exception {
+        BlockingQueue<Thread> writerThreads = new LinkedBlockingQueue<>();
+        Thread schedulerThread = scheduler.submit(Thread::currentThread).get();
+        BatchCoalescer lingering = new BatchCoalescer((t, lineProtocol) -> {
+            writerThreads.add(Thread.currentThread());
+            written.add(new String(lineProtocol, StandardCharsets.UTF_8));
+        }, scheduler, writeExecutor);
+        lingering.configure(1000, 1024 * 1024, 50);
+
+        lingering.add(target, lines(point("a")));
+
+        Assert.assertEquals(point("a").toPoint().lineProtocol() + '\n', written.poll(10, TimeUnit.SECONDS));
+        Assert.assertNotSame(schedulerThread, writerThreads.poll());
+    }
+
+    @Test
+    public void destinations_are_buffered_separately() {
+        coalescer.configure(1000, 1024 * 1024, 60000);
+        Target other = new Target();
+        other.setUrl("http://localhost:8086");
+        other.setDatabase("other");
+        other.setRetentionPolicy("autogen");
+
+        coalescer.add(target, lines(point("a")));
+        coalescer.add(other, lines(point("b")));
+        coalescer.flushAll();
+
+        List<String> batches = new ArrayList<>(written);
+        Assert.assertEquals(2, batches.size());
+        Assert.assertEquals(2, coalescer.getCoalescedPointCount());
+    }
+
+    @Test
+    public void targets_with_other_credentials_are_buffered_separately() {
+        Target other = new Target();
+        other.setUrl(target.getUrl());
+        other.setDatabase(target.getDatabase());
+        other.setRetentionPolicy(target.getRetentionPolicy());
+        other.setUsername("other");
+        List<String> usernames = new ArrayList<>();
+        BatchCoalescer recording = new BatchCoalescer((t, lineProtocol) -> usernames.add(t.getUsername()), scheduler, writeExecutor);
+
+        recording.add(target, lines(point("a")));
+        recording.add(other, lines(point("b")));
+        recording.add(target, lines(point("c")));
+        recording.flushAll();
+
+        Assert.assertEquals(2, usernames.size());
+        Assert.assertTrue(usernames.contains("other"));
+        Assert.assertTrue(usernames.contains(null));
+    }
+
+    @Test
+    public void failed_flush_is_counted() {
+        BatchCoalescer failing = new BatchCoalescer((t, lineProtocol) -> {
+            throw new Exception("Target is down");
+        }, scheduler, writeExecutor);
+        failing.configure(1000, 1024 * 1024, 60000);
+
+        failing.add(target, lines(point("a")));
+        failing.flushAll();
+
+        Assert.assertEquals(1, failing.getFailedFlushCount());
+        Assert.assertEquals(0, failing.getBufferedPointCount());
+    }
+
+    @Test
+    public void writes_on_the_calling_thread_do_not_hold_the_buffer() throws Exception {
+        ExecutorService otherBuild = Executors.newSingleThreadExecutor();
+        ExecutorService busyWriters = Executors.newSingleThreadExecutor();
+        busyWriters.shutdown();
+        AtomicReference<BatchCoalescer> busy = new AtomicReference<>();
+        busy.set(new BatchCoalescer((t, lineProtocol) -> {
+            // Another build must get at the buffer while this one writes
+            written.add(new String(lineProtocol, StandardCharsets.UTF_8) + otherBuild.submit(() -> busy.get().getBufferedPointCount()).get(10, TimeUnit.SECONDS));
+        }, scheduler, busyWriters));
+        byte[] first = lines(point("a"));
+        busy.get().configure(1000, first.length + 1, 60000);
+
+        try {
+            busy.get().add(target, first);
+            busy.get().add(target, lines(point("b")));
+        } finally {
+            otherBuild.shutdownNow();
+        }
+
+        Assert.assertEquals(point("a").toPoint().lineProtocol() + "\n1", written.poll());
+        Assert.assertEquals(0, busy.get().getFailedFlushCount());
+    }
+
+    private static byte[] lines(PointBuilder... points) {
+        return new LineProtocolEncoder().encode(Arrays.asList(points)).toByteArray();
+    }
+
+    private static PointBuilder point(String project) {
+        return PointBuilder.measurement("jenkins_data")
+                .tag("project_name", project)
+                .addField("build_number", 1)
+                .time(1L, TimeUnit.MILLISECONDS);
+    }
+}
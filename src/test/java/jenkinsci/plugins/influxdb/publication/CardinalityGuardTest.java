@@ -0,0 +1,109 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.encoder.TagFilter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+public class CardinalityGuardTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File stateFile;
+    private CardinalityGuard guard;
+
+    @Before
+    public void before() {
+        stateFile = new File(folder.getRoot(), "cardinality.bin");
+        guard = new CardinalityGuard(stateFile);
+        guard.configure(100, CardinalityGuard.GuardAction.FIELD);
+    }
+
+    @Test
+    public void estimates_distinct_values_within_a_few_percent() {
+        CardinalityGuard.TagSketch sketch = new CardinalityGuard.TagSketch("m", "k");
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 50000; i++) {
+                sketch.offer("value" + i);
+            }
+        }
+
+        Assert.assertEquals(50000, sketch.estimate(), 50000 * 0.05);
+    }
+
+    @Test
+    public void keeps_tags_within_the_limit() {
+        for (int build = 0; build < 10; build++) {
+            for (int i = 0; i < 80; i++) {
+                Assert.assertEquals(TagFilter.Action.KEEP, guard.filter("testcase_point", "rf_name", "case" + i));
+            }
+        }
+
+        Assert.assertTrue(guard.getGuardedTags().isEmpty());
+        Assert.assertEquals(80, guard.getEstimatedCardinality("testcase_point", "rf_name"), 4);
+    }
+
+    @Test
+    public void guards_tags_beyond_the_limit() {
+        for (int i = 0; i < 200; i++) {
+            guard.filter("testcase_point", "rf_name", "case" + i);
+        }
+        guard.filter("testcase_point", "rf_suite_name", "suite");
+
+        Assert.assertEquals(Collections.singletonList("testcase_point.rf_name"), guard.getGuardedTags());
+        // Values seen before are guarded as well, a tag is handled the same way for all points
+        Assert.assertEquals(TagFilter.Action.FIELD, guard.filter("testcase_point", "rf_name", "case0"));
+        Assert.assertEquals(TagFilter.Action.KEEP, guard.filter("testcase_point", "rf_suite_name", "suite"));
+        Assert.assertEquals(TagFilter.Action.KEEP, guard.filter("tag_point", "rf_name", "case0"));
+    }
+
+    @Test
+    public void guarded_tags_survive_a_restart() {
+        for (int i = 0; i < 200; i++) {
+            guard.filter("perfpublisher_test", "test_name", "test" + i);
+        }
+        guard.filter("perfpublisher_test", "other", "value");
+        guard.saveIfChanged(true);
+
+        CardinalityGuard restarted = new CardinalityGuard(stateFile);
+        restarted.configure(100, CardinalityGuard.GuardAction.DROP);
+
+        Assert.assertEquals(Collections.singletonList("perfpublisher_test.test_name"), restarted.getGuardedTags());
+        Assert.assertEquals(TagFilter.Action.DROP, restarted.filter("perfpublisher_test", "test_name", "new test"));
+        Assert.assertEquals(1, restarted.getEstimatedCardinality("perfpublisher_test", "other"));
+    }
+
+    @Test
+    public void reset_tags_are_counted_anew() {
+        for (int i = 0; i < 200; i++) {
+            guard.filter("testcase_point", "rf_name", "case" + i);
+        }
+        guard.filter("testcase_point", "rf_suite_name", "suite");
+
+        Assert.assertEquals(Collections.singletonList("testcase_point.rf_name"), guard.resetGuardedTags());
+
+        Assert.assertTrue(guard.getGuardedTags().isEmpty());
+        Assert.assertEquals(TagFilter.Action.KEEP, guard.filter("testcase_point", "rf_name", "case0"));
+        Assert.assertEquals(1, guard.getEstimatedCardinality("testcase_point", "rf_name"));
+        Assert.assertEquals(1, guard.getEstimatedCardinality("testcase_point", "rf_suite_name"));
+        Assert.assertTrue(new CardinalityGuard(stateFile).getGuardedTags().isEmpty());
+        Assert.assertTrue(guard.resetGuardedTags().isEmpty());
+    }
+
+    @Test
+    public void disabled_guard_keeps_all_tags() {
+        guard.configure(0, CardinalityGuard.GuardAction.DROP);
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals(TagFilter.Action.KEEP, guard.filter("testcase_point", "rf_name", "case" + i));
+        }
+
+        Assert.assertNull(guard.forPublication());
+        Assert.assertEquals(0, guard.getTrackedTagCount());
+    }
+}
@@ -0,0 +1,98 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import hudson.ProxyConfiguration;
+import jenkinsci.plugins.influxdb.models.Target;
+import okhttp3.OkHttpClient;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class InfluxDbClientRegistryTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private InfluxDbClientRegistry registry;
+
+    @Before
+    public void before() {
+        registry = new InfluxDbClientRegistry();
+    }
+
+    @Test
+    public void targets_with_the_same_connection_settings_share_a_client() throws Exception {
+        OkHttpClient client = registry.getHttpClient(target("http://influxdb:8086", "user", "secret"));
+
+        Assert.assertSame(client, registry.getHttpClient(target("http://influxdb:8086", "user", "secret")));
+        Assert.assertEquals(1, registry.getClientCount());
+        Assert.assertEquals(1, registry.getHitCount());
+    }
+
+    @Test
+    public void credentials_are_not_part_of_the_key() throws Exception {
+        OkHttpClient client = registry.getHttpClient(target("http://influxdb:8086", "user", "secret"));
+
+        Assert.assertSame(client, registry.getHttpClient(target("http://influxdb:8086", "other user", "other secret")));
+        Assert.assertSame(client, registry.getHttpClient(target("http://influxdb:8086", "", "")));
+        Assert.assertNotSame(client, registry.getHttpClient(target("http://other-influxdb:8086", "user", "secret")));
+        Assert.assertEquals(2, registry.getClientCount());
+    }
+
+    @Test
+    public void jenkins_proxy_is_part_of_the_key_of_targets_using_it() throws Exception {
+        Target proxied = target("http://influxdb:8086", "", "");
+        proxied.setUsingJenkinsProxy(true);
+        Target direct = target("http://influxdb:8086", "", "");
+        j.jenkins.proxy = new ProxyConfiguration("proxy", 3128, "proxy user", "proxy secret", null);
+        OkHttpClient proxiedClient = registry.getHttpClient(proxied);
+        OkHttpClient directClient = registry.getHttpClient(direct);
+        Assert.assertNotSame(proxiedClient, directClient);
+
+        j.jenkins.proxy = new ProxyConfiguration("proxy", 3128, "proxy user", "other proxy secret", null);
+
+        Assert.assertNotSame(proxiedClient, registry.getHttpClient(proxied));
+        Assert.assertSame(directClient, registry.getHttpClient(direct));
+    }
+
+    @Test
+    public void clients_share_the_connection_pool_and_dispatcher() throws Exception {
+        OkHttpClient client = registry.getHttpClient(target("http://influxdb:8086", "", ""));
+        OkHttpClient otherClient = registry.getHttpClient(target("http://other-influxdb:8086", "", ""));
+
+        Assert.assertSame(client.connectionPool(), otherClient.connectionPool());
+        Assert.assertSame(client.dispatcher(), otherClient.dispatcher());
+    }
+
+    @Test
+    public void reconfiguration_drops_the_clients_of_changed_targets() throws Exception {
+        Target kept = target("http://influxdb:8086", "user", "secret");
+        Target changed = target("http://other-influxdb:8086", "user", "secret");
+        OkHttpClient keptClient = registry.getHttpClient(kept);
+        OkHttpClient changedClient = registry.getHttpClient(changed);
+
+        changed.setUrl("http://new-influxdb:8086");
+        registry.retainTargets(Arrays.asList(kept, changed));
+
+        Assert.assertEquals(1, registry.getClientCount());
+        Assert.assertSame(keptClient, registry.getHttpClient(kept));
+        Assert.assertNotSame(changedClient, registry.getHttpClient(changed));
+
+        registry.retainTargets(Collections.emptyList());
+        Assert.assertEquals(0, registry.getClientCount());
+        // The shared dispatcher keeps running for the writes of other targets
+        Assert.assertFalse(keptClient.dispatcher().executorService().isShutdown());
+    }
+
+    private static Target target(String url, String username, String password) {
+        Target target = new Target();
+        target.setUrl(url);
+        target.setUsername(username);
+        target.setPassword(password);
+        return target;
+    }
+}
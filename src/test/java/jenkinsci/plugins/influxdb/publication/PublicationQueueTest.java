@@ -0,0 +1,164 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PublicationQueueTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> published = new CopyOnWriteArrayList<>();
+    private final List<String> spooled = new CopyOnWriteArrayList<>();
+    private PublicationQueue queue;
+
+    @Before
+    public void before() {
+        queue = new PublicationQueue();
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        release.countDown();
+        queue.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void block_policy_holds_the_caller_until_there_is_room() throws Exception {
+        queue.configure(1, 1, QueueFullPolicy.BLOCK);
+        submitBlocking("first");
+        submit("second");
+
+        Thread caller = new Thread(() -> submit("third"));
+        caller.start();
+        caller.join(200);
+        Assert.assertTrue(caller.isAlive());
+
+        release.countDown();
+        caller.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertFalse(caller.isAlive());
+        queue.shutdown(10, TimeUnit.SECONDS);
+        Assert.assertEquals(3, published.size());
+        Assert.assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void drop_newest_policy_drops_the_submitted_publication() throws Exception {
+        queue.configure(1, 1, QueueFullPolicy.DROP_NEWEST);
+        submitBlocking("first");
+        submit("second");
+        submit("third");
+
+        release.countDown();
+        queue.shutdown(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, queue.getDroppedCount());
+        Assert.assertTrue(published.contains("second"));
+        Assert.assertFalse(published.contains("third"));
+        Assert.assertEquals(Collections.singletonList("third"), spooled);
+    }
+
+    @Test
+    public void drop_oldest_policy_drops_the_queued_publication() throws Exception {
+        queue.configure(1, 1, QueueFullPolicy.DROP_OLDEST);
+        submitBlocking("first");
+        submit("second");
+        submit("third");
+
+        release.countDown();
+        queue.shutdown(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, queue.getDroppedCount());
+        Assert.assertFalse(published.contains("second"));
+        Assert.assertTrue(published.contains("third"));
+    }
+
+    @Test
+    public void dropped_oldest_publication_is_spooled() throws Exception {
+        queue.configure(1, 1, QueueFullPolicy.DROP_OLDEST);
+        submitBlocking("first");
+        submit("second");
+        submit("third");
+
+        Assert.assertEquals(Collections.singletonList("second"), spooled);
+
+        release.countDown();
+        queue.shutdown(10, TimeUnit.SECONDS);
+        Assert.assertEquals(Arrays.asList("first", "third"), published);
+        Assert.assertEquals(Collections.singletonList("second"), spooled);
+    }
+
+    @Test
+    public void shutdown_awaits_the_pools_retired_by_a_reconfiguration() throws Exception {
+        queue.configure(10, 1, QueueFullPolicy.BLOCK);
+        submitBlocking("retired");
+        submit("queued in retired pool");
+        queue.configure(10, 2, QueueFullPolicy.BLOCK);
+        submit("current");
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        }).start();
+        queue.shutdown(10, TimeUnit.SECONDS);
+
+        Assert.assertTrue(published.contains("retired"));
+        Assert.assertTrue(published.contains("queued in retired pool"));
+        Assert.assertTrue(published.contains("current"));
+        Assert.assertTrue(spooled.isEmpty());
+    }
+
+    @Test
+    public void publications_cut_off_by_the_shutdown_are_spooled() throws Exception {
+        queue.configure(10, 1, QueueFullPolicy.BLOCK);
+        submitBlocking("running");
+        submit("queued");
+
+        queue.shutdown(100, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(published.isEmpty());
+        Assert.assertTrue(spooled.contains("running"));
+        Assert.assertTrue(spooled.contains("queued"));
+        Assert.assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void publications_submitted_after_the_shutdown_are_spooled() throws Exception {
+        queue.shutdown(10, TimeUnit.SECONDS);
+        submit("late");
+
+        Assert.assertTrue(published.isEmpty());
+        Assert.assertEquals(1, spooled.size());
+        Assert.assertEquals(0, queue.getActiveWorkers());
+    }
+
+    private void submit(String name) {
+        queue.submit(() -> published.add(name), () -> spooled.add(name));
+    }
+
+    /**
+     * Submits a publication which occupies its worker until released.
+     */
+    private void submitBlocking(String name) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        queue.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+                published.add(name);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, () -> spooled.add(name));
+        started.await(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,79 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.encoder.PointBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class PublicationSinkTest {
+
+    @Test
+    public void chunks_are_handed_over_once_full() {
+        List<String> chunks = new ArrayList<>();
+        String line = point(0).toPoint().lineProtocol() + '\n';
+        PublicationSink sink = new PublicationSink(100, line.length() * 2, chunk -> chunks.add(new String(chunk, StandardCharsets.UTF_8)));
+
+        for (int i = 0; i < 5; i++) {
+            sink.accept(point(i));
+        }
+        Assert.assertEquals(2, chunks.size());
+
+        sink.finish();
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(5, sink.getPointCount());
+        for (String chunk : chunks) {
+            Assert.assertTrue(chunk.endsWith("\n"));
+            Assert.assertTrue(chunk.length() <= line.length() * 2);
+        }
+        Assert.assertEquals(point(4).toPoint().lineProtocol() + '\n', chunks.get(2));
+    }
+
+    @Test
+    public void chunks_are_bounded_by_point_count() {
+        List<String> chunks = new ArrayList<>();
+        PublicationSink sink = new PublicationSink(2, Integer.MAX_VALUE, chunk -> chunks.add(new String(chunk, StandardCharsets.UTF_8)));
+
+        for (int i = 0; i < 4; i++) {
+            sink.accept(point(i));
+        }
+        sink.finish();
+
+        Assert.assertEquals(2, chunks.size());
+        Assert.assertEquals(point(2).toPoint().lineProtocol() + '\n' + point(3).toPoint().lineProtocol() + '\n', chunks.get(1));
+    }
+
+    @Test
+    public void chunks_do_not_exceed_size_limit() {
+        List<String> chunks = new ArrayList<>();
+        String line = point(0).toPoint().lineProtocol() + '\n';
+        PublicationSink sink = new PublicationSink(100, line.length() * 2 - 1, chunk -> chunks.add(new String(chunk, StandardCharsets.UTF_8)));
+
+        for (int i = 0; i < 3; i++) {
+            sink.accept(point(i));
+        }
+        sink.finish();
+
+        Assert.assertEquals(3, chunks.size());
+    }
+
+    @Test
+    public void nothing_is_handed_over_without_points() {
+        List<byte[]> chunks = new ArrayList<>();
+        PublicationSink sink = new PublicationSink(PublicationSink.DEFAULT_CHUNK_POINTS, PublicationSink.DEFAULT_CHUNK_SIZE_KB * 1024, chunks::add);
+
+        sink.finish();
+
+        Assert.assertTrue(chunks.isEmpty());
+    }
+
+    private static PointBuilder point(int index) {
+        return PointBuilder.measurement("jenkins_data")
+                .tag("project_name", "project")
+                .addField("build_number", index)
+                .time(1000 + index, TimeUnit.MILLISECONDS);
+    }
+}
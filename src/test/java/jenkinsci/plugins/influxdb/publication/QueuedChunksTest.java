@@ -0,0 +1,78 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class QueuedChunksTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void chunks_beyond_the_memory_limit_are_spilled_in_order() throws Exception {
+        QueuedChunks chunks = new QueuedChunks(20, folder.getRoot());
+        chunks.accept(bytes("m value=1i 1"));
+        Assert.assertNull(chunks.getSpillFile());
+        chunks.accept(bytes("m value=2i 2"));
+        chunks.accept(bytes("m value=3i 3"));
+        File spillFile = chunks.getSpillFile();
+        Assert.assertNotNull(spillFile);
+
+        List<String> firstRead = read(chunks);
+        List<String> secondRead = read(chunks);
+
+        List<String> expected = Arrays.asList("m value=1i 1", "m value=2i 2", "m value=3i 3");
+        Assert.assertEquals(expected, firstRead);
+        Assert.assertEquals(expected, secondRead);
+        Assert.assertEquals(2, WriteSpool.readRecords(spillFile).size());
+    }
+
+    @Test
+    public void discarding_deletes_the_spilled_chunks() throws Exception {
+        QueuedChunks chunks = new QueuedChunks(1, folder.getRoot());
+        chunks.accept(bytes("m value=1i 1"));
+        chunks.accept(bytes("m value=2i 2"));
+        File spillFile = chunks.getSpillFile();
+
+        chunks.discard();
+
+        Assert.assertFalse(spillFile.exists());
+        Assert.assertTrue(read(chunks).isEmpty());
+    }
+
+    @Test
+    public void spilled_chunks_are_kept_while_read() throws Exception {
+        QueuedChunks chunks = new QueuedChunks(1, folder.getRoot());
+        chunks.accept(bytes("m value=1i 1"));
+        chunks.accept(bytes("m value=2i 2"));
+        chunks.accept(bytes("m value=3i 3"));
+        File spillFile = chunks.getSpillFile();
+
+        List<String> read = new ArrayList<>();
+        chunks.forEach(chunk -> {
+            chunks.discard();
+            read.add(new String(chunk, StandardCharsets.UTF_8));
+        });
+
+        Assert.assertEquals(Arrays.asList("m value=1i 1", "m value=2i 2", "m value=3i 3"), read);
+        Assert.assertFalse(spillFile.exists());
+    }
+
+    private static byte[] bytes(String lineProtocol) {
+        return lineProtocol.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> read(QueuedChunks chunks) {
+        List<String> read = new ArrayList<>();
+        chunks.forEach(chunk -> read.add(new String(chunk, StandardCharsets.UTF_8)));
+        return read;
+    }
+}
@@ -0,0 +1,84 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.models.Target;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private RateLimiter rateLimiter;
+
+    @Before
+    public void before() {
+        rateLimiter = new RateLimiter(now::get);
+        rateLimiter.configure(10);
+    }
+
+    @Test
+    public void targets_without_limits_are_not_throttled() throws Exception {
+        Target target = target(0, 0);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(0, rateLimiter.reserve(target, 5000));
+        }
+
+        Assert.assertNull(rateLimiter.describe(target.getUrl()));
+        Assert.assertEquals(0, rateLimiter.getAdmittedRequestCount());
+    }
+
+    @Test
+    public void points_beyond_the_rate_wait_for_their_tokens() throws Exception {
+        Target target = target(1000, 0);
+
+        Assert.assertEquals(0, rateLimiter.reserve(target, 1000));
+        // A chunk larger than a second of points waits for a full bucket, the next write pays off the debt
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), rateLimiter.reserve(target, 3000));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(3001), rateLimiter.reserve(target, 1));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        Assert.assertEquals(0, rateLimiter.reserve(target, 500));
+        Assert.assertEquals(2, rateLimiter.getThrottledWriteCount());
+        Assert.assertEquals(4501, rateLimiter.getAdmittedPointCount());
+    }
+
+    @Test
+    public void requests_beyond_the_rate_wait_for_their_tokens() throws Exception {
+        Target target = target(0, 2);
+
+        Assert.assertEquals(0, rateLimiter.reserve(target, 1));
+        Assert.assertEquals(0, rateLimiter.reserve(target, 1));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(500), rateLimiter.reserve(target, 1));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), rateLimiter.reserve(target, 1));
+        Assert.assertEquals("Rate limit: 200% of 2 requests/s in use, 2 writes throttled", rateLimiter.describe(target.getUrl()));
+    }
+
+    @Test
+    public void writes_waiting_too_long_are_rejected_without_taking_tokens() throws Exception {
+        rateLimiter.configure(1);
+        Target target = target(100, 0);
+        rateLimiter.reserve(target, 200);
+
+        try {
+            rateLimiter.reserve(target, 1);
+            Assert.fail("Throttling expected");
+        } catch (RateLimiter.ThrottledException e) {
+            Assert.assertTrue(WriteSpool.isWorthSpooling(e));
+        }
+        Assert.assertEquals(1, rateLimiter.getRejectedWriteCount());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(510), rateLimiter.reserve(target, 1));
+    }
+
+    private static Target target(int pointsPerSecond, int requestsPerSecond) {
+        Target target = new Target();
+        target.setUrl("http://influxdb:8086");
+        target.setMaxPointsPerSecond(pointsPerSecond);
+        target.setMaxRequestsPerSecond(requestsPerSecond);
+        return target;
+    }
+}
@@ -0,0 +1,110 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.models.Target;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class RequestCompressionTest {
+
+    @Test
+    public void payloads_are_not_compressed_unless_enabled() throws IOException {
+        RequestCompression compression = new RequestCompression();
+        byte[] payload = lines(1000);
+
+        Assert.assertNull(compression.compress(target("http://disabled", false, 0), payload, 0, payload.length));
+        Assert.assertEquals(0, compression.getSentBytes());
+    }
+
+    @Test
+    public void small_payloads_are_sent_as_they_are() throws IOException {
+        RequestCompression compression = new RequestCompression();
+        byte[] payload = lines(10);
+        Target target = target("http://small", true, payload.length + 1);
+
+        Assert.assertNull(compression.compress(target, payload, 0, payload.length));
+        RequestCompression.CompressionStats stats = compression.getStats().get("http://small");
+        Assert.assertEquals(payload.length, stats.getUncompressedBytes());
+        Assert.assertEquals(payload.length, stats.getSentBytes());
+        Assert.assertEquals(1, stats.getUncompressedRequestCount());
+    }
+
+    @Test
+    public void large_payloads_are_gzip_compressed() throws IOException {
+        RequestCompression compression = new RequestCompression();
+        byte[] payload = lines(1000);
+
+        byte[] compressed = compression.compress(target("http://large", true, 0), payload, 0, payload.length);
+
+        Assert.assertNotNull(compressed);
+        Assert.assertTrue(compressed.length < payload.length / 4);
+        Assert.assertArrayEquals(payload, gunzip(compressed));
+        Assert.assertEquals(payload.length, compression.getUncompressedBytes());
+        Assert.assertEquals(compressed.length, compression.getSentBytes());
+        Assert.assertEquals(1, compression.getCompressedRequestCount());
+    }
+
+    @Test
+    public void threshold_is_raised_when_compression_does_not_pay_off() throws IOException {
+        RequestCompression compression = new RequestCompression();
+        byte[] random = new byte[8192];
+        new Random(42).nextBytes(random);
+        Target target = target("http://random", true, 0);
+
+        Assert.assertNotNull(compression.compress(target, random, 0, random.length));
+        Assert.assertEquals(2 * random.length, compression.getStats().get("http://random").getThreshold());
+        Assert.assertNull(compression.compress(target, random, 0, random.length));
+
+        byte[] payload = lines(2000);
+        Assert.assertNotNull(compression.compress(target, payload, 0, payload.length));
+        Assert.assertEquals(random.length, compression.getStats().get("http://random").getThreshold());
+    }
+
+    @Test
+    public void shared_payloads_are_compressed_once_for_all_targets() throws IOException {
+        RequestCompression compression = new RequestCompression();
+        EncodedPayload payload = new EncodedPayload(lines(1000));
+
+        byte[] first = compression.compress(target("http://first", true, 0), payload);
+        byte[] second = compression.compress(target("http://second", true, 0), payload);
+
+        Assert.assertSame(first, second);
+        Assert.assertNull(compression.compress(target("http://third", false, 0), payload));
+        Assert.assertEquals(2, compression.getCompressedRequestCount());
+        Assert.assertEquals(first.length, compression.getStats().get("http://second").getSentBytes());
+    }
+
+    private static Target target(String url, boolean compressWrites, int threshold) {
+        Target target = new Target();
+        target.setUrl(url);
+        target.setCompressWrites(compressWrites);
+        target.setCompressionThreshold(threshold);
+        return target;
+    }
+
+    private static byte[] lines(int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append("jenkins_data,project_name=project build_number=").append(i).append("i 1000\n");
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
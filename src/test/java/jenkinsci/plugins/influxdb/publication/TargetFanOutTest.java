@@ -0,0 +1,77 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.InfluxReportException;
+import jenkinsci.plugins.influxdb.models.Target;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+public class TargetFanOutTest {
+
+    private final Target first = target("first");
+    private final Target second = target("second");
+    private final Target third = target("third");
+    private final List<Target> targets = Arrays.asList(first, second, third);
+
+    @Test
+    public void targets_are_written_concurrently() throws Exception {
+        // Only completes if all writes run at the same time
+        CyclicBarrier barrier = new CyclicBarrier(targets.size());
+
+        PublicationResult result = TargetFanOut.writeAll(targets, TimeUnit.SECONDS.toMillis(10),
+                target -> barrier.await(10, TimeUnit.SECONDS));
+
+        Assert.assertTrue(result.getFailures().toString(), result.isSuccessful());
+        Assert.assertEquals(3, result.getTargetCount());
+    }
+
+    @Test
+    public void slow_target_runs_into_the_deadline() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        PublicationResult result = TargetFanOut.writeAllAsync(targets, 200, target -> {
+            if (target == second) {
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        }).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, result.getFailures().size());
+        Assert.assertTrue(result.getFailures().get(second) instanceof InfluxReportException);
+        Assert.assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failed_targets_do_not_fail_the_others() {
+        CountDownLatch written = new CountDownLatch(2);
+
+        PublicationResult result = TargetFanOut.writeAll(targets, 0, target -> {
+            if (target == third) {
+                throw new ConnectException("Connection refused");
+            }
+            written.countDown();
+        });
+
+        Assert.assertEquals(0, written.getCount());
+        Assert.assertFalse(result.isSuccessful());
+        Assert.assertEquals(1, result.getFailures().size());
+        Assert.assertTrue(result.getFailures().get(third) instanceof IOException);
+    }
+
+    private static Target target(String description) {
+        Target target = new Target();
+        target.setDescription(description);
+        target.setUrl("http://" + description + ":8086");
+        return target;
+    }
+}
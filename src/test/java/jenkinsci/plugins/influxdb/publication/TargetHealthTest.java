@@ -0,0 +1,151 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.models.Target;
+import org.influxdb.InfluxDBException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TargetHealthTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private TargetHealth health;
+    private Target target;
+
+    @Before
+    public void before() {
+        health = new TargetHealth(now::get);
+        health.configure(2, 0, 3, 60);
+        target = new Target();
+        target.setUrl("http://influxdb:8086");
+    }
+
+    @Test
+    public void transient_failures_are_retried() throws IOException {
+        health.write(target, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ConnectException("Connection refused");
+            }
+        });
+
+        Assert.assertEquals(3, attempts.get());
+        Assert.assertEquals(2, health.getRetryCount());
+        Assert.assertNull(health.describe(target.getUrl()));
+    }
+
+    @Test
+    public void rejected_writes_are_not_retried() throws IOException {
+        try {
+            health.write(target, () -> {
+                attempts.incrementAndGet();
+                throw InfluxDBException.buildExceptionForErrorState("field type conflict");
+            });
+            Assert.fail("Rejection expected");
+        } catch (InfluxDBException e) {
+            Assert.assertFalse(e.isRetryWorth());
+        }
+
+        Assert.assertEquals(1, attempts.get());
+        Assert.assertEquals(0, health.getRetryCount());
+    }
+
+    @Test
+    public void circuit_opens_after_failures_in_a_row_and_closes_after_a_successful_trial() throws IOException {
+        health.configure(0, 0, 3, 60);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertFalse(health.isOpen(target));
+            failingWrite();
+        }
+        Assert.assertTrue(health.isOpen(target));
+        Assert.assertEquals(1, health.getOpenCircuitCount());
+        Assert.assertTrue(health.describe(target.getUrl()), health.describe(target.getUrl()).startsWith("Circuit open after 3 failed writes"));
+
+        try {
+            health.write(target, attempts::incrementAndGet);
+            Assert.fail("Circuit open expected");
+        } catch (TargetHealth.CircuitOpenException e) {
+            Assert.assertTrue(WriteSpool.isWorthSpooling(e));
+        }
+        Assert.assertEquals(3, attempts.get());
+        Assert.assertEquals(1, health.getRejectedWriteCount());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        health.write(target, attempts::incrementAndGet);
+
+        Assert.assertEquals(4, attempts.get());
+        Assert.assertFalse(health.isOpen(target));
+        Assert.assertEquals(1, health.getOpenCount());
+    }
+
+    @Test
+    public void failed_trial_keeps_the_circuit_open() {
+        health.configure(0, 0, 1, 60);
+        failingWrite();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        failingWrite();
+
+        Assert.assertTrue(health.isOpen(target));
+        Assert.assertEquals(2, attempts.get());
+        Assert.assertEquals(1, health.getOpenCount());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        try {
+            health.write(target, attempts::incrementAndGet);
+            Assert.fail("Circuit open expected");
+        } catch (IOException e) {
+            Assert.assertTrue(e instanceof TargetHealth.CircuitOpenException);
+        }
+    }
+
+    @Test
+    public void throttled_attempts_are_not_retried_and_do_not_count_as_failures() throws IOException {
+        health.configure(2, 0, 1, 60);
+        failingWrite();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        try {
+            health.write(target, () -> {
+                attempts.incrementAndGet();
+                throw new RateLimiter.ThrottledException(target, TimeUnit.SECONDS.toNanos(10));
+            });
+            Assert.fail("Throttling expected");
+        } catch (RateLimiter.ThrottledException e) {
+            Assert.assertTrue(WriteSpool.isWorthSpooling(e));
+        }
+        Assert.assertEquals(4, attempts.get());
+        Assert.assertEquals(2, health.getRetryCount());
+
+        // The throttled trial was not sent, so the next write is the trial
+        health.write(target, attempts::incrementAndGet);
+
+        Assert.assertEquals(5, attempts.get());
+        Assert.assertFalse(health.isOpen(target));
+    }
+
+    @Test
+    public void backoff_stays_within_the_doubled_ceiling() {
+        health.configure(3, 100, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(health.backoffMillis(0) <= 100);
+            Assert.assertTrue(health.backoffMillis(2) <= 400);
+            Assert.assertTrue(health.backoffMillis(40) <= TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private void failingWrite() {
+        try {
+            health.write(target, () -> {
+                attempts.incrementAndGet();
+                throw new ConnectException("Connection refused");
+            });
+            Assert.fail("Failure expected");
+        } catch (IOException e) {
+            Assert.assertTrue(e instanceof ConnectException);
+        }
+    }
+}
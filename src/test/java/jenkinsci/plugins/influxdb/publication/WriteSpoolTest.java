@@ -0,0 +1,181 @@
+package jenkinsci.plugins.influxdb.publication;
+
+import jenkinsci.plugins.influxdb.models.Target;
+import org.influxdb.InfluxDBException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class WriteSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WriteSpool spool;
+    private Target target;
+
+    @Before
+    public void before() {
+        spool = new WriteSpool(folder.getRoot());
+        target = new Target();
+        target.setUrl("http://localhost:8086");
+        target.setDatabase("jenkins");
+        target.setRetentionPolicy("autogen");
+    }
+
+    @Test
+    public void replays_in_spooling_order() throws Exception {
+        spool.append(target, "m,project_name=a value=1i 1");
+        spool.append(target, "m,project_name=b value=2i 2");
+        spool.append(target, "m,project_name=c value=3i 3");
+
+        RecordingDestination destination = new RecordingDestination(true, Integer.MAX_VALUE);
+        Assert.assertEquals(3, spool.replay(target, destination));
+        Assert.assertEquals(Arrays.asList("m,project_name=a value=1i 1", "m,project_name=b value=2i 2", "m,project_name=c value=3i 3"),
+                destination.written);
+        Assert.assertFalse(spool.hasSpooledData(target));
+    }
+
+    @Test
+    public void nothing_is_replayed_to_unhealthy_destination() throws Exception {
+        spool.append(target, "m value=1i 1");
+
+        Assert.assertEquals(0, spool.replay(target, new RecordingDestination(false, Integer.MAX_VALUE)));
+        Assert.assertTrue(spool.hasSpooledData(target));
+    }
+
+    @Test
+    public void failed_replay_keeps_remaining_batches() throws Exception {
+        spool.append(target, "m value=1i 1");
+        spool.append(target, "m value=2i 2");
+        spool.append(target, "m value=3i 3");
+
+        Assert.assertEquals(1, spool.replay(target, new RecordingDestination(true, 1)));
+
+        RecordingDestination destination = new RecordingDestination(true, Integer.MAX_VALUE);
+        Assert.assertEquals(2, spool.replay(target, destination));
+        Assert.assertEquals(Arrays.asList("m value=2i 2", "m value=3i 3"), destination.written);
+    }
+
+    @Test
+    public void rejected_batches_are_dropped() throws Exception {
+        spool.append(target, "m value=1i 1");
+        spool.append(target, "m value=\"conflicting\" 2");
+        spool.append(target, "m value=3i 3");
+
+        List<String> written = new ArrayList<>();
+        Assert.assertEquals(2, spool.replay(target, new WriteSpool.Destination() {
+            @Override
+            public boolean isHealthy() {
+                return true;
+            }
+
+            @Override
+            public void write(byte[] lineProtocol) {
+                String batch = new String(lineProtocol, StandardCharsets.UTF_8);
+                if (batch.contains("conflicting")) {
+                    throw InfluxDBException.buildExceptionForErrorState("field type conflict");
+                }
+                written.add(batch);
+            }
+        }));
+        Assert.assertEquals(Arrays.asList("m value=1i 1", "m value=3i 3"), written);
+        Assert.assertFalse(spool.hasSpooledData(target));
+    }
+
+    @Test
+    public void segments_dropped_during_replay_are_not_restored() throws Exception {
+        spool.append(target, "m value=1i 1");
+        spool.append(target, "m value=2i 2");
+
+        Assert.assertEquals(0, spool.replay(target, new WriteSpool.Destination() {
+            @Override
+            public boolean isHealthy() {
+                return true;
+            }
+
+            @Override
+            public void write(byte[] lineProtocol) throws Exception {
+                for (File dir : folder.getRoot().listFiles()) {
+                    for (File segment : dir.listFiles()) {
+                        segment.setLastModified(0);
+                    }
+                }
+                spool.purgeExpired();
+                throw new ConnectException("Connection refused");
+            }
+        }));
+        Assert.assertFalse(spool.hasSpooledData(target));
+    }
+
+    @Test
+    public void batches_spooled_during_replay_are_kept() throws Exception {
+        spool.append(target, "m value=1i 1");
+        spool.replay(target, new RecordingDestination(true, 0));
+        spool.append(target, "m value=2i 2");
+
+        RecordingDestination destination = new RecordingDestination(true, Integer.MAX_VALUE);
+        Assert.assertEquals(2, spool.replay(target, destination));
+        Assert.assertEquals(Arrays.asList("m value=1i 1", "m value=2i 2"), destination.written);
+    }
+
+    @Test
+    public void destinations_are_spooled_separately() throws Exception {
+        Target other = new Target();
+        other.setUrl("http://localhost:8086");
+        other.setDatabase("other");
+        other.setRetentionPolicy("autogen");
+
+        spool.append(target, "m value=1i 1");
+
+        Assert.assertTrue(spool.hasSpooledData(target));
+        Assert.assertFalse(spool.hasSpooledData(other));
+    }
+
+    @Test
+    public void oldest_segments_are_dropped_beyond_size_limit() throws Exception {
+        spool.configure(true, WriteSpool.SEGMENT_SIZE, 60000);
+        char[] chars = new char[(int) (WriteSpool.SEGMENT_SIZE / 2)];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+
+        for (int i = 0; i < 6; i++) {
+            spool.append(target, large);
+        }
+
+        Assert.assertTrue(spool.getSpooledBytes(target) <= 2 * WriteSpool.SEGMENT_SIZE);
+    }
+
+    private static final class RecordingDestination implements WriteSpool.Destination {
+        private final boolean healthy;
+        private final int acceptedWrites;
+        private final List<String> written = new ArrayList<>();
+
+        RecordingDestination(boolean healthy, int acceptedWrites) {
+            this.healthy = healthy;
+            this.acceptedWrites = acceptedWrites;
+        }
+
+        @Override
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        @Override
+        public void write(byte[] lineProtocol) throws Exception {
+            if (written.size() >= acceptedWrites) {
+                throw new ConnectException("Target is down");
+            }
+            written.add(new String(lineProtocol, StandardCharsets.UTF_8));
+        }
+    }
+}